@@ -2,8 +2,12 @@ package no.ndla.taxnomy.metadataapi;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcTransactionManagerAutoConfiguration;
 
-@SpringBootApplication
+// R2DBC is only used for the reactive reads, configured by ReactiveReadConfiguration. A reactive transaction manager
+// would replace the JPA transaction manager
+@SpringBootApplication(exclude = { R2dbcAutoConfiguration.class, R2dbcTransactionManagerAutoConfiguration.class })
 public class MetadataApiApplication {
 
     public static void main(String[] args) {
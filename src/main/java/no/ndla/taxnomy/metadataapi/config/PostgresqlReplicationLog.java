@@ -0,0 +1,38 @@
+package no.ndla.taxnomy.metadataapi.config;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+
+/**
+ * Positions in the write-ahead log of a PostgreSQL primary, and whether a streaming replica has replayed them.
+ */
+public class PostgresqlReplicationLog implements ReadReplicaRoutingDataSource.ReplicationLog {
+    private static final String SELECT_PRIMARY_POSITION = "SELECT CAST(pg_current_wal_lsn() AS text)";
+
+    // The replayed position is null on a database that is not a replica, which has everything the primary has
+    private static final String SELECT_HAS_REPLAYED = "SELECT COALESCE(pg_last_wal_replay_lsn() >= CAST(? AS pg_lsn), TRUE)";
+
+    // The lag grows while a check waits, a check that takes longer fails instead
+    private static final int QUERY_TIMEOUT_SECONDS = 1;
+
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+
+    public PostgresqlReplicationLog(DataSource primary, DataSource replica) {
+        this.primary = new JdbcTemplate(primary);
+        this.replica = new JdbcTemplate(replica);
+        this.primary.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+        this.replica.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+    }
+
+    @Override
+    public String getPrimaryPosition() {
+        return primary.queryForObject(SELECT_PRIMARY_POSITION, String.class);
+    }
+
+    @Override
+    public boolean hasReplayed(String position) {
+        return Boolean.TRUE.equals(replica.queryForObject(SELECT_HAS_REPLAYED, Boolean.class, position));
+    }
+}
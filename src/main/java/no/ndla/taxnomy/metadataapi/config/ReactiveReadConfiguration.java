@@ -0,0 +1,63 @@
+package no.ndla.taxnomy.metadataapi.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.io.Closeable;
+import java.time.Duration;
+
+/**
+ * Non-blocking database access for the reactive reads, enabled by the reactive profile. Reads go to metadata.r2dbc.url,
+ * which may point to a read replica, through a connection pool of their own.
+ *
+ * The connection pool is not a bean of its own, Spring Boot does not configure the JDBC datasource when there is an
+ * R2DBC connection factory bean.
+ */
+@Configuration(proxyBeanMethods = false)
+@Profile("reactive")
+public class ReactiveReadConfiguration {
+    // Closes the connection pool on shutdown
+    static class ReactiveConnectionPool implements Closeable {
+        private final ConnectionPool connectionPool;
+
+        ReactiveConnectionPool(ConnectionPool connectionPool) {
+            this.connectionPool = connectionPool;
+        }
+
+        @Override
+        public void close() {
+            connectionPool.dispose();
+        }
+    }
+
+    @Bean
+    ReactiveConnectionPool reactiveConnectionPool(@Value("${metadata.r2dbc.url}") String url,
+            @Value("${metadata.r2dbc.username:#{null}}") String username,
+            @Value("${metadata.r2dbc.password:#{null}}") String password,
+            @Value("${metadata.r2dbc.pool.max-size:10}") int maxSize,
+            @Value("${metadata.r2dbc.pool.max-acquire-time:5s}") Duration maxAcquireTime) {
+        final var options = ConnectionFactoryOptions.parse(url).mutate();
+        if (username != null) {
+            options.option(ConnectionFactoryOptions.USER, username);
+        }
+        if (password != null) {
+            options.option(ConnectionFactoryOptions.PASSWORD, password);
+        }
+
+        return new ReactiveConnectionPool(
+                new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options.build()))
+                        .initialSize(1).maxSize(maxSize).maxAcquireTime(maxAcquireTime).build()));
+    }
+
+    @Bean
+    public DatabaseClient reactiveDatabaseClient(ReactiveConnectionPool reactiveConnectionPool) {
+        return DatabaseClient.create(reactiveConnectionPool.connectionPool);
+    }
+}
@@ -0,0 +1,33 @@
+package no.ndla.taxnomy.metadataapi.config;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Tells the {@link ReadReplicaRoutingDataSource} which client a request is from, so the client reads its own writes.
+ * Clients are told apart by their address, which is taken from the forwarded headers when
+ * server.forward-headers-strategy is set.
+ */
+public class ReadReplicaClientFilter extends OncePerRequestFilter {
+    private final ReadReplicaRoutingDataSource routingDataSource;
+
+    public ReadReplicaClientFilter(ReadReplicaRoutingDataSource routingDataSource) {
+        this.routingDataSource = routingDataSource;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        routingDataSource.setCurrentClient(request.getRemoteAddr());
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            routingDataSource.setCurrentClient(null);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package no.ndla.taxnomy.metadataapi.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.DatabaseMetaData;
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Sends read-only transactions to a read replica when metadata.datasource.replica.url is set. The replica takes the
+ * same properties as spring.datasource.
+ *
+ * Reads go to the primary while the replica lags more than metadata.datasource.replica.max-lag behind it, and for
+ * clients that have written something the replica has not replayed yet. On PostgreSQL the replica is asked how far it
+ * has replayed the primary, on other databases it is assumed to lag at most the max lag.
+ *
+ * The connection pools are not beans of their own, the datasource initialization in Spring Boot would then run against
+ * the routing datasource while it is being created.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty("metadata.datasource.replica.url")
+public class ReadReplicaConfiguration {
+    // Closes the connection pools on shutdown
+    static class ReadReplicaDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+        ReadReplicaDataSource(ReadReplicaRoutingDataSource routingDataSource) {
+            super(routingDataSource);
+        }
+
+        ReadReplicaRoutingDataSource getRoutingDataSource() {
+            return (ReadReplicaRoutingDataSource) getTargetDataSource();
+        }
+
+        @Override
+        public void close() {
+            getRoutingDataSource().close();
+        }
+    }
+
+    private static HikariDataSource createDataSource(Binder binder, DataSourceProperties dataSourceProperties,
+            String hikariPrefix) {
+        final var dataSource = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        binder.bind(hikariPrefix, Bindable.ofInstance(dataSource));
+
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties dataSourceProperties, Environment environment,
+            @Value("${metadata.datasource.replica.max-lag:5s}") Duration maxLag) throws MetaDataAccessException {
+        final var binder = Binder.get(environment);
+        final var replicaProperties = binder.bind("metadata.datasource.replica", DataSourceProperties.class).get();
+
+        final var primary = createDataSource(binder, dataSourceProperties, "spring.datasource.hikari");
+        final var replica = createDataSource(binder, replicaProperties, "metadata.datasource.replica.hikari");
+
+        final var databaseName = JdbcUtils.commonDatabaseName(
+                JdbcUtils.extractDatabaseMetaData(primary, DatabaseMetaData::getDatabaseProductName));
+        final var replicationLog = "PostgreSQL".equals(databaseName) ? new PostgresqlReplicationLog(primary, replica)
+                : null;
+
+        final var routingDataSource = new ReadReplicaRoutingDataSource(primary, replica, replicationLog, maxLag,
+                Clock.systemUTC());
+        routingDataSource.start();
+
+        return new ReadReplicaDataSource(routingDataSource);
+    }
+
+    @Bean
+    public ReadReplicaClientFilter readReplicaClientFilter(DataSource dataSource) {
+        return new ReadReplicaClientFilter(((ReadReplicaDataSource) dataSource).getRoutingDataSource());
+    }
+}
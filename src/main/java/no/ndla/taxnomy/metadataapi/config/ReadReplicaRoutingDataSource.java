@@ -0,0 +1,313 @@
+package no.ndla.taxnomy.metadataapi.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends connections for read-only transactions to the replica and everything else to the primary. Must be wrapped in a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, the transaction managers fetch the
+ * connection before the transaction is marked read-only.
+ *
+ * Read-only transactions go to the primary while the replica lags more than the max lag behind it. With a
+ * {@link ReplicationLog} the lag is measured every {@link #LAG_CHECK_INTERVAL} on a thread of its own, routing only
+ * reads the last result. Without one the replica is assumed to lag at most the max lag.
+ *
+ * Writes are read back by the client that made them: after a client has committed a write, its read-only transactions
+ * go to the primary until the replica has replayed it. The client is set for the current thread by
+ * {@link ReadReplicaClientFilter}. Only transactions that ran a statement other than a SELECT count as writes.
+ */
+public class ReadReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    enum Target {
+        PRIMARY, REPLICA
+    }
+
+    /**
+     * Positions in the log of the primary, and how far the replica has replayed it.
+     */
+    public interface ReplicationLog {
+        /**
+         * Returns the current position of the primary, after every write committed so far.
+         */
+        String getPrimaryPosition();
+
+        boolean hasReplayed(String position);
+    }
+
+    private static final class Sample {
+        private final Instant instant;
+        private final String position;
+
+        private Sample(Instant instant, String position) {
+            this.instant = instant;
+            this.position = position;
+        }
+    }
+
+    static final Duration LAG_CHECK_INTERVAL = Duration.ofMillis(100);
+
+    // Positions not replayed yet are kept for at most this many checks, older ones only make the lag look smaller
+    private static final int MAX_SAMPLES = 1000;
+
+    private static final int MAX_CLIENTS = 10000;
+
+    private final Logger logger = LoggerFactory.getLogger(ReadReplicaRoutingDataSource.class);
+    private final ReplicationLog replicationLog;
+    private final Duration maxLag;
+    private final Clock clock;
+
+    // Bound to transactions that wrote
+    private final Object writeResourceKey = new Object();
+
+    private final ThreadLocal<String> currentClient = new ThreadLocal<>();
+
+    // When each client last committed a write, forgotten after the max lag when the replica has it anyway
+    private final Cache<String, Instant> clientWrites;
+
+    // Positions of the primary taken by the lag checks and not replayed yet, oldest first. Only used by the checks
+    private final Deque<Sample> unreplayedSamples = new ArrayDeque<>();
+
+    // Everything committed on the primary before this has been replayed by the replica
+    private volatile Instant replayedUpTo = Instant.EPOCH;
+
+    private ScheduledExecutorService lagCheckScheduler;
+
+    /**
+     * The replication log may be null.
+     */
+    public ReadReplicaRoutingDataSource(DataSource primary, DataSource replica, ReplicationLog replicationLog,
+            Duration maxLag, Clock clock) {
+        this.replicationLog = replicationLog;
+        this.maxLag = maxLag;
+        this.clock = clock;
+        this.clientWrites = Caffeine.newBuilder().maximumSize(MAX_CLIENTS).expireAfterWrite(maxLag).build();
+
+        setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    /**
+     * Starts measuring the replication lag, reads go to the primary until it has been measured once.
+     */
+    public synchronized void start() {
+        if (replicationLog == null || lagCheckScheduler != null) {
+            return;
+        }
+
+        lagCheckScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "replica-lag-check");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        lagCheckScheduler.scheduleWithFixedDelay(this::checkLag, 0, LAG_CHECK_INTERVAL.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    public void close() {
+        synchronized (this) {
+            if (lagCheckScheduler != null) {
+                lagCheckScheduler.shutdownNow();
+            }
+        }
+
+        getResolvedDataSources().values().forEach(dataSource -> {
+            if (dataSource instanceof Closeable) {
+                try {
+                    ((Closeable) dataSource).close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets the client reading and writing from the current thread, null when not known.
+     */
+    void setCurrentClient(String client) {
+        if (client == null) {
+            currentClient.remove();
+        } else {
+            currentClient.set(client);
+        }
+    }
+
+    /**
+     * Takes the position of the primary and finds the newest position taken the replica has replayed. Everything
+     * committed before that position was taken has been replayed, the lag is the time since.
+     */
+    void checkLag() {
+        // Taken before the position, writes committed before it are before the position
+        final var now = clock.instant();
+
+        try {
+            final var position = replicationLog.getPrimaryPosition();
+
+            // Nothing written since the last check, the position is still the newest
+            if (!unreplayedSamples.isEmpty() && unreplayedSamples.getLast().position.equals(position)) {
+                unreplayedSamples.removeLast();
+            }
+            unreplayedSamples.addLast(new Sample(now, position));
+            if (unreplayedSamples.size() > MAX_SAMPLES) {
+                unreplayedSamples.removeFirst();
+            }
+
+            // Usually the replica is less than a check interval behind, and one query is enough
+            if (replicationLog.hasReplayed(position)) {
+                unreplayedSamples.clear();
+                replayedUpTo = now;
+                return;
+            }
+
+            while (unreplayedSamples.size() > 1 && replicationLog.hasReplayed(unreplayedSamples.getFirst().position)) {
+                replayedUpTo = unreplayedSamples.removeFirst().instant;
+            }
+        } catch (RuntimeException e) {
+            // The lag grows until the replica can be asked again
+            logger.warn("Failed to check the replication lag", e);
+        }
+    }
+
+    private void recordWrite() {
+        final var client = currentClient.get();
+        if (client != null) {
+            clientWrites.put(client, clock.instant());
+        }
+    }
+
+    // Recorded when committed, the replica lags behind the commit, and rolled back transactions wrote nothing
+    private void recordStatement(String sql) {
+        if (sql.stripLeading().regionMatches(true, 0, "SELECT", 0, 6)) {
+            return;
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            recordWrite();
+        } else if (!TransactionSynchronizationManager.hasResource(writeResourceKey)) {
+            TransactionSynchronizationManager.bindResource(writeResourceKey, Boolean.TRUE);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(writeResourceKey);
+                    if (status == STATUS_COMMITTED) {
+                        recordWrite();
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return Target.PRIMARY;
+        }
+
+        final var now = clock.instant();
+        final Instant replayed;
+        if (replicationLog == null) {
+            replayed = now.minus(maxLag);
+        } else {
+            replayed = replayedUpTo;
+            if (!replayed.plus(maxLag).isAfter(now)) {
+                return Target.PRIMARY;
+            }
+        }
+
+        final var client = currentClient.get();
+        final var clientWrite = client != null ? clientWrites.getIfPresent(client) : null;
+        if (clientWrite != null && clientWrite.isAfter(replayed)) {
+            return Target.PRIMARY;
+        }
+
+        return Target.REPLICA;
+    }
+
+    // Connections to the primary record the statements that write
+    @Override
+    public Connection getConnection() throws SQLException {
+        return trackWrites(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return trackWrites(super.getConnection(username, password));
+    }
+
+    private Connection trackWrites(Connection connection) {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return connection;
+        }
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "prepareStatement":
+                    case "prepareCall":
+                        recordStatement((String) args[0]);
+                        return invoke(connection, method, args);
+                    case "createStatement":
+                        return trackWrites((Statement) invoke(connection, method, args));
+                    default:
+                        return invoke(connection, method, args);
+                    }
+                });
+    }
+
+    // The statements run are only known when executed
+    private Statement trackWrites(Statement statement) {
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { Statement.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        if (args != null && args.length > 0 && args[0] instanceof String
+                                && (method.getName().startsWith("execute") || method.getName().equals("addBatch"))) {
+                            recordStatement((String) args[0]);
+                        }
+                        return invoke(statement, method, args);
+                    }
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
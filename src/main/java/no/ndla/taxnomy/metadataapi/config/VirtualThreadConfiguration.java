@@ -0,0 +1,58 @@
+package no.ndla.taxnomy.metadataapi.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs requests, and the database calls made while handling them, on virtual threads instead of the bounded Tomcat
+ * thread pool when metadata.threads.virtual is true. The application task executor, running async requests and sending
+ * change events, uses virtual threads as well.
+ *
+ * Virtual threads need Java 21, they are created through reflection so the application still builds for Java 11.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "metadata.threads.virtual", havingValue = "true")
+public class VirtualThreadConfiguration {
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            final var builderClass = Class.forName("java.lang.Thread$Builder");
+            final var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builderClass.getMethod("name", String.class, long.class).invoke(builder, "virtual-", 0L);
+            final var threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            throw new IllegalStateException("metadata.threads.virtual requires Java 21 or later, running Java "
+                    + System.getProperty("java.version"), e);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Failed to create virtual thread executor", e);
+        }
+    }
+
+    // Shut down on close, Tomcat does not shut down an executor it did not create
+    @Bean
+    public ExecutorService virtualThreadExecutor() {
+        return newVirtualThreadPerTaskExecutor();
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(
+            ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+    // Replaces the task executor of Spring Boot, which backs off when there is an executor bean
+    @Bean(name = "applicationTaskExecutor")
+    public TaskExecutorAdapter applicationTaskExecutor(ExecutorService virtualThreadExecutor) {
+        return new TaskExecutorAdapter(virtualThreadExecutor);
+    }
+}
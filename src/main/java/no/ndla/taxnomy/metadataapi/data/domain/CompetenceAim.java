@@ -1,5 +1,6 @@
 package no.ndla.taxnomy.metadataapi.data.domain;
 
+import org.hibernate.Hibernate;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -51,6 +52,10 @@ public class CompetenceAim {
         return taxonomyEntities.stream().collect(Collectors.toUnmodifiableSet());
     }
 
+    boolean isTaxonomyEntitiesLoaded() {
+        return Hibernate.isInitialized(taxonomyEntities);
+    }
+
     boolean containsTaxonomyEntity(TaxonomyEntity taxonomyEntity) {
         return this.taxonomyEntities.contains(taxonomyEntity);
     }
@@ -0,0 +1,54 @@
+package no.ndla.taxnomy.metadataapi.data.domain;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.time.Instant;
+
+/**
+ * The last change of the metadata of an entity. Each change replaces the previous change of the same entity, so the
+ * feed has one row per entity ever changed, ordered by when it last changed.
+ *
+ * Only read as an entity, the changes are written by {@link no.ndla.taxnomy.metadataapi.service.ChangeFeedService} when
+ * the transaction making them commits.
+ */
+@Entity
+public class MetadataChange {
+    @Id
+    @Column
+    private Long seq;
+
+    @Column
+    private String publicId;
+
+    @Column
+    private boolean deleted;
+
+    @Column
+    private Instant changedAt;
+
+    public MetadataChange(long seq, String publicId, boolean deleted) {
+        this.seq = seq;
+        this.publicId = publicId;
+        this.deleted = deleted;
+    }
+
+    protected MetadataChange() {
+    }
+
+    public Long getSeq() {
+        return seq;
+    }
+
+    public String getPublicId() {
+        return publicId;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public Instant getChangedAt() {
+        return changedAt;
+    }
+}
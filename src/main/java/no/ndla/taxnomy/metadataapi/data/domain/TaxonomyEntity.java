@@ -1,5 +1,6 @@
 package no.ndla.taxnomy.metadataapi.data.domain;
 
+import org.hibernate.Hibernate;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -41,10 +42,21 @@ public class TaxonomyEntity {
     @Column
     private boolean visible = true;
 
+    // Incremented on every change to the metadata of the entity, including competence aims and custom fields. Only
+    // incremented in SQL, writing the value held here back could undo a concurrent increment
+    @Column(updatable = false)
+    private long revision;
+
+    // The inverse side is not persisted, so it is only kept in sync when already loaded. Loading it would cost two
+    // queries per competence aim linked or unlinked.
+    private static boolean isInverseSideLoaded(CompetenceAim competenceAim) {
+        return Hibernate.isInitialized(competenceAim) && competenceAim.isTaxonomyEntitiesLoaded();
+    }
+
     public void addCompetenceAim(CompetenceAim competenceAim) {
         this.competenceAims.add(competenceAim);
 
-        if (!competenceAim.containsTaxonomyEntity(this)) {
+        if (isInverseSideLoaded(competenceAim) && !competenceAim.containsTaxonomyEntity(this)) {
             competenceAim.addTaxonomyEntity(this);
         }
     }
@@ -52,7 +64,7 @@ public class TaxonomyEntity {
     public void removeCompetenceAim(CompetenceAim competenceAim) {
         this.competenceAims.remove(competenceAim);
 
-        if (competenceAim.containsTaxonomyEntity(this)) {
+        if (isInverseSideLoaded(competenceAim) && competenceAim.containsTaxonomyEntity(this)) {
             competenceAim.removeTaxonomyEntity(this);
         }
     }
@@ -96,4 +108,12 @@ public class TaxonomyEntity {
     public void setVisible(boolean visible) {
         this.visible = visible;
     }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(long revision) {
+        this.revision = revision;
+    }
 }
@@ -4,11 +4,30 @@ import no.ndla.taxnomy.metadataapi.data.domain.CompetenceAim;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 public interface CompetenceAimRepository extends JpaRepository<CompetenceAim, UUID> {
     Optional<CompetenceAim> findFirstByCode(String code);
+
+    List<CompetenceAim> findAllByCodeIn(Collection<String> codes);
+
+    // Keyset paginated by publicId, use a Pageable without offset to limit the number of rows
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "200"))
+    @Query("SELECT te.publicId FROM TaxonomyEntity te JOIN te.competenceAims ca WHERE ca.code = :code AND te.publicId > :afterPublicId ORDER BY te.publicId")
+    Stream<String> streamTaxonomyEntityPublicIdsByCode(String code, String afterPublicId, Pageable pageable);
+
+    // Keyset paginated by publicId, use a Pageable without offset to limit the number of rows. The pattern must escape
+    // LIKE wildcards with backslash
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "200"))
+    @Query("SELECT DISTINCT te.publicId FROM TaxonomyEntity te JOIN te.competenceAims ca WHERE ca.code LIKE :codePattern ESCAPE '\\' AND te.publicId > :afterPublicId ORDER BY te.publicId")
+    Stream<String> streamTaxonomyEntityPublicIdsByCodeLike(String codePattern, String afterPublicId, Pageable pageable);
 }
@@ -3,6 +3,8 @@ package no.ndla.taxnomy.metadataapi.data.repository;
 import no.ndla.taxnomy.metadataapi.data.domain.CustomField;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -12,4 +14,6 @@ public interface CustomFieldRepository extends JpaRepository<CustomField, UUID>
     default Optional<CustomField> findByKey(String key) {
         return findFirstByKey(key);
     }
+
+    List<CustomField> findAllByKeyIn(Collection<String> keys);
 }
@@ -1,22 +1,48 @@
 package no.ndla.taxnomy.metadataapi.data.repository;
 
 import no.ndla.taxnomy.metadataapi.data.domain.CustomFieldValue;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 public interface CustomFieldValueRepository extends JpaRepository<CustomFieldValue, UUID> {
     @Query("SELECT obj FROM CustomFieldValue obj WHERE obj.taxonomyEntity.id = :taxonomyEntity AND obj.customField.id = :customField")
     Optional<CustomFieldValue> findByTaxonomyEntityAndCustomField(UUID taxonomyEntity, UUID customField);
 
-    @Query("SELECT obj FROM CustomFieldValue obj WHERE obj.taxonomyEntity.id = :taxonomyEntity")
+    @Query("SELECT obj FROM CustomFieldValue obj JOIN FETCH obj.customField WHERE obj.taxonomyEntity.id = :taxonomyEntity")
     Iterable<CustomFieldValue> findAllByTaxonomyEntity(UUID taxonomyEntity);
 
+    @Query("SELECT obj FROM CustomFieldValue obj JOIN FETCH obj.customField WHERE obj.taxonomyEntity.id IN :taxonomyEntities")
+    List<CustomFieldValue> findAllByTaxonomyEntityIn(Collection<UUID> taxonomyEntities);
+
+    @Query("SELECT obj FROM CustomFieldValue obj JOIN FETCH obj.customField cf WHERE obj.taxonomyEntity.id IN :taxonomyEntities AND cf.key IN :keys")
+    List<CustomFieldValue> findAllByTaxonomyEntityInAndKeyIn(Collection<UUID> taxonomyEntities,
+            Collection<String> keys);
+
     @Query("SELECT obj FROM CustomFieldValue obj LEFT JOIN FETCH obj.taxonomyEntity WHERE obj.customField.id = :customField AND obj.value = :value")
     Iterable<CustomFieldValue> findAllByCustomFieldAndValue(UUID customField, String value);
 
     @Query("SELECT obj FROM CustomFieldValue obj LEFT JOIN FETCH obj.taxonomyEntity WHERE obj.customField.id = :customField")
     Iterable<CustomFieldValue> findAllByCustomField(UUID customField);
+
+    // Keyset paginated by publicId, use a Pageable without offset to limit the number of rows
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "200"))
+    @Query("SELECT te.publicId FROM CustomFieldValue obj JOIN obj.taxonomyEntity te WHERE obj.customField.id = :customField AND obj.value = :value AND te.publicId > :afterPublicId ORDER BY te.publicId")
+    Stream<String> streamPublicIdsByCustomFieldAndValue(UUID customField, String value, String afterPublicId,
+            Pageable pageable);
+
+    // Keyset paginated by publicId, use a Pageable without offset to limit the number of rows
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "200"))
+    @Query("SELECT te.publicId FROM CustomFieldValue obj JOIN obj.taxonomyEntity te WHERE obj.customField.id = :customField AND te.publicId > :afterPublicId ORDER BY te.publicId")
+    Stream<String> streamPublicIdsByCustomField(UUID customField, String afterPublicId, Pageable pageable);
 }
@@ -0,0 +1,29 @@
+package no.ndla.taxnomy.metadataapi.data.repository;
+
+import no.ndla.taxnomy.metadataapi.data.domain.MetadataChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface MetadataChangeRepository extends JpaRepository<MetadataChange, Long> {
+    @Query("SELECT mc FROM MetadataChange mc WHERE mc.seq > :afterSeq ORDER BY mc.seq")
+    List<MetadataChange> findChanges(long afterSeq, Pageable pageable);
+
+    @Query("SELECT MAX(mc.seq) FROM MetadataChange mc")
+    Optional<Long> findMaxSeq();
+
+    /**
+     * Takes the next count sequence numbers. Locks the counter until the transaction ends, so the transactions taking
+     * sequence numbers commit in the order of their numbers.
+     */
+    @Modifying
+    @Query(value = "UPDATE metadata_change_counter SET seq = seq + :count WHERE id = 1", nativeQuery = true)
+    void incrementLastSeq(int count);
+
+    @Query(value = "SELECT seq FROM metadata_change_counter WHERE id = 1", nativeQuery = true)
+    long findLastSeq();
+}
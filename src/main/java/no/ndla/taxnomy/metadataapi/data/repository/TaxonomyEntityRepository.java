@@ -2,8 +2,11 @@ package no.ndla.taxnomy.metadataapi.data.repository;
 
 import no.ndla.taxnomy.metadataapi.data.domain.TaxonomyEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 
+import javax.persistence.LockModeType;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
@@ -14,4 +17,29 @@ public interface TaxonomyEntityRepository extends JpaRepository<TaxonomyEntity,
 
     @Query("SELECT DISTINCT te FROM TaxonomyEntity te LEFT JOIN FETCH te.competenceAims WHERE te.publicId IN :publicIds")
     List<TaxonomyEntity> findAllByPublicIdInIncludingCompetenceAims(Collection<String> publicIds);
+
+    @Query("SELECT te.publicId AS publicId, te.id AS id, te.revision AS revision FROM TaxonomyEntity te WHERE te.publicId IN :publicIds")
+    List<Revision> findRevisionsByPublicIdIn(Collection<String> publicIds);
+
+    @Query("SELECT te.publicId AS publicId, te.id AS id, te.revision AS revision FROM TaxonomyEntity te WHERE te.id IN :ids")
+    List<Revision> findRevisionsByIdIn(Collection<UUID> ids);
+
+    // Locks the rows until the transaction ends, in id order so transactions locking overlapping entities can not
+    // deadlock
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT te FROM TaxonomyEntity te WHERE te.id IN :ids ORDER BY te.id")
+    List<TaxonomyEntity> lockAllByIdIn(Collection<UUID> ids);
+
+    // Locks the rows until the transaction ends, so concurrent increments of the same entity are serialized
+    @Modifying
+    @Query("UPDATE TaxonomyEntity te SET te.revision = te.revision + 1 WHERE te.id IN :ids")
+    int incrementRevisions(Collection<UUID> ids);
+
+    interface Revision {
+        String getPublicId();
+
+        UUID getId();
+
+        long getRevision();
+    }
 }
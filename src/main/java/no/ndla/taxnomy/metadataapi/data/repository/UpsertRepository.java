@@ -0,0 +1,208 @@
+package no.ndla.taxnomy.metadataapi.data.repository;
+
+import no.ndla.taxnomy.metadataapi.data.domain.MetadataChange;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Creates rows that are unique by a natural key, or gets the existing ones, without failing on the unique constraint
+ * when another transaction creates the same row concurrently. Returns the id of the row, and whether it was created.
+ *
+ * The statements bypass the persistence context, entities with the same key pending insert must be flushed first, and
+ * rows already loaded as entities are not refreshed. Existing rows are never written to. On PostgreSQL one statement
+ * inserts the row with ON CONFLICT DO NOTHING and returns the id of the inserted or the existing row, the id is only
+ * selected again when another transaction inserted the row after the statement started. On H2 the row is inserted
+ * with a MERGE and the id selected afterwards.
+ */
+@Repository
+public class UpsertRepository {
+    private static final String POSTGRESQL_TAXONOMY_ENTITY_IF_MISSING = "INSERT INTO taxonomy_entity (id, public_id, created_at, updated_at) "
+            + "VALUES (:id, :publicId, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP) ON CONFLICT (public_id) DO NOTHING";
+    private static final String POSTGRESQL_COMPETENCE_AIM_IF_MISSING = "INSERT INTO competence_aim (id, code, created_at, updated_at) "
+            + "VALUES (:id, :code, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP) ON CONFLICT (code) DO NOTHING";
+    private static final String POSTGRESQL_TAXONOMY_ENTITY = "WITH inserted AS ("
+            + "INSERT INTO taxonomy_entity (id, public_id, created_at, updated_at) "
+            + "VALUES (:id, :publicId, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP) ON CONFLICT (public_id) DO NOTHING RETURNING id) "
+            + "SELECT id, TRUE AS inserted FROM inserted UNION ALL SELECT id, FALSE FROM taxonomy_entity WHERE public_id = :publicId LIMIT 1";
+    private static final String POSTGRESQL_COMPETENCE_AIM = "WITH inserted AS ("
+            + "INSERT INTO competence_aim (id, code, created_at, updated_at) "
+            + "VALUES (:id, :code, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP) ON CONFLICT (code) DO NOTHING RETURNING id) "
+            + "SELECT id, TRUE AS inserted FROM inserted UNION ALL SELECT id, FALSE FROM competence_aim WHERE code = :code LIMIT 1";
+    private static final String POSTGRESQL_CUSTOM_FIELD = "WITH inserted AS ("
+            + "INSERT INTO custom_field (id, public_id, key, created_at, updated_at) "
+            + "VALUES (:id, :publicId, :key, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP) ON CONFLICT (key) DO NOTHING RETURNING id) "
+            + "SELECT id, TRUE AS inserted FROM inserted UNION ALL SELECT id, FALSE FROM custom_field WHERE key = :key LIMIT 1";
+    private static final String POSTGRESQL_METADATA_CHANGE = "INSERT INTO metadata_change (seq, public_id, deleted, changed_at) "
+            + "VALUES (:seq, :publicId, :deleted, CURRENT_TIMESTAMP) "
+            + "ON CONFLICT (public_id) DO UPDATE SET seq = EXCLUDED.seq, deleted = EXCLUDED.deleted, changed_at = EXCLUDED.changed_at";
+
+    private static final String H2_TAXONOMY_ENTITY = "MERGE INTO taxonomy_entity te "
+            + "USING (SELECT CAST(:publicId AS VARCHAR) public_id) s ON te.public_id = s.public_id "
+            + "WHEN NOT MATCHED THEN INSERT (id, public_id, created_at, updated_at) "
+            + "VALUES (:id, s.public_id, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)";
+    private static final String H2_COMPETENCE_AIM = "MERGE INTO competence_aim ca "
+            + "USING (SELECT CAST(:code AS VARCHAR) code) s ON ca.code = s.code "
+            + "WHEN NOT MATCHED THEN INSERT (id, code, created_at, updated_at) "
+            + "VALUES (:id, s.code, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)";
+    private static final String H2_CUSTOM_FIELD = "MERGE INTO custom_field cf "
+            + "USING (SELECT CAST(:key AS VARCHAR) key) s ON cf.key = s.key "
+            + "WHEN NOT MATCHED THEN INSERT (id, public_id, key, created_at, updated_at) "
+            + "VALUES (:id, :publicId, s.key, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)";
+    private static final String H2_METADATA_CHANGE = "MERGE INTO metadata_change mc "
+            + "USING (SELECT CAST(:publicId AS VARCHAR) public_id) s ON mc.public_id = s.public_id "
+            + "WHEN MATCHED THEN UPDATE SET seq = :seq, deleted = :deleted, changed_at = CURRENT_TIMESTAMP "
+            + "WHEN NOT MATCHED THEN INSERT (seq, public_id, deleted, changed_at) "
+            + "VALUES (:seq, s.public_id, :deleted, CURRENT_TIMESTAMP)";
+
+    private static final String SELECT_TAXONOMY_ENTITY_ID = "SELECT id FROM taxonomy_entity WHERE public_id = :publicId";
+    private static final String SELECT_COMPETENCE_AIM_ID = "SELECT id FROM competence_aim WHERE code = :code";
+    private static final String SELECT_CUSTOM_FIELD_ID = "SELECT id FROM custom_field WHERE key = :key";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final boolean postgresql;
+
+    public UpsertRepository(NamedParameterJdbcTemplate jdbcTemplate, DataSource dataSource)
+            throws MetaDataAccessException {
+        this.jdbcTemplate = jdbcTemplate;
+
+        final var databaseName = JdbcUtils.commonDatabaseName(
+                JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName));
+        if ("PostgreSQL".equals(databaseName)) {
+            postgresql = true;
+        } else if ("H2".equals(databaseName)) {
+            postgresql = false;
+        } else {
+            throw new IllegalStateException("Upserts are not supported on " + databaseName);
+        }
+    }
+
+    // Existing rows are not written to, an update to the row itself would leave a dead row version behind every time.
+    // The statement on PostgreSQL reads the table with the snapshot it started with, so it returns no id when it waited
+    // for another transaction inserting the same row, which is then visible to the select that follows
+    private Upserted upsert(String selectIdSql, String postgresqlSql, String h2Sql, SqlParameterSource parameters) {
+        if (postgresql) {
+            final var upserted = jdbcTemplate.query(postgresqlSql, parameters,
+                    (resultSet, rowNum) -> new Upserted(resultSet.getObject("id", UUID.class),
+                            resultSet.getBoolean("inserted")));
+            if (!upserted.isEmpty()) {
+                return upserted.get(0);
+            }
+
+            return new Upserted(jdbcTemplate.queryForObject(selectIdSql, parameters, UUID.class), false);
+        }
+
+        final var inserted = jdbcTemplate.update(h2Sql, parameters) == 1;
+        return new Upserted(jdbcTemplate.queryForObject(selectIdSql, parameters, UUID.class), inserted);
+    }
+
+    public Upserted upsertTaxonomyEntity(String publicId) {
+        return upsert(SELECT_TAXONOMY_ENTITY_ID, POSTGRESQL_TAXONOMY_ENTITY, H2_TAXONOMY_ENTITY,
+                new MapSqlParameterSource("id", UUID.randomUUID()).addValue("publicId", publicId));
+    }
+
+    /**
+     * Creates the missing entities with one batch, without returning or locking the existing ones. Returns the
+     * publicIds of the created entities.
+     */
+    public Set<String> insertMissingTaxonomyEntities(Collection<String> publicIds) {
+        final var publicIdList = publicIds.stream().distinct().collect(Collectors.toList());
+
+        final var counts = jdbcTemplate.batchUpdate(
+                postgresql ? POSTGRESQL_TAXONOMY_ENTITY_IF_MISSING : H2_TAXONOMY_ENTITY,
+                publicIdList.stream().map(
+                        publicId -> new MapSqlParameterSource("id", UUID.randomUUID()).addValue("publicId", publicId))
+                        .toArray(SqlParameterSource[]::new));
+
+        final var created = new HashSet<String>();
+        for (var i = 0; i < counts.length; i++) {
+            if (counts[i] == 1) {
+                created.add(publicIdList.get(i));
+            }
+        }
+
+        return created;
+    }
+
+    public UUID upsertCompetenceAim(String code) {
+        return upsert(SELECT_COMPETENCE_AIM_ID, POSTGRESQL_COMPETENCE_AIM, H2_COMPETENCE_AIM,
+                new MapSqlParameterSource("id", UUID.randomUUID()).addValue("code", code)).getId();
+    }
+
+    /**
+     * Creates the missing competence aims with one batch. Returns the ids of the created aims by code, aims that
+     * already existed are left out.
+     */
+    public Map<String, UUID> insertMissingCompetenceAims(Collection<String> codes) {
+        final var ids = codes.stream().distinct().collect(Collectors.toMap(code -> code, code -> UUID.randomUUID()));
+        final var codeList = List.copyOf(ids.keySet());
+
+        final var counts = jdbcTemplate
+                .batchUpdate(postgresql ? POSTGRESQL_COMPETENCE_AIM_IF_MISSING : H2_COMPETENCE_AIM,
+                        codeList.stream()
+                                .map(code -> new MapSqlParameterSource("id", ids.get(code)).addValue("code", code))
+                                .toArray(SqlParameterSource[]::new));
+
+        final var created = new HashMap<String, UUID>();
+        for (var i = 0; i < counts.length; i++) {
+            if (counts[i] == 1) {
+                created.put(codeList.get(i), ids.get(codeList.get(i)));
+            }
+        }
+
+        return created;
+    }
+
+    public UUID upsertCustomField(String key) {
+        return upsert(SELECT_CUSTOM_FIELD_ID, POSTGRESQL_CUSTOM_FIELD, H2_CUSTOM_FIELD,
+                new MapSqlParameterSource("id", UUID.randomUUID())
+                        .addValue("publicId", "urn:customfield:" + UUID.randomUUID().toString()).addValue("key", key))
+                .getId();
+    }
+
+    /**
+     * Writes the changes with one batch, replacing the previous change of each entity.
+     */
+    public void upsertMetadataChanges(Collection<MetadataChange> changes) {
+        jdbcTemplate.batchUpdate(postgresql ? POSTGRESQL_METADATA_CHANGE : H2_METADATA_CHANGE,
+                changes.stream()
+                        .map(change -> new MapSqlParameterSource("seq", change.getSeq())
+                                .addValue("publicId", change.getPublicId()).addValue("deleted", change.isDeleted()))
+                        .toArray(SqlParameterSource[]::new));
+    }
+
+    /**
+     * The id of an upserted row, and whether the row was created by the upsert.
+     */
+    public static final class Upserted {
+        private final UUID id;
+        private final boolean inserted;
+
+        Upserted(UUID id, boolean inserted) {
+            this.id = id;
+            this.inserted = inserted;
+        }
+
+        public UUID getId() {
+            return id;
+        }
+
+        public boolean isInserted() {
+            return inserted;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package no.ndla.taxnomy.metadataapi.rest;
+
+import no.ndla.taxnomy.metadataapi.data.domain.MetadataChange;
+import no.ndla.taxnomy.metadataapi.service.ChangeFeedReader;
+import no.ndla.taxnomy.metadataapi.service.ChangeFeedService;
+import no.ndla.taxnomy.metadataapi.service.MetadataAggregatorService;
+import no.ndla.taxnomy.metadataapi.service.MetadataAggregatorServiceImpl;
+import no.ndla.taxnomy.metadataapi.service.MetadataChangeEvent;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataChangeEventDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import no.ndla.taxnomy.metadataapi.service.exception.InvalidPublicIdException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Pushes committed changes to the clients subscribed to the change stream. Each subscriber has a bounded buffer, a
+ * subscriber that falls further behind than that is disconnected and has to resume from the last event it received.
+ *
+ * The changes are read from the change feed by the {@link ChangeFeedReader}, so subscribers get the changes committed
+ * by every instance in the order of their sequence numbers. Changes committed here are read right after the commit,
+ * changes committed by other instances within a poll interval.
+ *
+ * The events are sent on a pool of its own, a subscriber that does not take an event within the send timeout is
+ * disconnected so it does not hold a thread of the pool.
+ */
+@Component
+public class MetadataChangeStream {
+    static final int REPLAY_PAGE_SIZE = 500;
+
+    private final Logger logger = LoggerFactory.getLogger(MetadataChangeStream.class);
+    private final ChangeFeedService changeFeedService;
+    private final ChangeFeedReader changeFeedReader;
+    // Uncached, the events are published before the cache is invalidated after the commit, and replayed events may be
+    // changes made by other instances that never invalidated the cache here
+    private final MetadataAggregatorService metadataAggregatorService;
+    private final Executor executor;
+    private final int bufferSize;
+    private final Duration timeout;
+    private final Duration sendTimeout;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService watchdog;
+
+    @Autowired
+    public MetadataChangeStream(ChangeFeedService changeFeedService, ChangeFeedReader changeFeedReader,
+            MetadataAggregatorServiceImpl metadataAggregatorService,
+            @Value("${metadata.changes.stream.threads:4}") int threads,
+            @Value("${metadata.changes.stream.buffer-size:1000}") int bufferSize,
+            @Value("${metadata.changes.stream.timeout:30m}") Duration timeout,
+            @Value("${metadata.changes.stream.send-timeout:30s}") Duration sendTimeout) {
+        this(changeFeedService, changeFeedReader, metadataAggregatorService,
+                Executors.newFixedThreadPool(threads, daemonThreads("change-stream")), bufferSize, timeout,
+                sendTimeout);
+        changeFeedReader.addListener(this::onChanges);
+    }
+
+    MetadataChangeStream(ChangeFeedService changeFeedService, ChangeFeedReader changeFeedReader,
+            MetadataAggregatorService metadataAggregatorService, Executor executor, int bufferSize, Duration timeout,
+            Duration sendTimeout) {
+        this.changeFeedService = changeFeedService;
+        this.changeFeedReader = changeFeedReader;
+        this.metadataAggregatorService = metadataAggregatorService;
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+        this.timeout = timeout;
+        this.sendTimeout = sendTimeout;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        final var threadCount = new AtomicInteger();
+
+        return runnable -> {
+            final var thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        };
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        final var checkInterval = Math.max(1, sendTimeout.toMillis() / 2);
+
+        watchdog = Executors.newSingleThreadScheduledExecutor(daemonThreads("change-stream-watchdog"));
+        watchdog.scheduleWithFixedDelay(this::checkStalledSends, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdownNow();
+        }
+    }
+
+    /**
+     * Subscribes to the changes committed from now on, and first the changes after the given sequence number if not
+     * null.
+     */
+    public SseEmitter subscribe(Long afterSeq, boolean includeMetadata) {
+        final var emitter = new SseEmitter(timeout.toMillis());
+        subscribe(emitter, afterSeq, includeMetadata);
+
+        return emitter;
+    }
+
+    void subscribe(SseEmitter emitter, Long afterSeq, boolean includeMetadata) {
+        final var subscriber = new Subscriber(emitter, afterSeq, includeMetadata);
+
+        emitter.onTimeout(emitter::complete);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+
+        // Subscribes before replaying, changes committed during the replay are buffered and sent after it
+        subscribers.add(subscriber);
+        if (afterSeq != null) {
+            subscriber.scheduleSend();
+        }
+    }
+
+    int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    // Not sent from here, a change committed by another instance with a lower sequence number may not have been read
+    // yet, and a subscriber resuming after this one would miss it
+    @TransactionalEventListener
+    public void onChange(MetadataChangeEvent event) {
+        if (!subscribers.isEmpty()) {
+            changeFeedReader.requestPoll();
+        }
+    }
+
+    void checkStalledSends() {
+        final var now = System.nanoTime();
+        subscribers.forEach(subscriber -> subscriber.checkStalled(now));
+    }
+
+    void onChanges(List<MetadataChange> changes) {
+        for (final var change : changes) {
+            final var event = new MetadataChangeEvent(change.getSeq(), change.getPublicId(), change.isDeleted());
+            subscribers.forEach(subscriber -> subscriber.offer(event));
+        }
+    }
+
+    private class Subscriber {
+        private final SseEmitter emitter;
+        private final boolean includeMetadata;
+        private final BlockingQueue<MetadataChangeEvent> buffer = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private Long replayAfterSeq;
+
+        // Only used from the thread sending, changes already sent by the replay may also be buffered
+        private long lastSentSeq = 0;
+
+        // Set while an event is being sent, guarded by the subscriber
+        private Thread sendingThread;
+        private long sendStartedAt;
+        private boolean timedOut = false;
+
+        private Subscriber(SseEmitter emitter, Long replayAfterSeq, boolean includeMetadata) {
+            this.emitter = emitter;
+            this.replayAfterSeq = replayAfterSeq;
+            this.includeMetadata = includeMetadata;
+        }
+
+        private void offer(MetadataChangeEvent event) {
+            if (buffer.offer(event)) {
+                scheduleSend();
+            } else {
+                logger.info("Change stream subscriber too far behind, disconnecting");
+                disconnect();
+            }
+        }
+
+        private void disconnect() {
+            subscribers.remove(this);
+            emitter.complete();
+        }
+
+        // The send can not be cancelled, the emitter is locked while sending. The thread is interrupted, and the
+        // subscriber is completed with an error once the send returns, at the latest at the write timeout of the
+        // connection
+        private synchronized void checkStalled(long now) {
+            if (sendingThread != null && !timedOut && now - sendStartedAt > sendTimeout.toNanos()) {
+                logger.info("Change stream subscriber not receiving, disconnecting");
+                timedOut = true;
+                subscribers.remove(this);
+                sendingThread.interrupt();
+            }
+        }
+
+        private void scheduleSend() {
+            if (sending.compareAndSet(false, true)) {
+                executor.execute(this::send);
+            }
+        }
+
+        private void send() {
+            try {
+                if (replayAfterSeq != null) {
+                    replay(replayAfterSeq);
+                    replayAfterSeq = null;
+                }
+
+                final var events = new ArrayList<MetadataChangeEvent>();
+                while (buffer.drainTo(events) > 0) {
+                    send(events);
+                    events.clear();
+                }
+            } catch (IOException | InvalidPublicIdException | RuntimeException e) {
+                logger.debug("Failed to send to change stream subscriber", e);
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+                return;
+            } finally {
+                sending.set(false);
+            }
+
+            // An event may have been buffered after the buffer was drained but before sending was cleared
+            if (!buffer.isEmpty()) {
+                scheduleSend();
+            }
+        }
+
+        private void replay(long afterSeq) throws IOException, InvalidPublicIdException {
+            List<MetadataChangeEvent> events;
+            do {
+                events = changeFeedService.getChanges(afterSeq, REPLAY_PAGE_SIZE).stream().map(
+                        change -> new MetadataChangeEvent(change.getSeq(), change.getPublicId(), change.isDeleted()))
+                        .collect(Collectors.toList());
+
+                if (!events.isEmpty()) {
+                    send(events);
+                    afterSeq = events.get(events.size() - 1).getSeq();
+                }
+            } while (events.size() == REPLAY_PAGE_SIZE);
+        }
+
+        private void send(List<MetadataChangeEvent> events) throws IOException, InvalidPublicIdException {
+            final Map<String, MetadataDto> metadataByPublicId;
+            if (includeMetadata) {
+                final var publicIds = events.stream().filter(event -> !event.isDeleted())
+                        .map(MetadataChangeEvent::getPublicId).collect(Collectors.toSet());
+                metadataByPublicId = publicIds.isEmpty() ? Map.of()
+                        : metadataAggregatorService.getMetadataForTaxonomyEntities(publicIds).stream()
+                                .collect(Collectors.toMap(MetadataDto::getPublicId, Function.identity()));
+            } else {
+                metadataByPublicId = Map.of();
+            }
+
+            for (final var event : events) {
+                if (event.getSeq() <= lastSentSeq) {
+                    continue;
+                }
+
+                final var type = event.isDeleted() ? "deleted" : "changed";
+
+                send(SseEmitter.event().id(MetadataController.encodeChangeCursor(event.getSeq())).name(type)
+                        .data(new MetadataChangeEventDto(event.getPublicId(), type,
+                                metadataByPublicId.get(event.getPublicId())), MediaType.APPLICATION_JSON));
+                lastSentSeq = event.getSeq();
+            }
+        }
+
+        private void send(SseEmitter.SseEventBuilder event) throws IOException {
+            synchronized (this) {
+                sendingThread = Thread.currentThread();
+                sendStartedAt = System.nanoTime();
+            }
+
+            try {
+                emitter.send(event);
+            } finally {
+                synchronized (this) {
+                    sendingThread = null;
+                    if (timedOut) {
+                        // Not left for the next task of the thread
+                        Thread.interrupted();
+                    }
+                }
+            }
+
+            synchronized (this) {
+                if (timedOut) {
+                    throw new IOException("Timed out sending to change stream subscriber");
+                }
+            }
+        }
+    }
+}
@@ -1,19 +1,48 @@
 package no.ndla.taxnomy.metadataapi.rest;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.ndla.taxnomy.metadataapi.data.domain.MetadataChange;
 import no.ndla.taxnomy.metadataapi.data.domain.TaxonomyEntity;
 import no.ndla.taxnomy.metadataapi.rest.exception.InvalidRequestException;
+import no.ndla.taxnomy.metadataapi.service.ChangeFeedService;
+import no.ndla.taxnomy.metadataapi.service.CompetenceAimService;
 import no.ndla.taxnomy.metadataapi.service.CustomFieldService;
 import no.ndla.taxnomy.metadataapi.service.MetadataAggregatorService;
+import no.ndla.taxnomy.metadataapi.service.MetadataAggregatorServiceImpl;
+import no.ndla.taxnomy.metadataapi.service.MetadataFields;
+import no.ndla.taxnomy.metadataapi.service.MetadataQueryService;
+import no.ndla.taxnomy.metadataapi.service.PublicIdValidator;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataChangePageDto;
 import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataFacetQueryDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataFacetsDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataPageDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataPatchDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataQueryDto;
 import no.ndla.taxnomy.metadataapi.service.exception.InvalidDataException;
 import no.ndla.taxnomy.metadataapi.service.exception.InvalidPublicIdException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
@@ -24,19 +53,110 @@ import java.util.stream.Collectors;
 public class MetadataController {
     private final Logger logger = LoggerFactory.getLogger(MetadataController.class);
     private final MetadataAggregatorService metadataAggregatorService;
+    // Bypasses the cache, for reads that would only evict entries other callers need
+    private final MetadataAggregatorService uncachedMetadataAggregatorService;
     private final CustomFieldService customFieldService;
+    private final CompetenceAimService competenceAimService;
+    private final MetadataQueryService metadataQueryService;
+    private final PublicIdValidator publicIdValidator;
+    private final ChangeFeedService changeFeedService;
+    private final MetadataChangeStream metadataChangeStream;
+    private final ObjectMapper objectMapper;
+
+    // Ids are read from the database this many at a time by the batch lookup
+    static final int LOOKUP_CHUNK_SIZE = 500;
+    static final int LOOKUP_MAX_SIZE = 100_000;
+    static final int FACETS_MAX_CUSTOM_FIELDS = 20;
+    static final String MERGE_PATCH_JSON_VALUE = "application/merge-patch+json";
+    static final String PREFER = "Prefer";
+    static final String PREFERENCE_APPLIED = "Preference-Applied";
+    static final String PREFER_RETURN_MINIMAL = "return=minimal";
 
     public MetadataController(MetadataAggregatorService metadataAggregatorService,
-            CustomFieldService customFieldService) {
+            MetadataAggregatorServiceImpl uncachedMetadataAggregatorService, CustomFieldService customFieldService,
+            CompetenceAimService competenceAimService, MetadataQueryService metadataQueryService,
+            PublicIdValidator publicIdValidator, ChangeFeedService changeFeedService,
+            MetadataChangeStream metadataChangeStream, ObjectMapper objectMapper) {
         this.metadataAggregatorService = metadataAggregatorService;
+        this.uncachedMetadataAggregatorService = uncachedMetadataAggregatorService;
         this.customFieldService = customFieldService;
+        this.competenceAimService = competenceAimService;
+        this.metadataQueryService = metadataQueryService;
+        this.publicIdValidator = publicIdValidator;
+        this.changeFeedService = changeFeedService;
+        this.metadataChangeStream = metadataChangeStream;
+        this.objectMapper = objectMapper;
     }
 
     private Instant efficiencyWarnRatelimit = null;
 
+    static String eTag(String version, MetadataFormat format) {
+        return "\"" + version + format.getETagSuffix() + "\"";
+    }
+
+    static ResponseEntity.BodyBuilder withETag(ResponseEntity.BodyBuilder builder, String version,
+            MetadataFormat format) {
+        builder.varyBy(HttpHeaders.ACCEPT);
+
+        return version != null ? builder.eTag(eTag(version, format)) : builder;
+    }
+
+    // Compared here rather than with WebRequest.checkNotModified, which also writes the ETag to the response and would
+    // label a body read after the version with the version's ETag
+    static boolean ifNoneMatch(WebRequest webRequest, String eTag) {
+        final var ifNoneMatch = webRequest.getHeaderValues(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        // Weak comparison, as for GET
+        final var strongETag = eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+
+        return Arrays.stream(ifNoneMatch).flatMap(header -> Arrays.stream(header.split(","))).map(String::trim)
+                .map(value -> value.startsWith("W/") ? value.substring(2) : value)
+                .anyMatch(value -> value.equals("*") || value.equals(strongETag));
+    }
+
+    private static <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).varyBy(HttpHeaders.ACCEPT).build();
+    }
+
+    // The version of a list of metadata, does not depend on the order of the list
+    private static String combineVersions(Map<String, String> versionsByPublicId) {
+        final var combined = new StringBuilder();
+        new TreeMap<>(versionsByPublicId)
+                .forEach((publicId, version) -> combined.append(publicId).append('=').append(version).append('\n'));
+
+        return DigestUtils.md5DigestAsHex(combined.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String combineVersions(List<MetadataDto> metadataDtos) {
+        final var versionsByPublicId = new HashMap<String, String>();
+        metadataDtos
+                .forEach(metadataDto -> versionsByPublicId.put(metadataDto.getPublicId(), metadataDto.getVersion()));
+
+        return combineVersions(versionsByPublicId);
+    }
+
+    // Null for all fields
+    static MetadataFields parseFields(String fields) {
+        if (fields == null) {
+            return null;
+        }
+
+        try {
+            return MetadataFields.parse(fields);
+        } catch (InvalidDataException e) {
+            throw new InvalidRequestException(e);
+        }
+    }
+
     @GetMapping
-    public List<MetadataDto> getMultiple(@RequestParam(required = false) String publicIds,
-            @RequestParam(required = false) String key, @RequestParam(required = false) String value) {
+    public ResponseEntity<List<MetadataDto>> getMultiple(@RequestParam(required = false) String publicIds,
+            @RequestParam(required = false) String key, @RequestParam(required = false) String value,
+            @RequestParam(required = false) String fields, WebRequest webRequest) {
+        final var metadataFields = parseFields(fields);
+
         // Read comma separated list of unique publicIds in query parameter
 
         final Set<String> publicIdSet;
@@ -83,7 +203,7 @@ public class MetadataController {
                 }
             }
         } else if (publicIds.length() == 0) {
-            return List.of();
+            return ResponseEntity.ok(List.of());
         } else if (key != null || value != null) {
             if (key == null || value == null) {
                 throw new InvalidRequestException("Query publicIds and none or both key/value not specified");
@@ -104,38 +224,447 @@ public class MetadataController {
         }
 
         try {
-            return metadataAggregatorService.getMetadataForTaxonomyEntities(publicIdSet);
+            final var format = MetadataFormat.fromAccept(webRequest.getHeader(HttpHeaders.ACCEPT));
+
+            // Only checks the versions, without assembling the metadata, when the client has a cached copy
+            if (webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+                final var eTag = eTag(combineVersions(metadataAggregatorService.getMetadataVersions(publicIdSet)),
+                        format);
+                if (ifNoneMatch(webRequest, eTag)) {
+                    return notModified(eTag);
+                }
+            }
+
+            final var metadataDtos = metadataFields != null
+                    ? metadataAggregatorService.getMetadataForTaxonomyEntities(publicIdSet, metadataFields)
+                    : metadataAggregatorService.getMetadataForTaxonomyEntities(publicIdSet);
+
+            return withETag(ResponseEntity.ok(), combineVersions(metadataDtos), format).body(metadataDtos);
+        } catch (InvalidPublicIdException e) {
+            throw new InvalidRequestException(e);
+        }
+    }
+
+    /**
+     * Takes a map of publicId to the version last seen by the client, and returns the metadata of the entities that
+     * have changed since.
+     */
+    @PostMapping("/revalidate")
+    public List<MetadataDto> revalidate(@RequestBody Map<String, String> knownVersions) {
+        if (knownVersions.size() > 100) {
+            throw new InvalidRequestException("Cannot get metadata for more than 100 entities in each request");
+        }
+
+        try {
+            final var currentVersions = metadataAggregatorService.getMetadataVersions(knownVersions.keySet());
+            final var changedPublicIds = knownVersions.keySet().stream()
+                    .filter(publicId -> !Objects.equals(currentVersions.get(publicId), knownVersions.get(publicId)))
+                    .collect(Collectors.toSet());
+
+            if (changedPublicIds.isEmpty()) {
+                return List.of();
+            }
+
+            return metadataAggregatorService.getMetadataForTaxonomyEntities(changedPublicIds);
+        } catch (InvalidPublicIdException e) {
+            throw new InvalidRequestException(e);
+        }
+    }
+
+    // Reads the ids of a lookup request a chunk at a time, in the size they are read from the database in, so only one
+    // chunk is held in memory. The ids are validated, and duplicates within a chunk left out
+    private static class LookupReader implements Closeable {
+        private final JsonParser parser;
+        private final PublicIdValidator publicIdValidator;
+        private int count;
+        private boolean ended;
+
+        private LookupReader(JsonParser parser, PublicIdValidator publicIdValidator) throws IOException {
+            this.parser = parser;
+            this.publicIdValidator = publicIdValidator;
+
+            try {
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new InvalidRequestException("Expected an array of publicIds");
+                }
+            } catch (JsonProcessingException e) {
+                throw new InvalidRequestException("Expected an array of publicIds");
+            }
+        }
+
+        // Empty when all the ids have been read
+        private List<String> nextChunk() throws IOException {
+            final var chunk = new LinkedHashSet<String>();
+
+            try {
+                while (!ended && chunk.size() < LOOKUP_CHUNK_SIZE) {
+                    final var token = parser.nextToken();
+                    if (token == JsonToken.END_ARRAY) {
+                        ended = true;
+                        break;
+                    }
+                    if (token == JsonToken.VALUE_NULL) {
+                        throw new InvalidRequestException("Null publicId in request");
+                    }
+                    if (token != JsonToken.VALUE_STRING) {
+                        throw new InvalidRequestException("Expected an array of publicIds");
+                    }
+
+                    final var publicId = parser.getText();
+                    if (!chunk.add(publicId)) {
+                        continue;
+                    }
+                    if (++count > LOOKUP_MAX_SIZE) {
+                        throw new InvalidRequestException(
+                                "Cannot get metadata for more than " + LOOKUP_MAX_SIZE + " entities in each request");
+                    }
+                    publicIdValidator.validatePublicId(publicId);
+                }
+            } catch (JsonProcessingException e) {
+                throw new InvalidRequestException("Expected an array of publicIds");
+            } catch (InvalidPublicIdException e) {
+                throw new InvalidRequestException(e);
+            }
+
+            return List.copyOf(chunk);
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+
+    /**
+     * Looks up the metadata of a large number of entities. The ids are read from the request, and the metadata read
+     * and written to the response, one chunk at a time, so memory use does not grow with the number of ids. The
+     * metadata is read past the cache, a lookup would otherwise evict the entries of the entities most often read.
+     *
+     * The first chunk is validated before anything is returned. An invalid id, or too many ids, in a later chunk aborts
+     * the response, which is then left without the end of the array. Duplicates are returned once if they are within
+     * the same chunk.
+     */
+    @PostMapping(path = "/lookup", consumes = MediaType.APPLICATION_JSON_VALUE, produces = {
+            MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE,
+            MetadataFormat.APPLICATION_SMILE_VALUE })
+    public ResponseEntity<StreamingResponseBody> lookup(InputStream body,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) throws IOException {
+        final var parser = objectMapper.getFactory().createParser(body);
+        final LookupReader reader;
+        final List<String> firstChunk;
+        try {
+            reader = new LookupReader(parser, publicIdValidator);
+            firstChunk = reader.nextChunk();
+        } catch (InvalidRequestException | IOException e) {
+            parser.close();
+            throw e;
+        }
+
+        final var format = MetadataFormat.fromAccept(accept);
+
+        return ResponseEntity.ok().contentType(format.getMediaType()).varyBy(HttpHeaders.ACCEPT).body(outputStream -> {
+            try (reader; final var generator = format.getJsonFactory().createGenerator(outputStream)) {
+                // The array is not ended on close, a response aborted by an invalid id must not look complete
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+                generator.writeStartArray();
+
+                for (var chunk = firstChunk; !chunk.isEmpty(); chunk = reader.nextChunk()) {
+                    for (final var metadataDto : uncachedMetadataAggregatorService
+                            .getMetadataForTaxonomyEntities(chunk)) {
+                        objectMapper.writeValue(generator, metadataDto);
+                    }
+                    generator.flush();
+                }
+
+                generator.writeEndArray();
+            } catch (InvalidPublicIdException e) {
+                // Already validated
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static String encodeCursor(String publicId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(publicId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("Invalid cursor " + cursor);
+        }
+    }
+
+    // Cursors of the change feed, also used as event ids of the change stream
+    static String encodeChangeCursor(long seq) {
+        return encodeCursor(Long.toString(seq));
+    }
+
+    static long decodeChangeCursor(String cursor) {
+        try {
+            return Long.parseLong(decodeCursor(cursor));
+        } catch (NumberFormatException e) {
+            throw new InvalidRequestException("Invalid cursor " + cursor);
+        }
+    }
+
+    @FunctionalInterface
+    private interface PublicIdPageReader {
+        List<String> read(String afterPublicId, int limit) throws InvalidDataException;
+    }
+
+    private MetadataPageDto getPage(String cursor, int pageSize, boolean includeMetadata, PublicIdPageReader reader) {
+        if (pageSize < 1 || pageSize > 1000) {
+            throw new InvalidRequestException("pageSize must be between 1 and 1000");
+        }
+
+        try {
+            // Reads one more than the page size to know if there is a next page
+            final var publicIds = reader.read(decodeCursor(cursor), pageSize + 1);
+            final var pagePublicIds = publicIds.subList(0, Math.min(pageSize, publicIds.size()));
+            final var next = publicIds.size() > pageSize ? encodeCursor(pagePublicIds.get(pageSize - 1)) : null;
+
+            if (!includeMetadata) {
+                return new MetadataPageDto(pagePublicIds.stream().map(MetadataDto::new).collect(Collectors.toList()),
+                        next);
+            }
+
+            return new MetadataPageDto(metadataAggregatorService.getMetadataForTaxonomyEntities(pagePublicIds), next);
+        } catch (InvalidDataException | InvalidPublicIdException e) {
+            throw new InvalidRequestException(e);
+        }
+    }
+
+    @GetMapping("/by_custom_field")
+    public MetadataPageDto getPageByKeyValue(@RequestParam String key, @RequestParam(required = false) String value,
+            @RequestParam(required = false) String cursor, @RequestParam(defaultValue = "100") int pageSize) {
+        return getPage(cursor, pageSize, true, (afterPublicId, limit) -> customFieldService
+                .getTaxonomyEntityPublicIdsByCustomFieldKeyValue(key, value, afterPublicId, limit));
+    }
+
+    /**
+     * Pages through the entities with a competence aim, given by its code or a prefix of the code. Codes are stored in
+     * upper case, so the code is matched in any case. Returns only the publicIds of the entities if includeMetadata is
+     * false.
+     */
+    @GetMapping("/by_competence_aim")
+    public MetadataPageDto getPageByCompetenceAim(@RequestParam(required = false) String code,
+            @RequestParam(required = false) String codePrefix, @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int pageSize,
+            @RequestParam(defaultValue = "true") boolean includeMetadata) {
+        if ((code == null) == (codePrefix == null)) {
+            throw new InvalidRequestException("Either code or codePrefix must be specified");
+        }
+        if (codePrefix != null && codePrefix.isEmpty()) {
+            throw new InvalidRequestException("codePrefix must not be empty");
+        }
+
+        final var upperCaseCode = (code != null ? code : codePrefix).toUpperCase();
+
+        return getPage(cursor, pageSize, includeMetadata, (afterPublicId, limit) -> competenceAimService
+                .getTaxonomyEntityPublicIdsByCompetenceAim(upperCaseCode, codePrefix != null, afterPublicId, limit));
+    }
+
+    /**
+     * Pages through the entities matching a query combining custom fields, competence aims and visibility with
+     * and/or/not, see {@link MetadataQueryDto}.
+     */
+    @PostMapping("/query")
+    public MetadataPageDto query(@RequestBody MetadataQueryDto queryDto) {
+        return getPage(queryDto.getCursor(), queryDto.getPageSize(), queryDto.isIncludeMetadata(), (afterPublicId,
+                limit) -> metadataQueryService.findTaxonomyEntityPublicIds(queryDto.getQuery(), afterPublicId, limit));
+    }
+
+    /**
+     * Counts the values of custom fields and the competence aims of the entities matching an optional query, returning
+     * the most common values of each.
+     */
+    @PostMapping("/facets")
+    public MetadataFacetsDto facets(@RequestBody MetadataFacetQueryDto facetQueryDto) {
+        final var customFieldKeys = facetQueryDto.getCustomFields() != null ? facetQueryDto.getCustomFields()
+                : List.<String> of();
+        if (customFieldKeys.size() > FACETS_MAX_CUSTOM_FIELDS) {
+            throw new InvalidRequestException(
+                    "Facets for more than " + FACETS_MAX_CUSTOM_FIELDS + " custom fields requested");
+        }
+        if (customFieldKeys.stream().anyMatch(Objects::isNull)) {
+            throw new InvalidRequestException("Null custom field key in request");
+        }
+        if (facetQueryDto.getLimit() < 1 || facetQueryDto.getLimit() > 1000) {
+            throw new InvalidRequestException("limit must be between 1 and 1000");
+        }
+
+        try {
+            return metadataQueryService.getFacets(facetQueryDto.getQuery(), new LinkedHashSet<>(customFieldKeys),
+                    facetQueryDto.isCompetenceAims(), facetQueryDto.getLimit());
+        } catch (InvalidDataException e) {
+            throw new InvalidRequestException(e);
+        }
+    }
+
+    /**
+     * Pages through the entities changed since the cursor, each entity is returned once with its current metadata or as
+     * deleted. Start without a cursor to get all entities, then keep the returned cursor to get later changes. The
+     * metadata is read past the cache, a cached copy older than the change would be lost to the client for good.
+     */
+    @GetMapping("/changes")
+    public MetadataChangePageDto getChanges(@RequestParam(required = false) String since,
+            @RequestParam(defaultValue = "100") int pageSize) {
+        if (pageSize < 1 || pageSize > 1000) {
+            throw new InvalidRequestException("pageSize must be between 1 and 1000");
+        }
+
+        final var changes = changeFeedService.getChanges(since != null ? decodeChangeCursor(since) : 0, pageSize);
+
+        final var changedPublicIds = changes.stream().filter(change -> !change.isDeleted())
+                .map(MetadataChange::getPublicId).collect(Collectors.toList());
+        final var deletedPublicIds = changes.stream().filter(MetadataChange::isDeleted).map(MetadataChange::getPublicId)
+                .collect(Collectors.toList());
+        final var next = changes.isEmpty() ? since : encodeChangeCursor(changes.get(changes.size() - 1).getSeq());
+
+        try {
+            return new MetadataChangePageDto(
+                    changedPublicIds.isEmpty() ? List.of()
+                            : uncachedMetadataAggregatorService.getMetadataForTaxonomyEntities(changedPublicIds),
+                    deletedPublicIds, next != null ? next : encodeChangeCursor(0));
         } catch (InvalidPublicIdException e) {
             throw new InvalidRequestException(e);
         }
     }
 
+    /**
+     * Streams the changes as server-sent events as they are committed. Without a cursor only changes from now on are
+     * sent, with a cursor (the id of the last event received, or a cursor from the change feed) the changes since the
+     * cursor are sent first. Events may be sent more than once. Changes committed by other instances are sent within
+     * the change feed poll interval.
+     */
+    @GetMapping(path = "/changes/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestHeader(name = "Last-Event-ID", required = false) String lastEventId,
+            @RequestParam(required = false) String since,
+            @RequestParam(defaultValue = "false") boolean includeMetadata) {
+        final var cursor = lastEventId != null ? lastEventId : since;
+
+        return metadataChangeStream.subscribe(cursor != null ? decodeChangeCursor(cursor) : null, includeMetadata);
+    }
+
     @GetMapping("/{publicId}")
-    public MetadataDto get(@PathVariable String publicId) {
+    public ResponseEntity<MetadataDto> get(@PathVariable String publicId, @RequestParam(required = false) String fields,
+            WebRequest webRequest) {
+        final var metadataFields = parseFields(fields);
+
         try {
-            return metadataAggregatorService.getMetadataForTaxonomyEntity(publicId);
+            final var format = MetadataFormat.fromAccept(webRequest.getHeader(HttpHeaders.ACCEPT));
+
+            // Only checks the version, without assembling the metadata, when the client has a cached copy
+            if (webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+                final var eTag = eTag(metadataAggregatorService.getMetadataVersion(publicId), format);
+                if (ifNoneMatch(webRequest, eTag)) {
+                    return notModified(eTag);
+                }
+            }
+
+            final var metadataDto = metadataFields != null
+                    ? metadataAggregatorService.getMetadataForTaxonomyEntity(publicId, metadataFields)
+                    : metadataAggregatorService.getMetadataForTaxonomyEntity(publicId);
+
+            return withETag(ResponseEntity.ok(), metadataDto.getVersion(), format).body(metadataDto);
         } catch (InvalidPublicIdException e) {
             throw new InvalidRequestException(e);
         }
     }
 
+    // True if the client asked for no response body with the Prefer header (RFC 7240)
+    static boolean prefersMinimalReturn(String prefer) {
+        if (prefer == null) {
+            return false;
+        }
+
+        return Arrays.stream(prefer.split(",")).map(preference -> preference.split(";", 2)[0].trim())
+                .anyMatch(preference -> preference.equalsIgnoreCase(PREFER_RETURN_MINIMAL));
+    }
+
+    private static <T> ResponseEntity<T> minimalReturn() {
+        return ResponseEntity.noContent().header(PREFERENCE_APPLIED, PREFER_RETURN_MINIMAL).build();
+    }
+
+    /**
+     * Updates the metadata and returns it as stored. With Prefer: return=minimal the metadata is not read back, and 204
+     * is returned without a body.
+     */
     @PutMapping("/{publicId}")
-    public MetadataDto put(@PathVariable String publicId, @RequestBody @Valid MetadataDto requestMetadataDto,
-            BindingResult bindingResult) {
+    public ResponseEntity<MetadataDto> put(@PathVariable String publicId,
+            @RequestBody @Valid MetadataDto requestMetadataDto, BindingResult bindingResult,
+            @RequestHeader(value = PREFER, required = false) String prefer) {
         if (bindingResult.hasErrors()) {
             throw new InvalidRequestException(bindingResult.getErrorCount() + " errors in provided body, first error: "
                     + bindingResult.getAllErrors().get(0));
         }
 
         try {
-            return metadataAggregatorService.updateMetadataForTaxonomyEntity(publicId, requestMetadataDto);
+            if (prefersMinimalReturn(prefer)) {
+                metadataAggregatorService.writeMetadataForTaxonomyEntity(publicId, requestMetadataDto);
+
+                return minimalReturn();
+            }
+
+            return ResponseEntity
+                    .ok(metadataAggregatorService.updateMetadataForTaxonomyEntity(publicId, requestMetadataDto));
         } catch (InvalidDataException | InvalidPublicIdException e) {
             throw new InvalidRequestException(e);
         }
     }
 
     @PutMapping("/")
-    public List<MetadataDto> putBulk(@RequestBody @Valid MetadataDto[] requestMetadataDtos,
+    public ResponseEntity<List<MetadataDto>> putBulk(@RequestBody @Valid MetadataDto[] requestMetadataDtos,
+            BindingResult bindingResult, @RequestHeader(value = PREFER, required = false) String prefer) {
+        if (bindingResult.hasErrors()) {
+            throw new InvalidRequestException(bindingResult.getErrorCount() + " errors in provided body, first error: "
+                    + bindingResult.getAllErrors().get(0));
+        }
+
+        try {
+            if (prefersMinimalReturn(prefer)) {
+                metadataAggregatorService.writeMetadataForTaxonomyEntities(Arrays.asList(requestMetadataDtos));
+
+                return minimalReturn();
+            }
+
+            return ResponseEntity.ok(
+                    metadataAggregatorService.updateMetadataForTaxonomyEntities(Arrays.asList(requestMetadataDtos)));
+        } catch (InvalidDataException | InvalidPublicIdException e) {
+            throw new InvalidRequestException(e);
+        }
+    }
+
+    /**
+     * Applies a JSON merge patch (RFC 7396) to the metadata, only the competence aims, custom fields and visibility in
+     * the patch are written.
+     */
+    @PatchMapping(path = "/{publicId}", consumes = MERGE_PATCH_JSON_VALUE)
+    public MetadataDto patch(@PathVariable String publicId, @RequestBody @Valid MetadataPatchDto requestPatchDto,
+            BindingResult bindingResult) {
+        if (bindingResult.hasErrors()) {
+            throw new InvalidRequestException(bindingResult.getErrorCount() + " errors in provided body, first error: "
+                    + bindingResult.getAllErrors().get(0));
+        }
+
+        try {
+            return metadataAggregatorService.patchMetadataForTaxonomyEntity(publicId, requestPatchDto);
+        } catch (InvalidDataException | InvalidPublicIdException e) {
+            throw new InvalidRequestException(e);
+        }
+    }
+
+    /**
+     * Applies a JSON merge patch to the metadata of each entity, the publicId of each patch names the entity.
+     */
+    @PatchMapping(path = "/", consumes = MERGE_PATCH_JSON_VALUE)
+    public List<MetadataDto> patchBulk(@RequestBody @Valid MetadataPatchDto[] requestPatchDtos,
             BindingResult bindingResult) {
         if (bindingResult.hasErrors()) {
             throw new InvalidRequestException(bindingResult.getErrorCount() + " errors in provided body, first error: "
@@ -143,7 +672,7 @@ public class MetadataController {
         }
 
         try {
-            return metadataAggregatorService.updateMetadataForTaxonomyEntities(Arrays.asList(requestMetadataDtos));
+            return metadataAggregatorService.patchMetadataForTaxonomyEntities(Arrays.asList(requestPatchDtos));
         } catch (InvalidDataException | InvalidPublicIdException e) {
             throw new InvalidRequestException(e);
         }
@@ -0,0 +1,65 @@
+package no.ndla.taxnomy.metadataapi.rest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+/**
+ * The encodings metadata is returned in, picked from the Accept header the same way as the message converters do. JSON
+ * unless one of the binary formats is preferred.
+ */
+enum MetadataFormat {
+    JSON(MediaType.APPLICATION_JSON, "", new JsonFactory()),
+    CBOR(MediaType.APPLICATION_CBOR, "-cbor", new CBORFactory()),
+    SMILE(new MediaType("application", "x-jackson-smile"), "-smile", new SmileFactory());
+
+    static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    private final MediaType mediaType;
+    private final String eTagSuffix;
+    private final JsonFactory jsonFactory;
+
+    MetadataFormat(MediaType mediaType, String eTagSuffix, JsonFactory jsonFactory) {
+        this.mediaType = mediaType;
+        this.eTagSuffix = eTagSuffix;
+        this.jsonFactory = jsonFactory;
+    }
+
+    static MetadataFormat fromAccept(String accept) {
+        if (accept == null) {
+            return JSON;
+        }
+
+        try {
+            final var acceptedTypes = MediaType.parseMediaTypes(accept);
+            MediaType.sortBySpecificityAndQuality(acceptedTypes);
+
+            for (final var acceptedType : acceptedTypes) {
+                for (final var format : values()) {
+                    if (acceptedType.includes(format.mediaType)) {
+                        return format;
+                    }
+                }
+            }
+        } catch (InvalidMediaTypeException e) {
+            return JSON;
+        }
+
+        return JSON;
+    }
+
+    MediaType getMediaType() {
+        return mediaType;
+    }
+
+    // The same version has different representations in each format, so they can not share strong ETags
+    String getETagSuffix() {
+        return eTagSuffix;
+    }
+
+    JsonFactory getJsonFactory() {
+        return jsonFactory;
+    }
+}
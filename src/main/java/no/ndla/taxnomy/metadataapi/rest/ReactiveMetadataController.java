@@ -0,0 +1,99 @@
+package no.ndla.taxnomy.metadataapi.rest;
+
+import no.ndla.taxnomy.metadataapi.rest.exception.InvalidRequestException;
+import no.ndla.taxnomy.metadataapi.service.MetadataFields;
+import no.ndla.taxnomy.metadataapi.service.ReactiveMetadataReadService;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import no.ndla.taxnomy.metadataapi.service.exception.InvalidPublicIdException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Serves the reads by publicId of {@link MetadataController} without blocking, with the reactive profile. The request
+ * thread is released while the metadata is read through R2DBC, so concurrent reads are not limited by the number of
+ * request threads or JDBC connections.
+ *
+ * The mappings take precedence over the ones of {@link MetadataController} by being more specific, reads by custom
+ * field are still served by {@link MetadataController}. Conditional requests are answered by Spring MVC from the
+ * returned ETag.
+ */
+@RestController
+@RequestMapping("/v1/taxonomy_entities")
+@Profile("reactive")
+public class ReactiveMetadataController {
+    private final ReactiveMetadataReadService reactiveMetadataReadService;
+
+    public ReactiveMetadataController(ReactiveMetadataReadService reactiveMetadataReadService) {
+        this.reactiveMetadataReadService = reactiveMetadataReadService;
+    }
+
+    private static MetadataFields parseFields(String fields) {
+        final var metadataFields = MetadataController.parseFields(fields);
+
+        return metadataFields != null ? metadataFields : MetadataFields.ALL;
+    }
+
+    @GetMapping(params = { "publicIds", "!key", "!value" })
+    public Mono<ResponseEntity<List<MetadataDto>>> getMultiple(@RequestParam String publicIds,
+            @RequestParam(required = false) String fields,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept) {
+        final var metadataFields = parseFields(fields);
+
+        if (publicIds.length() == 0) {
+            return Mono.just(ResponseEntity.ok(List.of()));
+        }
+
+        final var publicIdSet = new LinkedHashSet<>(Arrays.asList(publicIds.split(",")));
+        if (publicIdSet.size() > 100) {
+            throw new InvalidRequestException("Cannot get metadata for more than 100 entities in each request");
+        }
+
+        try {
+            final var format = MetadataFormat.fromAccept(accept);
+
+            return reactiveMetadataReadService.getMetadataForTaxonomyEntities(publicIdSet, metadataFields)
+                    .map(metadataDtos -> MetadataController
+                            .withETag(ResponseEntity.ok(), MetadataController.combineVersions(metadataDtos), format)
+                            .body(metadataDtos));
+        } catch (InvalidPublicIdException e) {
+            throw new InvalidRequestException(e);
+        }
+    }
+
+    // Two mappings, with and without fields, to be more specific than the mapping of MetadataController
+    @GetMapping(path = "/{publicId}", params = "!fields")
+    public Mono<ResponseEntity<MetadataDto>> get(@PathVariable String publicId,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept) {
+        return get(publicId, MetadataFields.ALL, accept);
+    }
+
+    @GetMapping(path = "/{publicId}", params = "fields")
+    public Mono<ResponseEntity<MetadataDto>> getFields(@PathVariable String publicId, @RequestParam String fields,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept) {
+        return get(publicId, parseFields(fields), accept);
+    }
+
+    private Mono<ResponseEntity<MetadataDto>> get(String publicId, MetadataFields fields, String accept) {
+        try {
+            final var format = MetadataFormat.fromAccept(accept);
+
+            return reactiveMetadataReadService.getMetadataForTaxonomyEntity(publicId, fields)
+                    .map(metadataDto -> MetadataController
+                            .withETag(ResponseEntity.ok(), metadataDto.getVersion(), format).body(metadataDto));
+        } catch (InvalidPublicIdException e) {
+            throw new InvalidRequestException(e);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import no.ndla.taxnomy.metadataapi.data.domain.MetadataChange;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataPatchDto;
+import no.ndla.taxnomy.metadataapi.service.exception.InvalidDataException;
+import no.ndla.taxnomy.metadataapi.service.exception.InvalidPublicIdException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Read-through cache of assembled {@link MetadataDto}s in front of {@link MetadataAggregatorServiceImpl}. Entities
+ * without metadata are cached as the empty DTO the aggregator returns for them, unless the {@link StoredPublicIdFilter}
+ * tells they are not stored, then the empty DTO is returned without any database work. Concurrent loads of the same
+ * entity are coalesced, callers wanting an entity that is already being loaded wait for that load. Single entities are
+ * loaded through the {@link MetadataBatchLoader}, batching concurrent loads of different entities if enabled.
+ *
+ * Writes through this service invalidate the entities written when done. Every change is also read from the change feed
+ * by the {@link ChangeFeedReader} and invalidates the entities changed. Changes committed by other instances can so be
+ * served stale for up to metadata.changes.poll-interval, as can changes committed here if a read from a read replica
+ * that had not replayed them yet was cached after the write.
+ *
+ * Cached objects are shared between callers and must not be modified.
+ */
+@Service
+@Primary
+public class CachingMetadataAggregatorService implements MetadataAggregatorService {
+    private final MetadataAggregatorService metadataAggregatorService;
+    private final StoredPublicIdFilter storedPublicIdFilter;
+    private final PublicIdValidator publicIdValidator;
+    private final MetadataBatchLoader metadataBatchLoader;
+    private final GenerationalCache<String, MetadataDto> cache;
+
+    // Loads in progress by publicId
+    private final ConcurrentHashMap<String, CompletableFuture<MetadataDto>> inFlight = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    private interface Loader {
+        List<MetadataDto> load(Collection<String> publicIds) throws InvalidPublicIdException;
+    }
+
+    @Autowired
+    public CachingMetadataAggregatorService(MetadataAggregatorServiceImpl metadataAggregatorService,
+            StoredPublicIdFilter storedPublicIdFilter, PublicIdValidator publicIdValidator,
+            MetadataBatchLoader metadataBatchLoader, ChangeFeedReader changeFeedReader, MeterRegistry meterRegistry,
+            @Value("${metadata.cache.maximum-size:10000}") long maximumSize,
+            @Value("${metadata.cache.expire-after-write:10m}") Duration expireAfterWrite) {
+        this(metadataAggregatorService, storedPublicIdFilter, publicIdValidator, metadataBatchLoader, Caffeine
+                .newBuilder().maximumSize(maximumSize).expireAfterWrite(expireAfterWrite).recordStats().build());
+
+        changeFeedReader.addListener(this::onChanges);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.getCache(), "metadata");
+    }
+
+    CachingMetadataAggregatorService(MetadataAggregatorService metadataAggregatorService,
+            StoredPublicIdFilter storedPublicIdFilter, PublicIdValidator publicIdValidator,
+            MetadataBatchLoader metadataBatchLoader, Cache<String, MetadataDto> cache) {
+        this.metadataAggregatorService = metadataAggregatorService;
+        this.storedPublicIdFilter = storedPublicIdFilter;
+        this.publicIdValidator = publicIdValidator;
+        this.metadataBatchLoader = metadataBatchLoader;
+        this.cache = new GenerationalCache<>(cache);
+    }
+
+    void onChanges(List<MetadataChange> changes) {
+        invalidate(changes.stream().map(MetadataChange::getPublicId).collect(Collectors.toSet()));
+    }
+
+    // Returns the publicIds certainly not stored, validated since they are not passed on
+    private Set<String> filterNotStored(Collection<String> publicIds) throws InvalidPublicIdException {
+        final var notStored = new HashSet<String>();
+        for (final var publicId : publicIds) {
+            if (!storedPublicIdFilter.mightBeStored(publicId)) {
+                publicIdValidator.validatePublicId(publicId);
+                notStored.add(publicId);
+            }
+        }
+
+        return notStored;
+    }
+
+    private MetadataDto countFalsePositive(MetadataDto loaded) {
+        if (MetadataVersions.EMPTY.equals(loaded.getVersion())) {
+            storedPublicIdFilter.recordFalsePositive();
+        }
+
+        return loaded;
+    }
+
+    private void invalidate(Collection<String> publicIds) {
+        cache.invalidateAll(publicIds);
+
+        // Callers from now on do not wait for loads that may have read from before the write
+        publicIds.forEach(inFlight::remove);
+    }
+
+    private Map<String, MetadataDto> loadAndCache(Collection<String> publicIds, Loader loader)
+            throws InvalidPublicIdException {
+        final var loadGeneration = cache.getGeneration();
+        final var loaded = new HashMap<String, MetadataDto>();
+
+        for (final var metadataDto : loader.load(publicIds)) {
+            loaded.put(metadataDto.getPublicId(), countFalsePositive(metadataDto));
+            cache.putIfNotInvalidated(metadataDto.getPublicId(), metadataDto, loadGeneration);
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Loads the entities not already being loaded in one call to the loader, then waits for the loads of the rest. If a
+     * load waited for fails, the entities are loaded again by this caller, the failure may be caused by another entity
+     * of that load.
+     */
+    private Map<String, MetadataDto> loadCoalesced(Collection<String> publicIds, Loader loader)
+            throws InvalidPublicIdException {
+        final var claimed = new LinkedHashMap<String, CompletableFuture<MetadataDto>>();
+        final var waiting = new HashMap<String, CompletableFuture<MetadataDto>>();
+
+        for (final var publicId : publicIds) {
+            final var future = new CompletableFuture<MetadataDto>();
+            final var existing = inFlight.putIfAbsent(publicId, future);
+
+            if (existing == null) {
+                claimed.put(publicId, future);
+            } else {
+                waiting.put(publicId, existing);
+            }
+        }
+
+        final var loaded = new HashMap<String, MetadataDto>();
+
+        if (!claimed.isEmpty()) {
+            try {
+                loaded.putAll(loadAndCache(claimed.keySet(), loader));
+                claimed.forEach((publicId, future) -> future.complete(loaded.get(publicId)));
+            } catch (Throwable e) {
+                // Errors as well, callers waiting would otherwise wait forever
+                claimed.values().forEach(future -> future.completeExceptionally(e));
+                throw e;
+            } finally {
+                claimed.forEach(inFlight::remove);
+            }
+        }
+
+        final var failed = new LinkedHashSet<String>();
+        for (final var entry : waiting.entrySet()) {
+            try {
+                loaded.put(entry.getKey(), entry.getValue().join());
+            } catch (CompletionException | CancellationException e) {
+                failed.add(entry.getKey());
+            }
+        }
+
+        if (!failed.isEmpty()) {
+            loaded.putAll(loadAndCache(failed, loader));
+        }
+
+        return loaded;
+    }
+
+    @Override
+    public List<MetadataDto> getMetadataForTaxonomyEntities(Collection<String> publicIds)
+            throws InvalidPublicIdException {
+        final var metadataDtos = new HashMap<>(cache.getAllPresent(publicIds));
+        for (final var publicId : filterNotStored(publicIds)) {
+            metadataDtos.put(publicId, MetadataAggregatorServiceImpl.createEmptyDto(publicId));
+        }
+
+        final var publicIdsToLoad = publicIds.stream().filter(publicId -> !metadataDtos.containsKey(publicId))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        if (!publicIdsToLoad.isEmpty()) {
+            metadataDtos
+                    .putAll(loadCoalesced(publicIdsToLoad, metadataAggregatorService::getMetadataForTaxonomyEntities));
+        }
+
+        return publicIds.stream().map(metadataDtos::get).collect(Collectors.toList());
+    }
+
+    @Override
+    public MetadataDto getMetadataForTaxonomyEntity(String publicId) throws InvalidPublicIdException {
+        final var cached = cache.getIfPresent(publicId);
+        if (cached != null) {
+            return cached;
+        }
+        if (!filterNotStored(List.of(publicId)).isEmpty()) {
+            return MetadataAggregatorServiceImpl.createEmptyDto(publicId);
+        }
+
+        return loadCoalesced(List.of(publicId), publicIds -> List.of(metadataBatchLoader.load(publicId))).get(publicId);
+    }
+
+    // Fields of cached metadata are projected from the complete metadata, partial metadata is not cached
+    @Override
+    public List<MetadataDto> getMetadataForTaxonomyEntities(Collection<String> publicIds, MetadataFields fields)
+            throws InvalidPublicIdException {
+        if (fields.isAll()) {
+            return getMetadataForTaxonomyEntities(publicIds);
+        }
+
+        final var metadataDtos = new HashMap<String, MetadataDto>();
+        cache.getAllPresent(publicIds)
+                .forEach((publicId, metadataDto) -> metadataDtos.put(publicId, fields.project(metadataDto)));
+        for (final var publicId : filterNotStored(publicIds)) {
+            metadataDtos.put(publicId, fields.project(MetadataAggregatorServiceImpl.createEmptyDto(publicId)));
+        }
+
+        final var publicIdsToLoad = publicIds.stream().filter(publicId -> !metadataDtos.containsKey(publicId))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        if (!publicIdsToLoad.isEmpty()) {
+            metadataAggregatorService.getMetadataForTaxonomyEntities(publicIdsToLoad, fields).forEach(
+                    metadataDto -> metadataDtos.put(metadataDto.getPublicId(), countFalsePositive(metadataDto)));
+        }
+
+        return publicIds.stream().map(metadataDtos::get).collect(Collectors.toList());
+    }
+
+    @Override
+    public MetadataDto getMetadataForTaxonomyEntity(String publicId, MetadataFields fields)
+            throws InvalidPublicIdException {
+        if (fields.isAll()) {
+            return getMetadataForTaxonomyEntity(publicId);
+        }
+
+        final var cached = cache.getIfPresent(publicId);
+        if (cached != null) {
+            return fields.project(cached);
+        }
+        if (!filterNotStored(List.of(publicId)).isEmpty()) {
+            return fields.project(MetadataAggregatorServiceImpl.createEmptyDto(publicId));
+        }
+
+        return countFalsePositive(metadataAggregatorService.getMetadataForTaxonomyEntity(publicId, fields));
+    }
+
+    @Override
+    public String getMetadataVersion(String publicId) throws InvalidPublicIdException {
+        final var cached = cache.getIfPresent(publicId);
+        if (cached != null) {
+            return cached.getVersion();
+        }
+        if (!filterNotStored(List.of(publicId)).isEmpty()) {
+            return MetadataVersions.EMPTY;
+        }
+
+        return metadataAggregatorService.getMetadataVersion(publicId);
+    }
+
+    @Override
+    public Map<String, String> getMetadataVersions(Collection<String> publicIds) throws InvalidPublicIdException {
+        final var versions = cache.getAllPresent(publicIds).entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().getVersion()));
+        for (final var publicId : filterNotStored(publicIds)) {
+            versions.put(publicId, MetadataVersions.EMPTY);
+        }
+
+        final var publicIdsToLoad = publicIds.stream().filter(publicId -> !versions.containsKey(publicId))
+                .collect(Collectors.toSet());
+
+        if (!publicIdsToLoad.isEmpty()) {
+            versions.putAll(metadataAggregatorService.getMetadataVersions(publicIdsToLoad));
+        }
+
+        return versions;
+    }
+
+    @Override
+    public MetadataDto updateMetadataForTaxonomyEntity(String publicId, MetadataDto updateDto)
+            throws InvalidPublicIdException, InvalidDataException {
+        try {
+            return metadataAggregatorService.updateMetadataForTaxonomyEntity(publicId, updateDto);
+        } finally {
+            invalidate(List.of(publicId));
+        }
+    }
+
+    @Override
+    public List<MetadataDto> updateMetadataForTaxonomyEntities(List<MetadataDto> updateDtos)
+            throws InvalidPublicIdException, InvalidDataException {
+        try {
+            return metadataAggregatorService.updateMetadataForTaxonomyEntities(updateDtos);
+        } finally {
+            invalidate(updateDtos.stream().map(MetadataDto::getPublicId).filter(Objects::nonNull)
+                    .collect(Collectors.toSet()));
+        }
+    }
+
+    @Override
+    public void writeMetadataForTaxonomyEntity(String publicId, MetadataDto updateDto)
+            throws InvalidPublicIdException, InvalidDataException {
+        try {
+            metadataAggregatorService.writeMetadataForTaxonomyEntity(publicId, updateDto);
+        } finally {
+            invalidate(List.of(publicId));
+        }
+    }
+
+    @Override
+    public void writeMetadataForTaxonomyEntities(List<MetadataDto> updateDtos)
+            throws InvalidPublicIdException, InvalidDataException {
+        try {
+            metadataAggregatorService.writeMetadataForTaxonomyEntities(updateDtos);
+        } finally {
+            invalidate(updateDtos.stream().map(MetadataDto::getPublicId).filter(Objects::nonNull)
+                    .collect(Collectors.toSet()));
+        }
+    }
+
+    @Override
+    public MetadataDto patchMetadataForTaxonomyEntity(String publicId, MetadataPatchDto patchDto)
+            throws InvalidPublicIdException, InvalidDataException {
+        try {
+            return metadataAggregatorService.patchMetadataForTaxonomyEntity(publicId, patchDto);
+        } finally {
+            invalidate(List.of(publicId));
+        }
+    }
+
+    @Override
+    public List<MetadataDto> patchMetadataForTaxonomyEntities(List<MetadataPatchDto> patchDtos)
+            throws InvalidPublicIdException, InvalidDataException {
+        try {
+            return metadataAggregatorService.patchMetadataForTaxonomyEntities(patchDtos);
+        } finally {
+            invalidate(patchDtos.stream().map(MetadataPatchDto::getPublicId).filter(Objects::nonNull)
+                    .collect(Collectors.toSet()));
+        }
+    }
+
+    @Override
+    public void deleteMetadataForTaxonomyEntity(String publicId) throws InvalidPublicIdException {
+        try {
+            metadataAggregatorService.deleteMetadataForTaxonomyEntity(publicId);
+        } finally {
+            invalidate(List.of(publicId));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import no.ndla.taxnomy.metadataapi.data.domain.MetadataChange;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataFacetsDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataQueryDto;
+import no.ndla.taxnomy.metadataapi.service.exception.InvalidDataException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Caches facet counts in front of {@link MetadataQueryServiceImpl}. A committed change invalidates the cached counts
+ * whose filter or counted fields include a field the change touched, other counts can not have been changed by it. Set
+ * metadata.facets.cache.expire-after-write to 0 to disable.
+ *
+ * Changes committed by other instances are read from the change feed by the {@link ChangeFeedReader}. The feed does not
+ * tell which fields changed, so they invalidate all the counts, which can be served stale for up to
+ * metadata.changes.poll-interval.
+ *
+ * Cached objects are shared between callers and must not be modified.
+ */
+@Service
+@Primary
+public class CachingMetadataQueryService implements MetadataQueryService {
+    private final MetadataQueryService metadataQueryService;
+    private final GenerationalCache<String, CachedFacets> cache;
+    private final ObjectMapper objectMapper;
+
+    static final class CachedFacets {
+        private final MetadataFacetsDto facets;
+
+        // The fields that can change the counts
+        private final MetadataFields fields;
+
+        private CachedFacets(MetadataFacetsDto facets, MetadataFields fields) {
+            this.facets = facets;
+            this.fields = fields;
+        }
+    }
+
+    @Autowired
+    public CachingMetadataQueryService(MetadataQueryServiceImpl metadataQueryService, ObjectMapper objectMapper,
+            ChangeFeedReader changeFeedReader, MeterRegistry meterRegistry,
+            @Value("${metadata.facets.cache.maximum-size:1000}") long maximumSize,
+            @Value("${metadata.facets.cache.expire-after-write:1m}") Duration expireAfterWrite) {
+        this(metadataQueryService, objectMapper, Caffeine.newBuilder().maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite).recordStats().build());
+
+        changeFeedReader.addRemoteListener(this::onChanges);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.getCache(), "metadata-facets");
+    }
+
+    CachingMetadataQueryService(MetadataQueryService metadataQueryService, ObjectMapper objectMapper,
+            Cache<String, CachedFacets> cache) {
+        this.metadataQueryService = metadataQueryService;
+        this.objectMapper = objectMapper;
+        this.cache = new GenerationalCache<>(cache);
+    }
+
+    @TransactionalEventListener
+    public void onChange(MetadataChangeEvent event) {
+        cache.invalidateIf(cached -> cached.fields.overlaps(event.getChangedFields()));
+    }
+
+    void onChanges(List<MetadataChange> changes) {
+        cache.invalidateAll();
+    }
+
+    // The fields that can move an entity in or out of the filter
+    private static MetadataFields getFilterFields(MetadataQueryDto.Condition condition) {
+        if (condition == null) {
+            return MetadataFields.NONE;
+        }
+
+        if (condition.getAnd() != null || condition.getOr() != null) {
+            var fields = MetadataFields.NONE;
+            for (final var nested : condition.getAnd() != null ? condition.getAnd() : condition.getOr()) {
+                fields = fields.union(getFilterFields(nested));
+            }
+
+            return fields;
+        } else if (condition.getNot() != null) {
+            return getFilterFields(condition.getNot());
+        } else if (condition.getCustomField() != null) {
+            final var key = condition.getCustomField().getKey();
+
+            return MetadataFields.of(false, false, true, key != null ? Set.of(key) : null);
+        }
+
+        return MetadataFields.of(condition.getVisible() != null, condition.getCompetenceAim() != null, false, null);
+    }
+
+    @Override
+    public List<String> findTaxonomyEntityPublicIds(MetadataQueryDto.Condition condition, String afterPublicId,
+            int limit) throws InvalidDataException {
+        return metadataQueryService.findTaxonomyEntityPublicIds(condition, afterPublicId, limit);
+    }
+
+    @Override
+    public MetadataFacetsDto getFacets(MetadataQueryDto.Condition filter, Collection<String> customFieldKeys,
+            boolean competenceAims, int limit) throws InvalidDataException {
+        final String key;
+        try {
+            key = objectMapper.writeValueAsString(Arrays.asList(filter, customFieldKeys, competenceAims, limit));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final var cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached.facets;
+        }
+
+        final var loadGeneration = cache.getGeneration();
+        final var facets = metadataQueryService.getFacets(filter, customFieldKeys, competenceAims, limit);
+
+        final var fields = getFilterFields(filter)
+                .union(MetadataFields.of(false, competenceAims, !customFieldKeys.isEmpty(), customFieldKeys));
+        cache.putIfNotInvalidated(key, new CachedFacets(facets, fields), loadGeneration);
+
+        return facets;
+    }
+}
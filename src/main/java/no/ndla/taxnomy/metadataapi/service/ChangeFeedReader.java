@@ -0,0 +1,146 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.data.domain.MetadataChange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the change feed every poll interval and passes the changes committed since the last read to the listeners,
+ * oldest first. {@link MetadataChangeEvent}s are only published for changes committed by this instance, this also gets
+ * the changes committed by other instances, a poll interval after they commit.
+ *
+ * Reads from the last change when the application started, earlier changes are not passed to the listeners.
+ */
+@Component
+public class ChangeFeedReader {
+    @FunctionalInterface
+    public interface Listener {
+        void onChanges(List<MetadataChange> changes);
+    }
+
+    private static final int PAGE_SIZE = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(ChangeFeedReader.class);
+    private final ChangeFeedService changeFeedService;
+    private final Duration pollInterval;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final List<Listener> remoteListeners = new CopyOnWriteArrayList<>();
+
+    // Sequence numbers of the changes committed here and not read yet
+    private final NavigableSet<Long> localSeqs = new ConcurrentSkipListSet<>();
+
+    // Only used from the polling thread once started
+    private long afterSeq;
+
+    private final AtomicBoolean pollRequested = new AtomicBoolean();
+
+    private volatile ScheduledExecutorService scheduler;
+
+    // The position is read when created, before the listeners read anything they need the later changes for
+    @Autowired
+    public ChangeFeedReader(ChangeFeedService changeFeedService,
+            @Value("${metadata.changes.poll-interval:5s}") Duration pollInterval) {
+        this.changeFeedService = changeFeedService;
+        this.pollInterval = pollInterval;
+        this.afterSeq = changeFeedService.getLastSeq();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "change-feed-reader");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, pollInterval.toMillis(), pollInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Adds a listener for the changes committed by other instances, for listeners already handling the
+     * {@link MetadataChangeEvent}s of the changes committed here. A change committed here is still passed to it if read
+     * before its event was published.
+     */
+    public void addRemoteListener(Listener listener) {
+        remoteListeners.add(listener);
+    }
+
+    @TransactionalEventListener
+    public void onChange(MetadataChangeEvent event) {
+        localSeqs.add(event.getSeq());
+    }
+
+    private void notifyListeners(List<Listener> listeners, List<MetadataChange> changes) {
+        for (final var listener : listeners) {
+            try {
+                listener.onChanges(changes);
+            } catch (RuntimeException e) {
+                logger.warn("Change feed listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Reads the changes now instead of at the next poll interval, if not already about to.
+     */
+    public void requestPoll() {
+        final var currentScheduler = scheduler;
+        if (currentScheduler != null && pollRequested.compareAndSet(false, true)) {
+            currentScheduler.execute(this::poll);
+        }
+    }
+
+    void poll() {
+        pollRequested.set(false);
+
+        try {
+            var changes = changeFeedService.getChanges(afterSeq, PAGE_SIZE);
+
+            while (!changes.isEmpty()) {
+                notifyListeners(listeners, changes);
+
+                final var remoteChanges = changes.stream().filter(change -> !localSeqs.contains(change.getSeq()))
+                        .collect(Collectors.toList());
+                if (!remoteChanges.isEmpty()) {
+                    notifyListeners(remoteListeners, remoteChanges);
+                }
+
+                afterSeq = changes.get(changes.size() - 1).getSeq();
+                localSeqs.headSet(afterSeq, true).clear();
+                changes = changeFeedService.getChanges(afterSeq, PAGE_SIZE);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to read the change feed", e);
+        }
+    }
+}
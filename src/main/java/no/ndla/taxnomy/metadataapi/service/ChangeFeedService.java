@@ -0,0 +1,37 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.data.domain.MetadataChange;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The changes are numbered when the transaction recording them commits, and transactions recording changes commit one
+ * at a time in the order of their numbers. A change is never committed with a lower number than a change already
+ * visible, so consumers can resume after the last change they read.
+ */
+public interface ChangeFeedService {
+    /**
+     * Records a change touching the given fields. The fields are only passed on to the local listeners of the change,
+     * the feed only stores the publicId.
+     */
+    void recordChange(String publicId, MetadataFields changedFields);
+
+    /**
+     * Records changes to many entities, replacing their previous changes with one batch, in the iteration order of the
+     * map.
+     */
+    void recordChanges(Map<String, MetadataFields> changedFields);
+
+    void recordDeletion(String publicId);
+
+    /**
+     * Returns the changes after the given sequence number, oldest first.
+     */
+    List<MetadataChange> getChanges(long afterSeq, int limit);
+
+    /**
+     * Returns the sequence number of the last committed change, or 0 if none.
+     */
+    long getLastSeq();
+}
@@ -0,0 +1,120 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.data.domain.MetadataChange;
+import no.ndla.taxnomy.metadataapi.data.repository.MetadataChangeRepository;
+import no.ndla.taxnomy.metadataapi.data.repository.UpsertRepository;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.transaction.annotation.Propagation.MANDATORY;
+import static org.springframework.transaction.annotation.Propagation.REQUIRED;
+
+@Service
+public class ChangeFeedServiceImpl implements ChangeFeedService {
+    private final MetadataChangeRepository metadataChangeRepository;
+    private final UpsertRepository upsertRepository;
+    private final EntityManager entityManager;
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    public ChangeFeedServiceImpl(MetadataChangeRepository metadataChangeRepository, UpsertRepository upsertRepository,
+            EntityManager entityManager, ApplicationEventPublisher applicationEventPublisher) {
+        this.metadataChangeRepository = metadataChangeRepository;
+        this.upsertRepository = upsertRepository;
+        this.entityManager = entityManager;
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    // The changes recorded by a transaction, written when it commits
+    private class PendingChanges implements TransactionSynchronization {
+        // By publicId, in the order last recorded
+        private final Map<String, Boolean> deleted = new LinkedHashMap<>();
+        private final Map<String, MetadataFields> changedFields = new HashMap<>();
+
+        private void add(String publicId, boolean deleted, MetadataFields changedFields) {
+            this.deleted.remove(publicId);
+            this.deleted.put(publicId, deleted);
+            this.changedFields.merge(publicId, changedFields, MetadataFields::union);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            // The rest of the transaction is written first, so the counter is locked only while the changes are
+            // written and the transaction commits
+            entityManager.flush();
+
+            metadataChangeRepository.incrementLastSeq(deleted.size());
+            var seq = metadataChangeRepository.findLastSeq() - deleted.size();
+
+            final var changes = new ArrayList<MetadataChange>();
+            for (final var entry : deleted.entrySet()) {
+                changes.add(new MetadataChange(++seq, entry.getKey(), entry.getValue()));
+            }
+            upsertRepository.upsertMetadataChanges(changes);
+
+            changes.forEach(change -> applicationEventPublisher.publishEvent(new MetadataChangeEvent(change.getSeq(),
+                    change.getPublicId(), change.isDeleted(), changedFields.get(change.getPublicId()))));
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResource(ChangeFeedServiceImpl.this);
+        }
+    }
+
+    private PendingChanges getPendingChanges() {
+        var pendingChanges = (PendingChanges) TransactionSynchronizationManager.getResource(this);
+        if (pendingChanges == null) {
+            pendingChanges = new PendingChanges();
+            TransactionSynchronizationManager.bindResource(this, pendingChanges);
+            TransactionSynchronizationManager.registerSynchronization(pendingChanges);
+        }
+
+        return pendingChanges;
+    }
+
+    @Override
+    @Transactional(propagation = MANDATORY)
+    public void recordChange(String publicId, MetadataFields changedFields) {
+        getPendingChanges().add(publicId, false, changedFields);
+    }
+
+    @Override
+    @Transactional(propagation = MANDATORY)
+    public void recordChanges(Map<String, MetadataFields> changedFields) {
+        if (changedFields.isEmpty()) {
+            return;
+        }
+
+        final var pendingChanges = getPendingChanges();
+        changedFields.forEach((publicId, fields) -> pendingChanges.add(publicId, false, fields));
+    }
+
+    @Override
+    @Transactional(propagation = MANDATORY)
+    public void recordDeletion(String publicId) {
+        getPendingChanges().add(publicId, true, MetadataFields.ALL);
+    }
+
+    @Override
+    @Transactional(propagation = REQUIRED, readOnly = true)
+    public List<MetadataChange> getChanges(long afterSeq, int limit) {
+        return metadataChangeRepository.findChanges(afterSeq, PageRequest.of(0, limit));
+    }
+
+    @Override
+    @Transactional(propagation = REQUIRED, readOnly = true)
+    public long getLastSeq() {
+        return metadataChangeRepository.findMaxSeq().orElse(0L);
+    }
+}
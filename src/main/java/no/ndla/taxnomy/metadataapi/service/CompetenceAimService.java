@@ -2,6 +2,23 @@ package no.ndla.taxnomy.metadataapi.service;
 
 import no.ndla.taxnomy.metadataapi.data.domain.CompetenceAim;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 public interface CompetenceAimService {
     CompetenceAim getOrCreateCompetenceAim(String code);
+
+    /**
+     * Returns the competence aims by code, creating the missing ones. Existing aims are read with one query and the
+     * missing ones created with one batch.
+     */
+    Map<String, CompetenceAim> getOrCreateCompetenceAims(Collection<String> codes);
+
+    /**
+     * Returns the publicIds of the entities with the competence aim, or with any competence aim starting with the code
+     * if prefix is true, ordered by publicId and starting after afterPublicId if not null.
+     */
+    List<String> getTaxonomyEntityPublicIdsByCompetenceAim(String code, boolean prefix, String afterPublicId,
+            int limit);
 }
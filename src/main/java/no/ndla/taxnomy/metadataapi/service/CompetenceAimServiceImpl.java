@@ -2,27 +2,103 @@ package no.ndla.taxnomy.metadataapi.service;
 
 import no.ndla.taxnomy.metadataapi.data.domain.CompetenceAim;
 import no.ndla.taxnomy.metadataapi.data.repository.CompetenceAimRepository;
+import no.ndla.taxnomy.metadataapi.data.repository.UpsertRepository;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
 import static org.springframework.transaction.annotation.Propagation.MANDATORY;
+import static org.springframework.transaction.annotation.Propagation.REQUIRED;
 
 @Service
 public class CompetenceAimServiceImpl implements CompetenceAimService {
     private final CompetenceAimRepository competenceAimRepository;
+    private final UpsertRepository upsertRepository;
+    private final DictionaryService dictionaryService;
 
-    public CompetenceAimServiceImpl(CompetenceAimRepository competenceAimRepository) {
+    public CompetenceAimServiceImpl(CompetenceAimRepository competenceAimRepository, UpsertRepository upsertRepository,
+            DictionaryService dictionaryService) {
         this.competenceAimRepository = competenceAimRepository;
+        this.upsertRepository = upsertRepository;
+        this.dictionaryService = dictionaryService;
     }
 
     @Override
     @Transactional(propagation = MANDATORY)
     public CompetenceAim getOrCreateCompetenceAim(String code) {
-        return competenceAimRepository.findFirstByCode(code).orElseGet(() -> {
-            final var competenceAim = new CompetenceAim();
-            competenceAim.setCode(code);
+        // Known codes are returned as references that are not loaded unless they are read from
+        final var knownId = dictionaryService.getCompetenceAimId(code);
+        if (knownId.isPresent()) {
+            return competenceAimRepository.getOne(knownId.get());
+        }
+
+        final var id = upsertRepository.upsertCompetenceAim(code);
+        dictionaryService.registerCompetenceAim(code, id);
+
+        return competenceAimRepository.getOne(id);
+    }
+
+    @Override
+    @Transactional(propagation = MANDATORY)
+    public Map<String, CompetenceAim> getOrCreateCompetenceAims(Collection<String> codes) {
+        final var competenceAims = new HashMap<String, CompetenceAim>();
+        final var unknownCodes = new HashSet<String>();
+
+        for (final var code : codes) {
+            dictionaryService.getCompetenceAimId(code).ifPresentOrElse(
+                    id -> competenceAims.put(code, competenceAimRepository.getOne(id)), () -> unknownCodes.add(code));
+        }
+
+        if (unknownCodes.isEmpty()) {
+            return competenceAims;
+        }
 
-            return competenceAimRepository.saveAndFlush(competenceAim);
+        final Consumer<CompetenceAim> addExisting = competenceAim -> {
+            competenceAims.put(competenceAim.getCode(), competenceAim);
+            dictionaryService.registerCompetenceAim(competenceAim.getCode(), competenceAim.getId());
+        };
+        competenceAimRepository.findAllByCodeIn(unknownCodes).forEach(addExisting);
+
+        final var missingCodes = unknownCodes.stream().filter(code -> !competenceAims.containsKey(code))
+                .collect(Collectors.toSet());
+        if (missingCodes.isEmpty()) {
+            return competenceAims;
+        }
+
+        upsertRepository.insertMissingCompetenceAims(missingCodes).forEach((code, id) -> {
+            competenceAims.put(code, competenceAimRepository.getOne(id));
+            dictionaryService.registerCompetenceAim(code, id);
         });
+
+        // Created by another transaction after they were read
+        missingCodes.removeAll(competenceAims.keySet());
+        if (!missingCodes.isEmpty()) {
+            competenceAimRepository.findAllByCodeIn(missingCodes).forEach(addExisting);
+        }
+
+        return competenceAims;
+    }
+
+    @Override
+    @Transactional(propagation = REQUIRED, readOnly = true)
+    public List<String> getTaxonomyEntityPublicIdsByCompetenceAim(String code, boolean prefix, String afterPublicId,
+            int limit) {
+        final var after = afterPublicId != null ? afterPublicId : "";
+        final var pageable = PageRequest.of(0, limit);
+
+        try (final var publicIds = prefix
+                ? competenceAimRepository.streamTaxonomyEntityPublicIdsByCodeLike(
+                        code.replaceAll("[\\\\%_]", "\\\\$0") + "%", after, pageable)
+                : competenceAimRepository.streamTaxonomyEntityPublicIdsByCode(code, after, pageable)) {
+            return publicIds.collect(Collectors.toList());
+        }
     }
 }
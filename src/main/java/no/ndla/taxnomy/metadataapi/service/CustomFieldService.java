@@ -3,19 +3,52 @@ package no.ndla.taxnomy.metadataapi.service;
 import no.ndla.taxnomy.metadataapi.data.domain.TaxonomyEntity;
 import no.ndla.taxnomy.metadataapi.service.exception.EntityNotFoundException;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 public interface CustomFieldService {
     void setCustomField(TaxonomyEntity taxonomyEntity, String customField, String value);
 
+    /**
+     * Replaces the custom fields of many entities, fields not in the map of an entity are removed. The keys and the
+     * existing values of all the entities are read with one query each, the values are written when the persistence
+     * context is flushed.
+     *
+     * @return the entities that had any of their custom fields changed
+     */
+    Set<TaxonomyEntity> setCustomFields(Map<TaxonomyEntity, Map<String, String>> customFields);
+
+    /**
+     * Merges changes into the custom fields of many entities, fields mapped to null are removed and fields not in the
+     * map of an entity are left as they are. Only the existing values of the fields in the maps are read.
+     *
+     * @return the entities that had any of their custom fields changed
+     */
+    Set<TaxonomyEntity> patchCustomFields(Map<TaxonomyEntity, Map<String, String>> customFields);
+
     Map<String, FieldValue> getCustomFields(TaxonomyEntity taxonomyEntity);
 
+    /**
+     * Loads the custom fields of all the given entities with a single query.
+     *
+     * @return custom fields keyed by {@link TaxonomyEntity#getId()}, entities without fields are not present in the map
+     */
+    Map<UUID, Map<String, FieldValue>> getCustomFields(Collection<TaxonomyEntity> taxonomyEntities);
+
     void unsetCustomField(UUID id) throws EntityNotFoundException;
 
     List<TaxonomyEntity> getTaxonomyEntitiesByCustomFieldKeyValue(String key, String value);
 
+    /**
+     * Returns at most limit publicIds of entities with the key/value set, ordered by publicId and starting after
+     * afterPublicId. Any value matches if value is null.
+     */
+    List<String> getTaxonomyEntityPublicIdsByCustomFieldKeyValue(String key, String value, String afterPublicId,
+            int limit);
+
     interface FieldValue {
         UUID getId();
 
@@ -5,49 +5,187 @@ import no.ndla.taxnomy.metadataapi.data.domain.CustomFieldValue;
 import no.ndla.taxnomy.metadataapi.data.domain.TaxonomyEntity;
 import no.ndla.taxnomy.metadataapi.data.repository.CustomFieldRepository;
 import no.ndla.taxnomy.metadataapi.data.repository.CustomFieldValueRepository;
+import no.ndla.taxnomy.metadataapi.data.repository.TaxonomyEntityRepository;
+import no.ndla.taxnomy.metadataapi.data.repository.UpsertRepository;
 import no.ndla.taxnomy.metadataapi.service.exception.EntityNotFoundException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
+import static org.springframework.transaction.annotation.Propagation.MANDATORY;
+import static org.springframework.transaction.annotation.Propagation.REQUIRED;
+
 @Service
 public class CustomFieldServiceImpl implements CustomFieldService {
     private CustomFieldRepository customFieldRepository;
     private CustomFieldValueRepository customFieldValueRepository;
+    private TaxonomyEntityRepository taxonomyEntityRepository;
+    private UpsertRepository upsertRepository;
+    private DictionaryService dictionaryService;
 
     public CustomFieldServiceImpl(CustomFieldRepository customFieldRepository,
-            CustomFieldValueRepository customFieldValueRepository) {
+            CustomFieldValueRepository customFieldValueRepository, TaxonomyEntityRepository taxonomyEntityRepository,
+            UpsertRepository upsertRepository, DictionaryService dictionaryService) {
         this.customFieldRepository = customFieldRepository;
         this.customFieldValueRepository = customFieldValueRepository;
+        this.taxonomyEntityRepository = taxonomyEntityRepository;
+        this.upsertRepository = upsertRepository;
+        this.dictionaryService = dictionaryService;
+    }
+
+    private Optional<UUID> findCustomFieldId(String key) {
+        return dictionaryService.getCustomFieldId(key)
+                .or(() -> customFieldRepository.findByKey(key).map(customField -> {
+                    dictionaryService.registerCustomField(key, customField.getId());
+                    return customField.getId();
+                }));
     }
 
     @Override
-    @Transactional(Transactional.TxType.MANDATORY)
+    @Transactional(propagation = MANDATORY)
     public void setCustomField(final TaxonomyEntity taxonomyEntity, final String customField, final String value) {
-        final CustomField customFieldObject = customFieldRepository.findByKey(customField).orElseGet(() -> {
-            CustomField customFieldObj = new CustomField();
-            customFieldObj.setPublicId("urn:customfield:" + UUID.randomUUID().toString());
-            customFieldObj.setKey(customField);
-            return customFieldRepository.save(customFieldObj);
-        });
-        final CustomFieldValue valueObject = customFieldValueRepository
-                .findByTaxonomyEntityAndCustomField(taxonomyEntity.getId(), customFieldObject.getId()).orElseGet(() -> {
-                    CustomFieldValue newObject = new CustomFieldValue();
-                    newObject.setCustomField(customFieldObject);
-                    newObject.setTaxonomyEntity(taxonomyEntity);
-                    return newObject;
+        patchCustomFields(Map.of(taxonomyEntity, Map.of(customField, value)));
+    }
+
+    // Known keys are returned as references, the rest are read with one query and the missing ones created
+    private Map<String, CustomField> getOrCreateCustomFields(Set<String> keys) {
+        final var customFields = new HashMap<String, CustomField>();
+        final var unknownKeys = new HashSet<String>();
+
+        for (final var key : keys) {
+            dictionaryService.getCustomFieldId(key).ifPresentOrElse(
+                    id -> customFields.put(key, customFieldRepository.getOne(id)), () -> unknownKeys.add(key));
+        }
+
+        if (!unknownKeys.isEmpty()) {
+            for (final var customField : customFieldRepository.findAllByKeyIn(unknownKeys)) {
+                customFields.putIfAbsent(customField.getKey(), customField);
+            }
+
+            for (final var key : unknownKeys) {
+                final var id = customFields.containsKey(key) ? customFields.get(key).getId()
+                        : upsertRepository.upsertCustomField(key);
+                customFields.putIfAbsent(key, customFieldRepository.getOne(id));
+                dictionaryService.registerCustomField(key, id);
+            }
+        }
+
+        return customFields;
+    }
+
+    private static Set<UUID> getIds(Collection<TaxonomyEntity> taxonomyEntities) {
+        return taxonomyEntities.stream().map(TaxonomyEntity::getId).collect(Collectors.toSet());
+    }
+
+    // The entities are locked before their values are read, so a concurrent transaction adding the same value waits
+    // for this one to commit and then sees the value instead of inserting it again
+    private Set<UUID> lockTaxonomyEntities(Collection<TaxonomyEntity> taxonomyEntities) {
+        final var ids = getIds(taxonomyEntities);
+        taxonomyEntityRepository.lockAllByIdIn(ids);
+
+        return ids;
+    }
+
+    // Existing values by entity id and key
+    private static Map<UUID, Map<String, CustomFieldValue>> groupValues(List<CustomFieldValue> values) {
+        return values.stream().collect(Collectors.groupingBy(value -> value.getTaxonomyEntity().getId(),
+                Collectors.toMap(value -> value.getCustomField().getKey(), Function.identity())));
+    }
+
+    // Values mapped to null are removed, and if removeUnmapped is true so are the existing values not in the map
+    private Set<TaxonomyEntity> writeCustomFields(Map<TaxonomyEntity, Map<String, String>> customFields,
+            Map<UUID, Map<String, CustomFieldValue>> existingValues, boolean removeUnmapped) {
+        final var customFieldsByKey = getOrCreateCustomFields(
+                customFields.values().stream().flatMap(values -> values.entrySet().stream())
+                        .filter(entry -> entry.getValue() != null).map(Map.Entry::getKey).collect(Collectors.toSet()));
+
+        final var changed = new HashSet<TaxonomyEntity>();
+        final var valuesToAdd = new ArrayList<CustomFieldValue>();
+        final var valuesToRemove = new ArrayList<CustomFieldValue>();
+
+        customFields.forEach((taxonomyEntity, values) -> {
+            final var existing = existingValues.getOrDefault(taxonomyEntity.getId(), Map.of());
+
+            values.forEach((key, value) -> {
+                final var existingValue = existing.get(key);
+                if (value == null) {
+                    if (existingValue != null) {
+                        valuesToRemove.add(existingValue);
+                        changed.add(taxonomyEntity);
+                    }
+                } else if (existingValue == null) {
+                    final var newValue = new CustomFieldValue();
+                    newValue.setCustomField(customFieldsByKey.get(key));
+                    newValue.setTaxonomyEntity(taxonomyEntity);
+                    newValue.setValue(value);
+                    valuesToAdd.add(newValue);
+                    changed.add(taxonomyEntity);
+                } else if (!value.equals(existingValue.getValue())) {
+                    // Updated by dirty checking on flush
+                    existingValue.setValue(value);
+                    changed.add(taxonomyEntity);
+                }
+            });
+
+            if (removeUnmapped) {
+                existing.forEach((key, existingValue) -> {
+                    if (!values.containsKey(key)) {
+                        valuesToRemove.add(existingValue);
+                        changed.add(taxonomyEntity);
+                    }
                 });
-        valueObject.setValue(value);
-        customFieldValueRepository.save(valueObject);
+            }
+        });
+
+        customFieldValueRepository.saveAll(valuesToAdd);
+        customFieldValueRepository.deleteAll(valuesToRemove);
+
+        return changed;
+    }
+
+    @Override
+    @Transactional(propagation = MANDATORY)
+    public Set<TaxonomyEntity> setCustomFields(Map<TaxonomyEntity, Map<String, String>> customFields) {
+        if (customFields.isEmpty()) {
+            return Set.of();
+        }
+
+        final var existingValues = groupValues(
+                customFieldValueRepository.findAllByTaxonomyEntityIn(lockTaxonomyEntities(customFields.keySet())));
+
+        return writeCustomFields(customFields, existingValues, true);
+    }
+
+    @Override
+    @Transactional(propagation = MANDATORY)
+    public Set<TaxonomyEntity> patchCustomFields(Map<TaxonomyEntity, Map<String, String>> customFields) {
+        final var keys = customFields.values().stream().flatMap(values -> values.keySet().stream())
+                .collect(Collectors.toSet());
+        if (keys.isEmpty()) {
+            return Set.of();
+        }
+
+        final var existingValues = groupValues(customFieldValueRepository
+                .findAllByTaxonomyEntityInAndKeyIn(lockTaxonomyEntities(customFields.keySet()), keys));
+
+        return writeCustomFields(customFields, existingValues, false);
     }
 
     @Override
-    @Transactional(Transactional.TxType.MANDATORY)
+    @Transactional(propagation = MANDATORY)
     public Map<String, FieldValue> getCustomFields(TaxonomyEntity taxonomyEntity) {
         return StreamSupport
                 .stream(customFieldValueRepository.findAllByTaxonomyEntity(taxonomyEntity.getId()).spliterator(), false)
@@ -55,6 +193,21 @@ public class CustomFieldServiceImpl implements CustomFieldService {
                         value -> new FieldValueImpl(value.getId(), value.getValue())));
     }
 
+    @Override
+    @Transactional(propagation = MANDATORY)
+    public Map<UUID, Map<String, FieldValue>> getCustomFields(Collection<TaxonomyEntity> taxonomyEntities) {
+        if (taxonomyEntities.isEmpty()) {
+            return Map.of();
+        }
+
+        final var taxonomyEntityIds = taxonomyEntities.stream().map(TaxonomyEntity::getId).collect(Collectors.toSet());
+
+        return customFieldValueRepository.findAllByTaxonomyEntityIn(taxonomyEntityIds).stream()
+                .collect(Collectors.groupingBy(value -> value.getTaxonomyEntity().getId(),
+                        Collectors.toMap(value -> value.getCustomField().getKey(),
+                                value -> new FieldValueImpl(value.getId(), value.getValue()))));
+    }
+
     @Override
     public void unsetCustomField(UUID id) throws EntityNotFoundException {
         customFieldValueRepository
@@ -62,18 +215,15 @@ public class CustomFieldServiceImpl implements CustomFieldService {
     }
 
     @Override
+    @Transactional(propagation = REQUIRED, readOnly = true)
     public List<TaxonomyEntity> getTaxonomyEntitiesByCustomFieldKeyValue(String key, String value) {
         final UUID customFieldId;
         {
-            final CustomField customField;
-            {
-                final var opt = customFieldRepository.findByKey(key);
-                if (opt.isEmpty()) {
-                    return List.of();
-                }
-                customField = opt.get();
+            final var opt = findCustomFieldId(key);
+            if (opt.isEmpty()) {
+                return List.of();
             }
-            customFieldId = customField.getId();
+            customFieldId = opt.get();
         }
 
         Iterable<CustomFieldValue> customFields;
@@ -86,6 +236,26 @@ public class CustomFieldServiceImpl implements CustomFieldService {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    @Transactional(propagation = REQUIRED, readOnly = true)
+    public List<String> getTaxonomyEntityPublicIdsByCustomFieldKeyValue(String key, String value, String afterPublicId,
+            int limit) {
+        final var customFieldId = findCustomFieldId(key);
+        if (customFieldId.isEmpty()) {
+            return List.of();
+        }
+
+        final var after = afterPublicId != null ? afterPublicId : "";
+        final var pageable = PageRequest.of(0, limit);
+
+        try (final var publicIds = value != null
+                ? customFieldValueRepository.streamPublicIdsByCustomFieldAndValue(customFieldId.get(), value, after,
+                        pageable)
+                : customFieldValueRepository.streamPublicIdsByCustomField(customFieldId.get(), after, pageable)) {
+            return publicIds.collect(Collectors.toList());
+        }
+    }
+
     static class FieldValueImpl implements FieldValue {
         private UUID id;
         private String value;
@@ -0,0 +1,27 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.data.domain.CompetenceAim;
+import no.ndla.taxnomy.metadataapi.data.domain.CustomField;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * In-memory lookup of the ids of the small dictionary tables, {@link CustomField} by key and {@link CompetenceAim} by
+ * code. Rows are never deleted by this service, so a known id can be used without checking the database.
+ */
+public interface DictionaryService {
+    Optional<UUID> getCustomFieldId(String key);
+
+    Optional<UUID> getCompetenceAimId(String code);
+
+    /**
+     * Adds the row to the dictionary, if called within a transaction it is added after the transaction commits.
+     */
+    void registerCustomField(String key, UUID id);
+
+    /**
+     * Adds the row to the dictionary, if called within a transaction it is added after the transaction commits.
+     */
+    void registerCompetenceAim(String code, UUID id);
+}
@@ -0,0 +1,71 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.data.repository.CompetenceAimRepository;
+import no.ndla.taxnomy.metadataapi.data.repository.CustomFieldRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+public class DictionaryServiceImpl implements DictionaryService {
+    private final CustomFieldRepository customFieldRepository;
+    private final CompetenceAimRepository competenceAimRepository;
+
+    private final Map<String, UUID> customFieldIds = new ConcurrentHashMap<>();
+    private final Map<String, UUID> competenceAimIds = new ConcurrentHashMap<>();
+
+    public DictionaryServiceImpl(CustomFieldRepository customFieldRepository,
+            CompetenceAimRepository competenceAimRepository) {
+        this.customFieldRepository = customFieldRepository;
+        this.competenceAimRepository = competenceAimRepository;
+    }
+
+    @PostConstruct
+    public void load() {
+        customFieldRepository.findAll()
+                .forEach(customField -> customFieldIds.put(customField.getKey(), customField.getId()));
+        competenceAimRepository.findAll()
+                .forEach(competenceAim -> competenceAimIds.put(competenceAim.getCode(), competenceAim.getId()));
+    }
+
+    private void afterCommit(Runnable runnable) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            runnable.run();
+            return;
+        }
+
+        // A row created in a transaction that is rolled back must never be visible in the dictionary
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                runnable.run();
+            }
+        });
+    }
+
+    @Override
+    public Optional<UUID> getCustomFieldId(String key) {
+        return Optional.ofNullable(customFieldIds.get(key));
+    }
+
+    @Override
+    public Optional<UUID> getCompetenceAimId(String code) {
+        return Optional.ofNullable(competenceAimIds.get(code));
+    }
+
+    @Override
+    public void registerCustomField(String key, UUID id) {
+        afterCommit(() -> customFieldIds.put(key, id));
+    }
+
+    @Override
+    public void registerCompetenceAim(String code, UUID id) {
+        afterCommit(() -> competenceAimIds.put(code, id));
+    }
+}
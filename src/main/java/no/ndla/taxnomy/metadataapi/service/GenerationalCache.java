@@ -0,0 +1,64 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Cache that loads racing with an invalidation can not leave stale results in. Every invalidation starts a new
+ * generation, a result loaded in an earlier generation may have been read before the change invalidating it and is not
+ * kept.
+ */
+class GenerationalCache<K, V> {
+    private final Cache<K, V> cache;
+    private final AtomicLong generation = new AtomicLong();
+
+    GenerationalCache(Cache<K, V> cache) {
+        this.cache = cache;
+    }
+
+    Cache<K, V> getCache() {
+        return cache;
+    }
+
+    V getIfPresent(K key) {
+        return cache.getIfPresent(key);
+    }
+
+    Map<K, V> getAllPresent(Collection<K> keys) {
+        return cache.getAllPresent(keys);
+    }
+
+    /**
+     * Returns the generation to pass to {@link #putIfNotInvalidated}, taken before loading.
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    void putIfNotInvalidated(K key, V value, long loadGeneration) {
+        cache.put(key, value);
+
+        if (generation.get() != loadGeneration) {
+            cache.invalidate(key);
+        }
+    }
+
+    void invalidateAll(Collection<K> keys) {
+        generation.incrementAndGet();
+        cache.invalidateAll(keys);
+    }
+
+    void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    void invalidateIf(Predicate<V> predicate) {
+        generation.incrementAndGet();
+        cache.asMap().values().removeIf(predicate);
+    }
+}
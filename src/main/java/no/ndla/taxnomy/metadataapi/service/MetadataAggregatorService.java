@@ -1,22 +1,62 @@
 package no.ndla.taxnomy.metadataapi.service;
 
 import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataPatchDto;
 import no.ndla.taxnomy.metadataapi.service.exception.InvalidDataException;
 import no.ndla.taxnomy.metadataapi.service.exception.InvalidPublicIdException;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface MetadataAggregatorService {
     List<MetadataDto> getMetadataForTaxonomyEntities(Collection<String> publicIds) throws InvalidPublicIdException;
 
     MetadataDto getMetadataForTaxonomyEntity(String publicId) throws InvalidPublicIdException;
 
+    /**
+     * Returns only the requested fields of the metadata, the fields not requested are null.
+     */
+    List<MetadataDto> getMetadataForTaxonomyEntities(Collection<String> publicIds, MetadataFields fields)
+            throws InvalidPublicIdException;
+
+    MetadataDto getMetadataForTaxonomyEntity(String publicId, MetadataFields fields) throws InvalidPublicIdException;
+
+    /**
+     * Returns the same version as {@link MetadataDto#getVersion()} of the metadata, without assembling the metadata.
+     */
+    String getMetadataVersion(String publicId) throws InvalidPublicIdException;
+
+    /**
+     * Returns the same version as {@link MetadataDto#getVersion()} for each of the publicIds, without assembling the
+     * metadata.
+     */
+    Map<String, String> getMetadataVersions(Collection<String> publicIds) throws InvalidPublicIdException;
+
     MetadataDto updateMetadataForTaxonomyEntity(String publicId, MetadataDto updateDto)
             throws InvalidPublicIdException, InvalidDataException;
 
     List<MetadataDto> updateMetadataForTaxonomyEntities(List<MetadataDto> updateDtos)
             throws InvalidPublicIdException, InvalidDataException;
 
+    /**
+     * Updates the metadata like {@link #updateMetadataForTaxonomyEntity(String, MetadataDto)}, without reading back the
+     * updated metadata.
+     */
+    void writeMetadataForTaxonomyEntity(String publicId, MetadataDto updateDto)
+            throws InvalidPublicIdException, InvalidDataException;
+
+    void writeMetadataForTaxonomyEntities(List<MetadataDto> updateDtos)
+            throws InvalidPublicIdException, InvalidDataException;
+
+    /**
+     * Applies a merge patch to the metadata, only the members in the patch are changed, see {@link MetadataPatchDto}.
+     */
+    MetadataDto patchMetadataForTaxonomyEntity(String publicId, MetadataPatchDto patchDto)
+            throws InvalidPublicIdException, InvalidDataException;
+
+    List<MetadataDto> patchMetadataForTaxonomyEntities(List<MetadataPatchDto> patchDtos)
+            throws InvalidPublicIdException, InvalidDataException;
+
     void deleteMetadataForTaxonomyEntity(String publicId) throws InvalidPublicIdException;
 }
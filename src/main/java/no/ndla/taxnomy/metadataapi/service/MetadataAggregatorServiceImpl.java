@@ -3,18 +3,20 @@ package no.ndla.taxnomy.metadataapi.service;
 import no.ndla.taxnomy.metadataapi.data.domain.CompetenceAim;
 import no.ndla.taxnomy.metadataapi.data.domain.TaxonomyEntity;
 import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
-import no.ndla.taxnomy.metadataapi.service.exception.EntityNotFoundException;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataPatchDto;
 import no.ndla.taxnomy.metadataapi.service.exception.InvalidDataException;
 import no.ndla.taxnomy.metadataapi.service.exception.InvalidPublicIdException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CompletionException;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static java.util.Objects.requireNonNull;
@@ -26,161 +28,270 @@ public class MetadataAggregatorServiceImpl implements MetadataAggregatorService
     private final CompetenceAimService competenceAimService;
     private final CustomFieldService customFieldService;
     private final PublicIdValidator publicIdValidator;
+    private final MetadataReadService metadataReadService;
+    private final ChangeFeedService changeFeedService;
 
     public MetadataAggregatorServiceImpl(TaxonomyEntityService taxonomyEntityService,
             CompetenceAimService competenceAimService, CustomFieldService customFieldService,
-            PublicIdValidator publicIdValidator) {
+            PublicIdValidator publicIdValidator, MetadataReadService metadataReadService,
+            ChangeFeedService changeFeedService) {
         this.taxonomyEntityService = taxonomyEntityService;
         this.competenceAimService = competenceAimService;
         this.customFieldService = customFieldService;
         this.publicIdValidator = publicIdValidator;
+        this.metadataReadService = metadataReadService;
+        this.changeFeedService = changeFeedService;
     }
 
-    private MetadataDto createEmptyDto(String publicId) {
+    static MetadataDto createEmptyDto(String publicId) {
         final var metadataDto = new MetadataDto(publicId);
         metadataDto.populateEmpty();
+        metadataDto.setVersion(MetadataVersions.EMPTY);
 
         return metadataDto;
     }
 
-    private MetadataDto populateDtoFromEntity(TaxonomyEntity taxonomyEntity) {
+    private MetadataDto populateDtoFromEntity(TaxonomyEntity taxonomyEntity,
+            Map<String, CustomFieldService.FieldValue> customFields) {
         final var metadataDto = createEmptyDto(taxonomyEntity.getPublicId());
 
         metadataDto.setCompetenceAims(taxonomyEntity.getCompetenceAims().stream().map(CompetenceAim::getCode)
                 .map(MetadataDto.CompetenceAim::new).collect(Collectors.toSet()));
 
         metadataDto.setVisible(taxonomyEntity.isVisible());
+        metadataDto.setVersion(MetadataVersions.of(taxonomyEntity.getId(), taxonomyEntity.getRevision()));
 
-        metadataDto.setCustomFields(customFieldService.getCustomFields(taxonomyEntity).entrySet().stream()
+        metadataDto.setCustomFields(customFields.entrySet().stream()
                 .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().getValue())));
 
         return metadataDto;
     }
 
     @Override
-    @Transactional(propagation = REQUIRED)
+    @Transactional(propagation = REQUIRED, readOnly = true)
     public MetadataDto getMetadataForTaxonomyEntity(String publicId) throws InvalidPublicIdException {
+        return getMetadataForTaxonomyEntity(publicId, MetadataFields.ALL);
+    }
+
+    @Override
+    @Transactional(propagation = REQUIRED, readOnly = true)
+    public MetadataDto getMetadataForTaxonomyEntity(String publicId, MetadataFields fields)
+            throws InvalidPublicIdException {
         publicIdValidator.validatePublicId(publicId);
 
-        return taxonomyEntityService.getTaxonomyEntity(publicId).map(this::populateDtoFromEntity)
-                .orElseGet(() -> createEmptyDto(publicId));
+        final var metadataDto = metadataReadService.getMetadata(List.of(publicId), fields).get(publicId);
+
+        return metadataDto != null ? metadataDto : fields.project(createEmptyDto(publicId));
     }
 
     @Override
-    @Transactional(propagation = REQUIRED)
+    @Transactional(propagation = REQUIRED, readOnly = true)
     public List<MetadataDto> getMetadataForTaxonomyEntities(Collection<String> publicIds)
             throws InvalidPublicIdException {
+        return getMetadataForTaxonomyEntities(publicIds, MetadataFields.ALL);
+    }
+
+    @Override
+    @Transactional(propagation = REQUIRED, readOnly = true)
+    public List<MetadataDto> getMetadataForTaxonomyEntities(Collection<String> publicIds, MetadataFields fields)
+            throws InvalidPublicIdException {
         for (String publicId : publicIds) {
             publicIdValidator.validatePublicId(publicId);
         }
 
-        final var entitiesToReturn = new ConcurrentHashMap<String, MetadataDto>();
+        final var metadataDtos = metadataReadService.getMetadata(publicIds, fields);
 
-        taxonomyEntityService.getTaxonomyEntities(publicIds)
-                .forEach(entity -> entitiesToReturn.put(entity.getPublicId(), populateDtoFromEntity(entity)));
+        return publicIds.stream().map(publicId -> {
+            final var metadataDto = metadataDtos.get(publicId);
+
+            return metadataDto != null ? metadataDto : fields.project(createEmptyDto(publicId));
+        }).collect(Collectors.toList());
+    }
+
+    // Reads through the persistence context, used to return metadata from the transaction that updated it
+    MetadataDto loadMetadataForTaxonomyEntity(String publicId) {
+        return taxonomyEntityService.getTaxonomyEntity(publicId)
+                .map(taxonomyEntity -> populateDtoFromEntity(taxonomyEntity,
+                        customFieldService.getCustomFields(taxonomyEntity)))
+                .orElseGet(() -> createEmptyDto(publicId));
+    }
+
+    List<MetadataDto> loadMetadataForTaxonomyEntities(Collection<String> publicIds) {
+        final var entitiesToReturn = new HashMap<String, MetadataDto>();
+
+        // Custom fields for all the entities are loaded in one go, so the number of queries does not grow with the
+        // number of entities requested
+        final var taxonomyEntities = taxonomyEntityService.getTaxonomyEntities(publicIds);
+        final var customFields = customFieldService.getCustomFields(taxonomyEntities);
+
+        taxonomyEntities.forEach(entity -> entitiesToReturn.put(entity.getPublicId(),
+                populateDtoFromEntity(entity, customFields.getOrDefault(entity.getId(), Map.of()))));
 
         // Returns 1:1 from provided publicId list of DTOs either populated from entity or empty
-        // default DTO
-        return publicIds.parallelStream()
-                .map(publicId -> entitiesToReturn.computeIfAbsent(publicId, this::createEmptyDto))
+        // default DTO. Sequential, this runs in the transaction of the calling thread
+        return publicIds.stream().map(
+                publicId -> entitiesToReturn.computeIfAbsent(publicId, MetadataAggregatorServiceImpl::createEmptyDto))
                 .collect(Collectors.toList());
     }
 
-    private void mergeCompetenceAims(TaxonomyEntity taxonomyEntity, Set<MetadataDto.CompetenceAim> competenceAims) {
-        final var newCodes = competenceAims.stream().map(MetadataDto.CompetenceAim::getCode).map(String::toUpperCase)
+    @Override
+    @Transactional(propagation = REQUIRED, readOnly = true)
+    public String getMetadataVersion(String publicId) throws InvalidPublicIdException {
+        return getMetadataVersions(List.of(publicId)).get(publicId);
+    }
+
+    @Override
+    @Transactional(propagation = REQUIRED, readOnly = true)
+    public Map<String, String> getMetadataVersions(Collection<String> publicIds) throws InvalidPublicIdException {
+        for (String publicId : publicIds) {
+            publicIdValidator.validatePublicId(publicId);
+        }
+
+        final var versions = taxonomyEntityService.getTaxonomyEntityVersions(publicIds);
+
+        return publicIds.stream().distinct().collect(Collectors.toMap(publicId -> publicId,
+                publicId -> versions.getOrDefault(publicId, MetadataVersions.EMPTY)));
+    }
+
+    private static Set<String> getCodes(Set<MetadataDto.CompetenceAim> competenceAims) {
+        return competenceAims.stream().map(MetadataDto.CompetenceAim::getCode).map(String::toUpperCase)
                 .collect(Collectors.toSet());
+    }
+
+    // The codes of the competence aims not linked to the entity yet, none if the competence aims are not updated
+    private static Set<String> getCodesToAdd(TaxonomyEntity taxonomyEntity,
+            Set<MetadataDto.CompetenceAim> competenceAims) {
+        if (competenceAims == null) {
+            return Set.of();
+        }
 
         final var existingCodes = taxonomyEntity.getCompetenceAims().stream().map(CompetenceAim::getCode)
                 .map(String::toUpperCase).collect(Collectors.toSet());
 
+        return getCodes(competenceAims).stream().filter(code -> !existingCodes.contains(code))
+                .collect(Collectors.toSet());
+    }
+
+    private static boolean mergeCompetenceAims(TaxonomyEntity taxonomyEntity,
+            Set<MetadataDto.CompetenceAim> competenceAims, Map<String, CompetenceAim> competenceAimsByCode) {
+        final var newCodes = getCodes(competenceAims);
+
+        // Remove codes not in list, the aims to unlink are already loaded with the entity. Done before adding, so the
+        // aims added are not loaded to read their codes
+        final var aimsToRemove = taxonomyEntity.getCompetenceAims().stream()
+                .filter(existingAim -> !newCodes.contains(existingAim.getCode().toUpperCase()))
+                .collect(Collectors.toList());
+        aimsToRemove.forEach(taxonomyEntity::removeCompetenceAim);
+
         // Add codes that does not exist
-        newCodes.stream().filter(newCode -> !existingCodes.contains(newCode))
-                .map(competenceAimService::getOrCreateCompetenceAim).forEach(taxonomyEntity::addCompetenceAim);
+        final var codesToAdd = getCodesToAdd(taxonomyEntity, competenceAims);
+        codesToAdd.stream().map(code -> requireNonNull(competenceAimsByCode.get(code)))
+                .forEach(taxonomyEntity::addCompetenceAim);
 
-        // Remove codes not in list
-        existingCodes.stream().filter(existingCode -> !newCodes.contains(existingCode))
-                .map(competenceAimService::getOrCreateCompetenceAim).forEach(taxonomyEntity::removeCompetenceAim);
+        return !codesToAdd.isEmpty() || !aimsToRemove.isEmpty();
     }
 
-    private void mergeEntity(TaxonomyEntity taxonomyEntity, MetadataDto updateDto) {
+    // Returns true if anything was changed. The competence aims to add must be in competenceAimsByCode
+    private static boolean mergeEntity(TaxonomyEntity taxonomyEntity, MetadataDto updateDto,
+            Map<String, CompetenceAim> competenceAimsByCode) {
+        var changed = false;
+
         if (updateDto.getCompetenceAims() != null) {
-            mergeCompetenceAims(taxonomyEntity, updateDto.getCompetenceAims());
+            changed = mergeCompetenceAims(taxonomyEntity, updateDto.getCompetenceAims(), competenceAimsByCode);
         }
 
         if (updateDto.isVisible() != null) {
+            changed |= updateDto.isVisible() != taxonomyEntity.isVisible();
             taxonomyEntity.setVisible(updateDto.isVisible());
         }
+
+        return changed;
     }
 
-    private void updateCustomFields(final TaxonomyEntity taxonomyEntity, final MetadataDto updateDto)
-            throws InvalidDataException {
-        final var customFieldMap = updateDto.getCustomFields();
-        if (customFieldMap != null) {
-            try {
-                final var existingFields = customFieldService.getCustomFields(taxonomyEntity);
-                final var removeFields = existingFields.entrySet().stream()
-                        .filter(entry -> !customFieldMap.containsKey(entry.getKey())).map(Map.Entry::getValue)
-                        .map(CustomFieldService.FieldValue::getId);
-                final var setFields = customFieldMap.entrySet().stream().filter(entry -> {
-                    final var existing = existingFields.get(entry.getKey());
-                    if (existing == null) {
-                        return true;
-                    }
-                    final var existingValue = existing.getValue();
-                    if (existingValue == null) {
-                        return entry.getValue() != null;
-                    }
-                    return !existingValue.equals(entry.getValue());
-                }).collect(Collectors.toMap(entry -> {
-                    final var key = entry.getKey();
-                    if (key == null) {
-                        throw new CompletionException(new InvalidDataException("Null key for key/value data"));
-                    }
-                    return key;
-                }, entry -> {
-                    final var value = entry.getValue();
-                    if (value == null) {
-                        throw new CompletionException(new InvalidDataException("Null value for key/value data"));
-                    }
-                    return value;
-                }));
-                setFields.forEach((key, value) -> customFieldService.setCustomField(taxonomyEntity, key, value));
-                removeFields.forEach(id -> {
-                    try {
-                        customFieldService.unsetCustomField(id);
-                    } catch (EntityNotFoundException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
-            } catch (CompletionException e) {
-                final var cause = e.getCause();
-                if (cause instanceof InvalidDataException) {
-                    throw (InvalidDataException) cause;
-                }
-                throw e;
+    // The fields an update may change, the custom fields are replaced as a whole so any of them may change
+    private static MetadataFields getUpdatedFields(MetadataDto updateDto) {
+        return MetadataFields.of(updateDto.isVisible() != null, updateDto.getCompetenceAims() != null,
+                updateDto.getCustomFields() != null, null);
+    }
+
+    // By publicId, in the order of the changed entities
+    private static Map<String, MetadataFields> getChangedFields(Collection<TaxonomyEntity> changed,
+            Map<TaxonomyEntity, MetadataFields> fields) {
+        final var changedFields = new LinkedHashMap<String, MetadataFields>();
+        changed.forEach(taxonomyEntity -> changedFields.put(taxonomyEntity.getPublicId(), fields.get(taxonomyEntity)));
+
+        return changedFields;
+    }
+
+    private static void validateCustomFields(MetadataDto updateDto) throws InvalidDataException {
+        if (updateDto.getCustomFields() == null) {
+            return;
+        }
+
+        for (final var entry : updateDto.getCustomFields().entrySet()) {
+            if (entry.getKey() == null) {
+                throw new InvalidDataException("Null key for key/value data");
+            }
+            if (entry.getValue() == null) {
+                throw new InvalidDataException("Null value for key/value data");
             }
         }
     }
 
+    private TaxonomyEntity updateEntity(TaxonomyEntity taxonomyEntity, MetadataDto updateDto)
+            throws InvalidDataException {
+        final var competenceAimsByCode = competenceAimService
+                .getOrCreateCompetenceAims(getCodesToAdd(taxonomyEntity, updateDto.getCompetenceAims()));
+        validateCustomFields(updateDto);
+
+        final var entityChanged = mergeEntity(taxonomyEntity, updateDto, competenceAimsByCode);
+        // Through the persistence context, the values are loaded as entities and read back from it for the response
+        final var customFieldsChanged = updateDto.getCustomFields() != null
+                && !customFieldService.setCustomFields(Map.of(taxonomyEntity, updateDto.getCustomFields())).isEmpty();
+
+        if (entityChanged || customFieldsChanged) {
+            taxonomyEntityService.incrementRevisions(List.of(taxonomyEntity));
+            changeFeedService.recordChange(taxonomyEntity.getPublicId(), getUpdatedFields(updateDto));
+        }
+
+        return taxonomyEntityService.saveTaxonomyEntity(taxonomyEntity);
+    }
+
     @Override
     @Transactional(propagation = REQUIRED)
     public MetadataDto updateMetadataForTaxonomyEntity(String publicId, MetadataDto updateDto)
             throws InvalidPublicIdException, InvalidDataException {
-        var taxonomyEntity = taxonomyEntityService.getOrCreateTaxonomyEntity(publicId);
-
-        mergeEntity(taxonomyEntity, updateDto);
+        writeMetadataForTaxonomyEntity(publicId, updateDto);
 
-        taxonomyEntity = taxonomyEntityService.saveTaxonomyEntity(taxonomyEntity);
+        return loadMetadataForTaxonomyEntity(publicId);
+    }
 
-        updateCustomFields(taxonomyEntity, updateDto);
+    @Override
+    @Transactional(propagation = REQUIRED)
+    public void writeMetadataForTaxonomyEntity(String publicId, MetadataDto updateDto)
+            throws InvalidPublicIdException, InvalidDataException {
+        final var taxonomyEntity = taxonomyEntityService.getOrCreateTaxonomyEntity(publicId);
 
-        return getMetadataForTaxonomyEntity(publicId);
+        updateEntity(taxonomyEntity, updateDto);
     }
 
     @Override
     @Transactional(propagation = REQUIRED)
     public List<MetadataDto> updateMetadataForTaxonomyEntities(List<MetadataDto> updateDtos)
             throws InvalidPublicIdException, InvalidDataException {
+        return loadMetadataForTaxonomyEntities(updateEntities(updateDtos));
+    }
+
+    @Override
+    @Transactional(propagation = REQUIRED)
+    public void writeMetadataForTaxonomyEntities(List<MetadataDto> updateDtos)
+            throws InvalidPublicIdException, InvalidDataException {
+        updateEntities(updateDtos);
+    }
+
+    // Returns the publicIds of the updated entities, in the order of the updates
+    private List<String> updateEntities(List<MetadataDto> updateDtos)
+            throws InvalidPublicIdException, InvalidDataException {
         final var publicIdList = updateDtos.stream().map(MetadataDto::getPublicId).collect(Collectors.toList());
 
         var index = 0;
@@ -194,41 +305,188 @@ public class MetadataAggregatorServiceImpl implements MetadataAggregatorService
             publicIdValidator.validatePublicId(publicId);
         }
 
+        for (final var updateDto : updateDtos) {
+            validateCustomFields(updateDto);
+        }
+
+        // The entities with their competence aims, and the existing custom fields, are read with one query each. All
+        // the changes are then written as JDBC batches by one flush at the end
         final var entitiesToUpdate = taxonomyEntityService.getOrCreateTaxonomyEntities(publicIdList).stream()
-                .collect(Collectors.toMap(TaxonomyEntity::getPublicId, entity -> entity));
+                .collect(Collectors.toMap(TaxonomyEntity::getPublicId, entity -> entity, (first, second) -> first));
+
+        // The competence aims to add to any of the entities are read, or created, together. The updates of an entity
+        // listed more than once are applied in order, and a later one may add back an aim an earlier one removed, so all
+        // their codes are read
+        final var updateCounts = publicIdList.stream()
+                .collect(Collectors.groupingBy(publicId -> publicId, Collectors.counting()));
+        final var competenceAimsByCode = competenceAimService.getOrCreateCompetenceAims(updateDtos.stream()
+                .flatMap(updateDto -> updateCounts.get(updateDto.getPublicId()) > 1
+                        && updateDto.getCompetenceAims() != null
+                                ? getCodes(updateDto.getCompetenceAims()).stream()
+                                : getCodesToAdd(requireNonNull(entitiesToUpdate.get(updateDto.getPublicId())),
+                                        updateDto.getCompetenceAims()).stream())
+                .collect(Collectors.toSet()));
+
+        final var changed = new LinkedHashSet<TaxonomyEntity>();
+        final var customFields = new HashMap<TaxonomyEntity, Map<String, String>>();
+        final var updatedFields = new HashMap<TaxonomyEntity, MetadataFields>();
+        for (final var updateDto : updateDtos) {
+            final var taxonomyEntity = requireNonNull(entitiesToUpdate.get(updateDto.getPublicId()));
+            updatedFields.merge(taxonomyEntity, getUpdatedFields(updateDto), MetadataFields::union);
+
+            if (mergeEntity(taxonomyEntity, updateDto, competenceAimsByCode)) {
+                changed.add(taxonomyEntity);
+            }
+            if (updateDto.getCustomFields() != null) {
+                customFields.put(taxonomyEntity, updateDto.getCustomFields());
+            }
+        }
+        changed.addAll(customFieldService.setCustomFields(customFields));
 
-        // Applying all the changes requested and persisting the objects
-        final var save = updateDtos.stream().map(updateDto -> {
-            final var entity = requireNonNull(entitiesToUpdate.get(updateDto.getPublicId()));
-            mergeEntity(entity, updateDto);
-            return Map.entry(updateDto, entity);
-        }).collect(Collectors.toList());
-        try {
-            save.forEach(pair -> {
-                final var updateDto = pair.getKey();
-                var entity = pair.getValue();
-                entity = taxonomyEntityService.saveTaxonomyEntity(entity);
-                try {
-                    updateCustomFields(entity, updateDto);
-                } catch (InvalidDataException e) {
-                    throw new CompletionException(e);
+        taxonomyEntityService.incrementRevisions(changed);
+        changeFeedService.recordChanges(getChangedFields(changed, updatedFields));
+
+        taxonomyEntityService.saveTaxonomyEntities(entitiesToUpdate.values());
+
+        return publicIdList;
+    }
+
+    // The competence aims set by a patch, null if the patch does not change them
+    private static Set<MetadataDto.CompetenceAim> getPatchedCompetenceAims(MetadataPatchDto patchDto) {
+        if (!patchDto.isCompetenceAimsPatched()) {
+            return null;
+        }
+
+        return patchDto.getCompetenceAims() != null ? patchDto.getCompetenceAims() : Set.of();
+    }
+
+    // Removing all the custom fields may change any of them
+    private static MetadataFields getPatchedFields(MetadataPatchDto patchDto) {
+        return MetadataFields.of(patchDto.isVisiblePatched(), patchDto.isCompetenceAimsPatched(),
+                patchDto.isCustomFieldsPatched(),
+                patchDto.getCustomFields() != null ? patchDto.getCustomFields().keySet() : null);
+    }
+
+    private static void validatePatch(MetadataPatchDto patchDto) throws InvalidDataException {
+        if (patchDto.isVisiblePatched() && patchDto.isVisible() == null) {
+            throw new InvalidDataException("Visible cannot be removed");
+        }
+    }
+
+    // Returns true if anything was changed. The competence aims to add must be in competenceAimsByCode
+    private static boolean mergePatch(TaxonomyEntity taxonomyEntity, MetadataPatchDto patchDto,
+            Map<String, CompetenceAim> competenceAimsByCode) {
+        var changed = false;
+
+        final var competenceAims = getPatchedCompetenceAims(patchDto);
+        if (competenceAims != null) {
+            changed = mergeCompetenceAims(taxonomyEntity, competenceAims, competenceAimsByCode);
+        }
+
+        if (patchDto.isVisiblePatched()) {
+            changed |= patchDto.isVisible() != taxonomyEntity.isVisible();
+            taxonomyEntity.setVisible(patchDto.isVisible());
+        }
+
+        return changed;
+    }
+
+    // The entities must be read, and the patches validated, before
+    private Set<TaxonomyEntity> applyPatches(Map<TaxonomyEntity, MetadataPatchDto> patches) {
+        final var competenceAimsByCode = competenceAimService.getOrCreateCompetenceAims(patches.entrySet().stream()
+                .flatMap(entry -> getCodesToAdd(entry.getKey(), getPatchedCompetenceAims(entry.getValue())).stream())
+                .collect(Collectors.toSet()));
+
+        final var changed = new LinkedHashSet<TaxonomyEntity>();
+        final var customFieldsToPatch = new HashMap<TaxonomyEntity, Map<String, String>>();
+        final var customFieldsToRemove = new HashMap<TaxonomyEntity, Map<String, String>>();
+        patches.forEach((taxonomyEntity, patchDto) -> {
+            if (mergePatch(taxonomyEntity, patchDto, competenceAimsByCode)) {
+                changed.add(taxonomyEntity);
+            }
+
+            if (patchDto.isCustomFieldsPatched()) {
+                if (patchDto.getCustomFields() != null) {
+                    customFieldsToPatch.put(taxonomyEntity, patchDto.getCustomFields());
+                } else {
+                    customFieldsToRemove.put(taxonomyEntity, Map.of());
                 }
-            });
-        } catch (CompletionException e) {
-            final var cause = e.getCause();
-            if (cause instanceof InvalidDataException) {
-                throw (InvalidDataException) cause;
             }
-            throw e;
+        });
+
+        // Only the custom fields named by the patches are read and written
+        changed.addAll(customFieldService.patchCustomFields(customFieldsToPatch));
+        changed.addAll(customFieldService.setCustomFields(customFieldsToRemove));
+
+        final var patchedFields = new HashMap<TaxonomyEntity, MetadataFields>();
+        patches.forEach((taxonomyEntity, patchDto) -> patchedFields.put(taxonomyEntity, getPatchedFields(patchDto)));
+
+        taxonomyEntityService.incrementRevisions(changed);
+        changeFeedService.recordChanges(getChangedFields(changed, patchedFields));
+
+        return changed;
+    }
+
+    @Override
+    @Transactional(propagation = REQUIRED)
+    public MetadataDto patchMetadataForTaxonomyEntity(String publicId, MetadataPatchDto patchDto)
+            throws InvalidPublicIdException, InvalidDataException {
+        publicIdValidator.validatePublicId(publicId);
+        validatePatch(patchDto);
+
+        final var taxonomyEntity = taxonomyEntityService.getOrCreateTaxonomyEntity(publicId);
+
+        applyPatches(Map.of(taxonomyEntity, patchDto));
+        taxonomyEntityService.saveTaxonomyEntity(taxonomyEntity);
+
+        return loadMetadataForTaxonomyEntity(publicId);
+    }
+
+    @Override
+    @Transactional(propagation = REQUIRED)
+    public List<MetadataDto> patchMetadataForTaxonomyEntities(List<MetadataPatchDto> patchDtos)
+            throws InvalidPublicIdException, InvalidDataException {
+        final var publicIdList = patchDtos.stream().map(MetadataPatchDto::getPublicId).collect(Collectors.toList());
+
+        var index = 0;
+        for (final var publicId : publicIdList) {
+            ++index;
+
+            if (publicId == null) {
+                throw new InvalidPublicIdException("Missing publicId on object index " + index);
+            }
+
+            publicIdValidator.validatePublicId(publicId);
+        }
+
+        if (new HashSet<>(publicIdList).size() != publicIdList.size()) {
+            throw new InvalidDataException("More than one patch for the same publicId");
         }
 
-        return getMetadataForTaxonomyEntities(publicIdList);
+        for (final var patchDto : patchDtos) {
+            validatePatch(patchDto);
+        }
+
+        final var entitiesToPatch = taxonomyEntityService.getOrCreateTaxonomyEntities(publicIdList).stream()
+                .collect(Collectors.toMap(TaxonomyEntity::getPublicId, entity -> entity));
+
+        final var patches = new HashMap<TaxonomyEntity, MetadataPatchDto>();
+        patchDtos.forEach(
+                patchDto -> patches.put(requireNonNull(entitiesToPatch.get(patchDto.getPublicId())), patchDto));
+
+        applyPatches(patches);
+        taxonomyEntityService.saveTaxonomyEntities(entitiesToPatch.values());
+
+        return loadMetadataForTaxonomyEntities(publicIdList);
     }
 
     @Override
+    @Transactional(propagation = REQUIRED)
     public void deleteMetadataForTaxonomyEntity(String publicId) throws InvalidPublicIdException {
         publicIdValidator.validatePublicId(publicId);
 
-        taxonomyEntityService.deleteTaxonomyEntity(publicId);
+        if (taxonomyEntityService.deleteTaxonomyEntity(publicId)) {
+            changeFeedService.recordDeletion(publicId);
+        }
     }
 }
@@ -0,0 +1,158 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import no.ndla.taxnomy.metadataapi.service.exception.InvalidPublicIdException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Collects concurrent single-entity loads for a short window and loads them together with one multi-entity read. The
+ * first caller of a batch waits for the window, or until the batch is full, and then loads the batch for all its
+ * callers. Disabled when metadata.batching.window is 0.
+ *
+ * Callers wait for their batch for at most metadata.batching.timeout. Every load of a batch is completed when the batch
+ * has been loaded, those not in the result fail.
+ */
+@Component
+public class MetadataBatchLoader {
+    private final MetadataAggregatorService metadataAggregatorService;
+    private final PublicIdValidator publicIdValidator;
+    private final Duration window;
+    private final int maxBatchSize;
+    private final Duration timeout;
+    private final DistributionSummary batchSizes;
+
+    private final Object lock = new Object();
+
+    // Batch collecting loads, guarded by lock
+    private Batch currentBatch;
+
+    private static class Batch {
+        private final Map<String, CompletableFuture<MetadataDto>> futures = new LinkedHashMap<>();
+        private final CountDownLatch full = new CountDownLatch(1);
+    }
+
+    @Autowired
+    public MetadataBatchLoader(MetadataAggregatorServiceImpl metadataAggregatorService,
+            PublicIdValidator publicIdValidator, MeterRegistry meterRegistry,
+            @Value("${metadata.batching.window:0ms}") Duration window,
+            @Value("${metadata.batching.max-batch-size:100}") int maxBatchSize,
+            @Value("${metadata.batching.timeout:30s}") Duration timeout) {
+        this((MetadataAggregatorService) metadataAggregatorService, publicIdValidator, meterRegistry, window,
+                maxBatchSize, timeout);
+    }
+
+    MetadataBatchLoader(MetadataAggregatorService metadataAggregatorService, PublicIdValidator publicIdValidator,
+            MeterRegistry meterRegistry, Duration window, int maxBatchSize, Duration timeout) {
+        this.metadataAggregatorService = metadataAggregatorService;
+        this.publicIdValidator = publicIdValidator;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.timeout = timeout;
+        this.batchSizes = meterRegistry.summary("metadata.batch.size");
+    }
+
+    public boolean isEnabled() {
+        return !window.isZero() && maxBatchSize > 1;
+    }
+
+    public MetadataDto load(String publicId) throws InvalidPublicIdException {
+        if (!isEnabled()) {
+            return metadataAggregatorService.getMetadataForTaxonomyEntity(publicId);
+        }
+
+        // Validated before joining, so one invalid publicId does not fail the batch for the others
+        publicIdValidator.validatePublicId(publicId);
+
+        final Batch batch;
+        final CompletableFuture<MetadataDto> future;
+        final boolean first;
+
+        synchronized (lock) {
+            if (currentBatch == null) {
+                currentBatch = new Batch();
+            }
+            batch = currentBatch;
+            first = batch.futures.isEmpty();
+            future = batch.futures.computeIfAbsent(publicId, key -> new CompletableFuture<>());
+
+            if (batch.futures.size() >= maxBatchSize) {
+                currentBatch = null;
+                batch.full.countDown();
+            }
+        }
+
+        if (first) {
+            awaitAndLoad(batch);
+        }
+
+        try {
+            return future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof InvalidPublicIdException) {
+                throw (InvalidPublicIdException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Timed out waiting for the metadata of " + publicId, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for the metadata of " + publicId, e);
+        }
+    }
+
+    private void awaitAndLoad(Batch batch) {
+        try {
+            batch.full.await(window.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (lock) {
+            if (currentBatch == batch) {
+                currentBatch = null;
+            }
+        }
+
+        // Not added to after being detached
+        final var futures = batch.futures;
+        batchSizes.record(futures.size());
+
+        try {
+            for (final var metadataDto : metadataAggregatorService.getMetadataForTaxonomyEntities(futures.keySet())) {
+                final var future = futures.get(metadataDto.getPublicId());
+                if (future != null) {
+                    future.complete(metadataDto);
+                }
+            }
+        } catch (InvalidPublicIdException | RuntimeException e) {
+            futures.values().forEach(future -> future.completeExceptionally(e));
+        } catch (Error e) {
+            futures.values().forEach(future -> future.completeExceptionally(e));
+            throw e;
+        } finally {
+            // Loads missing from the result, completing a load again does nothing
+            futures.forEach((publicId, future) -> future.completeExceptionally(
+                    new IllegalStateException("No metadata loaded for " + publicId)));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+/**
+ * Published when a change is written to the change feed, just before the transaction recording it commits. Listeners
+ * that only want committed changes must listen after commit.
+ */
+public class MetadataChangeEvent {
+    private final long seq;
+    private final String publicId;
+    private final boolean deleted;
+    private final MetadataFields changedFields;
+
+    public MetadataChangeEvent(long seq, String publicId, boolean deleted) {
+        this(seq, publicId, deleted, MetadataFields.ALL);
+    }
+
+    public MetadataChangeEvent(long seq, String publicId, boolean deleted, MetadataFields changedFields) {
+        this.seq = seq;
+        this.publicId = publicId;
+        this.deleted = deleted;
+        this.changedFields = deleted ? MetadataFields.ALL : changedFields;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public String getPublicId() {
+        return publicId;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    /**
+     * The fields the change may have touched. All of them for deletions, and for changes read back from the feed, where
+     * only the publicId is stored.
+     */
+    public MetadataFields getChangedFields() {
+        return changedFields;
+    }
+}
@@ -0,0 +1,180 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import no.ndla.taxnomy.metadataapi.service.exception.InvalidDataException;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The fields of the metadata to return, parsed from a comma separated list like "visible,competenceAims" or
+ * "customFields.key1,customFields.key2". The publicId and version are always returned.
+ */
+public final class MetadataFields {
+    public static final MetadataFields ALL = new MetadataFields(true, true, true, null);
+    public static final MetadataFields NONE = new MetadataFields(false, false, false, Set.of());
+
+    private static final String CUSTOM_FIELD_PREFIX = "customFields.";
+
+    private final boolean visible;
+    private final boolean competenceAims;
+    private final boolean customFields;
+
+    // Null for all the custom fields
+    private final Set<String> customFieldKeys;
+
+    private MetadataFields(boolean visible, boolean competenceAims, boolean customFields, Set<String> customFieldKeys) {
+        this.visible = visible;
+        this.competenceAims = competenceAims;
+        this.customFields = customFields;
+        this.customFieldKeys = customFieldKeys;
+    }
+
+    public static MetadataFields parse(String fields) throws InvalidDataException {
+        var visible = false;
+        var competenceAims = false;
+        var allCustomFields = false;
+        final var customFieldKeys = new HashSet<String>();
+
+        for (final var field : fields.split(",")) {
+            final var trimmed = field.trim();
+
+            if (trimmed.equals("visible")) {
+                visible = true;
+            } else if (trimmed.equals("competenceAims")) {
+                competenceAims = true;
+            } else if (trimmed.equals("customFields")) {
+                allCustomFields = true;
+            } else if (trimmed.startsWith(CUSTOM_FIELD_PREFIX) && trimmed.length() > CUSTOM_FIELD_PREFIX.length()) {
+                customFieldKeys.add(trimmed.substring(CUSTOM_FIELD_PREFIX.length()));
+            } else {
+                throw new InvalidDataException("Unknown field " + trimmed);
+            }
+        }
+
+        return new MetadataFields(visible, competenceAims, allCustomFields || !customFieldKeys.isEmpty(),
+                allCustomFields ? null : Set.copyOf(customFieldKeys));
+    }
+
+    /**
+     * The given fields, with customFieldKeys null for all the custom fields. Also tells which fields a change touched.
+     */
+    public static MetadataFields of(boolean visible, boolean competenceAims, boolean customFields,
+            Collection<String> customFieldKeys) {
+        if (!customFields) {
+            return new MetadataFields(visible, competenceAims, false, Set.of());
+        }
+
+        return new MetadataFields(visible, competenceAims, true,
+                customFieldKeys != null ? Collections.unmodifiableSet(new HashSet<>(customFieldKeys)) : null);
+    }
+
+    public MetadataFields union(MetadataFields other) {
+        if (!other.customFields || (customFields && customFieldKeys == null)) {
+            return new MetadataFields(visible || other.visible, competenceAims || other.competenceAims, customFields,
+                    customFieldKeys);
+        }
+        if (!customFields || other.customFieldKeys == null) {
+            return new MetadataFields(visible || other.visible, competenceAims || other.competenceAims, true,
+                    other.customFieldKeys);
+        }
+
+        final var keys = new HashSet<>(customFieldKeys);
+        keys.addAll(other.customFieldKeys);
+
+        return new MetadataFields(visible || other.visible, competenceAims || other.competenceAims, true,
+                Collections.unmodifiableSet(keys));
+    }
+
+    /**
+     * Returns true if any field is in both.
+     */
+    public boolean overlaps(MetadataFields other) {
+        if ((visible && other.visible) || (competenceAims && other.competenceAims)) {
+            return true;
+        }
+        if (!customFields || !other.customFields) {
+            return false;
+        }
+
+        return customFieldKeys == null || other.customFieldKeys == null
+                || !Collections.disjoint(customFieldKeys, other.customFieldKeys);
+    }
+
+    public boolean isAll() {
+        return visible && competenceAims && customFields && customFieldKeys == null;
+    }
+
+    public boolean includesVisible() {
+        return visible;
+    }
+
+    public boolean includesCompetenceAims() {
+        return competenceAims;
+    }
+
+    public boolean includesCustomFields() {
+        return customFields;
+    }
+
+    /**
+     * The keys of the custom fields to return, or empty if all of them are returned.
+     */
+    public Optional<Set<String>> getCustomFieldKeys() {
+        return Optional.ofNullable(customFieldKeys);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final var that = (MetadataFields) o;
+        return visible == that.visible && competenceAims == that.competenceAims && customFields == that.customFields
+                && Objects.equals(customFieldKeys, that.customFieldKeys);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(visible, competenceAims, customFields, customFieldKeys);
+    }
+
+    /**
+     * Returns a copy of complete metadata with only these fields.
+     */
+    public MetadataDto project(MetadataDto metadataDto) {
+        if (isAll()) {
+            return metadataDto;
+        }
+
+        final var projected = new MetadataDto(metadataDto.getPublicId());
+        projected.setVersion(metadataDto.getVersion());
+
+        if (visible) {
+            projected.setVisible(metadataDto.isVisible());
+        }
+        if (competenceAims) {
+            projected.setCompetenceAims(metadataDto.getCompetenceAims());
+        }
+        if (customFields) {
+            final var projectedCustomFields = new HashMap<String, String>();
+            metadataDto.getCustomFields().forEach((key, value) -> {
+                if (customFieldKeys == null || customFieldKeys.contains(key)) {
+                    projectedCustomFields.put(key, value);
+                }
+            });
+            projected.setCustomFields(projectedCustomFields);
+        }
+
+        return projected;
+    }
+}
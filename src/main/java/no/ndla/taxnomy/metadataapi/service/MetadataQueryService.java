@@ -0,0 +1,24 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataFacetsDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataQueryDto;
+import no.ndla.taxnomy.metadataapi.service.exception.InvalidDataException;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface MetadataQueryService {
+    /**
+     * Returns the publicIds of the entities matching the condition, ordered by publicId and starting after
+     * afterPublicId if not null. The condition is run as a single statement.
+     */
+    List<String> findTaxonomyEntityPublicIds(MetadataQueryDto.Condition condition, String afterPublicId, int limit)
+            throws InvalidDataException;
+
+    /**
+     * Counts the values of the custom fields and the competence aims of the entities matching the filter, or of all
+     * entities if the filter is null. Returns the limit most common values of each, most common first.
+     */
+    MetadataFacetsDto getFacets(MetadataQueryDto.Condition filter, Collection<String> customFieldKeys,
+            boolean competenceAims, int limit) throws InvalidDataException;
+}
@@ -0,0 +1,159 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataFacetsDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataQueryDto;
+import no.ndla.taxnomy.metadataapi.service.exception.InvalidDataException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.springframework.transaction.annotation.Propagation.REQUIRED;
+
+@Service
+public class MetadataQueryServiceImpl implements MetadataQueryService {
+    // Bounds the size of the statement a single query can produce
+    static final int MAX_CONDITIONS = 100;
+
+    private static final String CUSTOM_FIELD_EXISTS = "EXISTS (SELECT 1 FROM custom_field_value cfv "
+            + "JOIN custom_field cf ON cf.id = cfv.custom_field_id "
+            + "WHERE cfv.taxonomy_entity_id = te.id AND cf.key = :%s)";
+    private static final String CUSTOM_FIELD_VALUE_EXISTS = "EXISTS (SELECT 1 FROM custom_field_value cfv "
+            + "JOIN custom_field cf ON cf.id = cfv.custom_field_id "
+            + "WHERE cfv.taxonomy_entity_id = te.id AND cf.key = :%s AND cfv.value = :%s)";
+    private static final String COMPETENCE_AIM_EXISTS = "EXISTS (SELECT 1 FROM taxonomy_entity_competence_aim tea "
+            + "JOIN competence_aim ca ON ca.id = tea.competence_aim_id "
+            + "WHERE tea.taxonomy_entity_id = te.id AND ca.code = :%s)";
+
+    // Outer aliases differ from the ones in the subqueries of the filter
+    private static final String COUNT_CUSTOM_FIELD_VALUES = "SELECT fv.value, COUNT(*) AS value_count "
+            + "FROM custom_field_value fv JOIN custom_field f ON f.id = fv.custom_field_id "
+            + "JOIN taxonomy_entity te ON te.id = fv.taxonomy_entity_id WHERE f.key = :key AND %s "
+            + "GROUP BY fv.value ORDER BY value_count DESC, fv.value LIMIT :limit";
+    private static final String COUNT_COMPETENCE_AIMS = "SELECT a.code AS value, COUNT(*) AS value_count "
+            + "FROM taxonomy_entity_competence_aim ea JOIN competence_aim a ON a.id = ea.competence_aim_id "
+            + "JOIN taxonomy_entity te ON te.id = ea.taxonomy_entity_id WHERE %s "
+            + "GROUP BY a.code ORDER BY value_count DESC, a.code LIMIT :limit";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public MetadataQueryServiceImpl(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Compiles the condition to an SQL expression on taxonomy_entity te, adding the values as parameters.
+     */
+    private static class Compiler {
+        private final MapSqlParameterSource parameters = new MapSqlParameterSource();
+        private int conditionCount = 0;
+
+        private String addParameter(Object value) {
+            final var name = "p" + parameters.getValues().size();
+            parameters.addValue(name, value);
+
+            return name;
+        }
+
+        private String compile(MetadataQueryDto.Condition condition) throws InvalidDataException {
+            if (condition == null) {
+                throw new InvalidDataException("Empty condition in query");
+            }
+            if (++conditionCount > MAX_CONDITIONS) {
+                throw new InvalidDataException("Query has more than " + MAX_CONDITIONS + " conditions");
+            }
+
+            final var setCount = Stream
+                    .of(condition.getAnd(), condition.getOr(), condition.getNot(), condition.getCustomField(),
+                            condition.getCompetenceAim(), condition.getVisible())
+                    .filter(property -> property != null).count();
+            if (setCount != 1) {
+                throw new InvalidDataException("Each condition in query must have exactly one property");
+            }
+
+            if (condition.getAnd() != null) {
+                return compileAll(condition.getAnd(), " AND ");
+            } else if (condition.getOr() != null) {
+                return compileAll(condition.getOr(), " OR ");
+            } else if (condition.getNot() != null) {
+                return "NOT " + compile(condition.getNot());
+            } else if (condition.getCustomField() != null) {
+                final var customField = condition.getCustomField();
+                if (customField.getKey() == null) {
+                    throw new InvalidDataException("Custom field condition without key");
+                }
+
+                return customField.getValue() != null
+                        ? String.format(CUSTOM_FIELD_VALUE_EXISTS, addParameter(customField.getKey()),
+                                addParameter(customField.getValue()))
+                        : String.format(CUSTOM_FIELD_EXISTS, addParameter(customField.getKey()));
+            } else if (condition.getCompetenceAim() != null) {
+                // Codes are stored in upper case
+                return String.format(COMPETENCE_AIM_EXISTS, addParameter(condition.getCompetenceAim().toUpperCase()));
+            } else {
+                return "te.visible = :" + addParameter(condition.getVisible());
+            }
+        }
+
+        private String compileAll(List<MetadataQueryDto.Condition> conditions, String operator)
+                throws InvalidDataException {
+            if (conditions.isEmpty()) {
+                throw new InvalidDataException("Empty and/or in query");
+            }
+
+            final var expression = new StringBuilder("(");
+            for (final var condition : conditions) {
+                if (expression.length() > 1) {
+                    expression.append(operator);
+                }
+                expression.append(compile(condition));
+            }
+
+            return expression.append(')').toString();
+        }
+    }
+
+    @Override
+    @Transactional(propagation = REQUIRED, readOnly = true)
+    public List<String> findTaxonomyEntityPublicIds(MetadataQueryDto.Condition condition, String afterPublicId,
+            int limit) throws InvalidDataException {
+        final var compiler = new Compiler();
+        final var expression = compiler.compile(condition);
+
+        final var sql = "SELECT te.public_id FROM taxonomy_entity te WHERE " + expression
+                + " AND te.public_id > :afterPublicId ORDER BY te.public_id LIMIT :limit";
+        compiler.parameters.addValue("afterPublicId", afterPublicId != null ? afterPublicId : "");
+        compiler.parameters.addValue("limit", limit);
+
+        return jdbcTemplate.queryForList(sql, compiler.parameters, String.class);
+    }
+
+    private List<MetadataFacetsDto.FacetCount> countFacet(String sql, MapSqlParameterSource parameters) {
+        return jdbcTemplate.query(sql, parameters,
+                (resultSet, rowNum) -> new MetadataFacetsDto.FacetCount(resultSet.getString("value"),
+                        resultSet.getLong("value_count")));
+    }
+
+    @Override
+    @Transactional(propagation = REQUIRED, readOnly = true)
+    public MetadataFacetsDto getFacets(MetadataQueryDto.Condition filter, Collection<String> customFieldKeys,
+            boolean competenceAims, int limit) throws InvalidDataException {
+        final var compiler = new Compiler();
+        final var expression = filter != null ? compiler.compile(filter) : "1 = 1";
+        compiler.parameters.addValue("limit", limit);
+
+        final var customFields = new LinkedHashMap<String, List<MetadataFacetsDto.FacetCount>>();
+        for (final var key : customFieldKeys) {
+            final var parameters = new MapSqlParameterSource(compiler.parameters.getValues()).addValue("key", key);
+            customFields.put(key, countFacet(String.format(COUNT_CUSTOM_FIELD_VALUES, expression), parameters));
+        }
+
+        return new MetadataFacetsDto(customFields, competenceAims
+                ? countFacet(String.format(COUNT_COMPETENCE_AIMS, expression), compiler.parameters) : null);
+    }
+}
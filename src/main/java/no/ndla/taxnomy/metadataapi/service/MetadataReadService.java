@@ -0,0 +1,18 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Read-only access to stored metadata, mapped from plain rows without loading any entities. Does not see changes not
+ * yet flushed by the persistence context, so must not be used to read back metadata in a transaction that modified it.
+ */
+public interface MetadataReadService {
+    /**
+     * Returns the metadata of the entities by publicId, publicIds not stored are not present in the returned map. Only
+     * the queries needed for the requested fields are run.
+     */
+    Map<String, MetadataDto> getMetadata(Collection<String> publicIds, MetadataFields fields);
+}
@@ -0,0 +1,95 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.springframework.transaction.annotation.Propagation.REQUIRED;
+
+@Service
+public class MetadataReadServiceImpl implements MetadataReadService {
+    static final String SELECT_ENTITIES = "SELECT id, public_id, visible, revision FROM taxonomy_entity "
+            + "WHERE public_id IN (:publicIds)";
+    static final String SELECT_COMPETENCE_AIMS = "SELECT tea.taxonomy_entity_id, ca.code "
+            + "FROM taxonomy_entity_competence_aim tea JOIN competence_aim ca ON ca.id = tea.competence_aim_id "
+            + "WHERE tea.taxonomy_entity_id IN (:ids)";
+    static final String SELECT_CUSTOM_FIELDS = "SELECT cfv.taxonomy_entity_id, cf.key, cfv.value "
+            + "FROM custom_field_value cfv JOIN custom_field cf ON cf.id = cfv.custom_field_id "
+            + "WHERE cfv.taxonomy_entity_id IN (:ids)";
+    static final String SELECT_CUSTOM_FIELDS_BY_KEY = SELECT_CUSTOM_FIELDS + " AND cf.key IN (:keys)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public MetadataReadServiceImpl(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    @Transactional(propagation = REQUIRED, readOnly = true)
+    public Map<String, MetadataDto> getMetadata(Collection<String> publicIds, MetadataFields fields) {
+        if (publicIds.isEmpty()) {
+            return Map.of();
+        }
+
+        final var metadataById = new HashMap<UUID, MetadataDto>();
+
+        jdbcTemplate.query(SELECT_ENTITIES, Map.of("publicIds", publicIds), resultSet -> {
+            final var metadataDto = new MetadataDto(resultSet.getString("public_id"));
+            final var id = resultSet.getObject("id", UUID.class);
+
+            if (fields.includesVisible()) {
+                metadataDto.setVisible(resultSet.getBoolean("visible"));
+            }
+            if (fields.includesCustomFields()) {
+                metadataDto.setCustomFields(new HashMap<>());
+            }
+            metadataDto.setVersion(MetadataVersions.of(id, resultSet.getLong("revision")));
+
+            metadataById.put(id, metadataDto);
+        });
+
+        if (metadataById.isEmpty()) {
+            return Map.of();
+        }
+
+        final var ids = metadataById.keySet();
+
+        if (fields.includesCompetenceAims()) {
+            final var competenceAimsById = new HashMap<UUID, Set<MetadataDto.CompetenceAim>>();
+
+            jdbcTemplate.query(SELECT_COMPETENCE_AIMS, Map.of("ids", ids), resultSet -> {
+                competenceAimsById
+                        .computeIfAbsent(resultSet.getObject("taxonomy_entity_id", UUID.class), id -> new HashSet<>())
+                        .add(new MetadataDto.CompetenceAim(resultSet.getString("code")));
+            });
+
+            metadataById.forEach(
+                    (id, metadataDto) -> metadataDto.setCompetenceAims(competenceAimsById.getOrDefault(id, Set.of())));
+        }
+
+        final var customFieldKeys = fields.getCustomFieldKeys();
+        if (fields.includesCustomFields()) {
+            final var sql = customFieldKeys.isPresent() ? SELECT_CUSTOM_FIELDS_BY_KEY : SELECT_CUSTOM_FIELDS;
+            final var parameters = customFieldKeys.isPresent() ? Map.of("ids", ids, "keys", customFieldKeys.get())
+                    : Map.of("ids", ids);
+
+            jdbcTemplate.query(sql, parameters, resultSet -> {
+                final var metadataDto = metadataById.get(resultSet.getObject("taxonomy_entity_id", UUID.class));
+                metadataDto.getCustomFields().put(resultSet.getString("key"), resultSet.getString("value"));
+            });
+        }
+
+        final var metadataByPublicId = new HashMap<String, MetadataDto>();
+        metadataById.values().forEach(metadataDto -> metadataByPublicId.put(metadataDto.getPublicId(), metadataDto));
+
+        return metadataByPublicId;
+    }
+}
@@ -0,0 +1,22 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Opaque version tokens of the metadata of an entity. The token changes whenever the metadata changes, and also when an
+ * entity is deleted and created again since the entity id is part of it.
+ */
+public final class MetadataVersions {
+    // Version of entities that have no stored metadata
+    public static final String EMPTY = of(new UUID(0, 0), 0);
+
+    private MetadataVersions() {
+    }
+
+    public static String of(UUID taxonomyEntityId, long revision) {
+        return DigestUtils.md5DigestAsHex((taxonomyEntityId + ":" + revision).getBytes(StandardCharsets.UTF_8));
+    }
+}
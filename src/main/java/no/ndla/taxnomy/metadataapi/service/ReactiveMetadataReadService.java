@@ -0,0 +1,23 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import no.ndla.taxnomy.metadataapi.service.exception.InvalidPublicIdException;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Non-blocking reads of stored metadata, the same metadata as {@link MetadataAggregatorService} returns without any
+ * caching in front. Only available with the reactive profile.
+ */
+public interface ReactiveMetadataReadService {
+    Mono<MetadataDto> getMetadataForTaxonomyEntity(String publicId, MetadataFields fields)
+            throws InvalidPublicIdException;
+
+    /**
+     * Returns the metadata in the order of the publicIds, entities without metadata get empty metadata.
+     */
+    Mono<List<MetadataDto>> getMetadataForTaxonomyEntities(Collection<String> publicIds, MetadataFields fields)
+            throws InvalidPublicIdException;
+}
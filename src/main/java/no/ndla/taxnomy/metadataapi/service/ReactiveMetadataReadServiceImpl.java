@@ -0,0 +1,119 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import no.ndla.taxnomy.metadataapi.service.exception.InvalidPublicIdException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the queries of {@link MetadataReadServiceImpl} through R2DBC. The competence aims and custom fields are queried
+ * concurrently once the entities are found.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveMetadataReadServiceImpl implements ReactiveMetadataReadService {
+    private final DatabaseClient databaseClient;
+    private final PublicIdValidator publicIdValidator;
+
+    public ReactiveMetadataReadServiceImpl(DatabaseClient databaseClient, PublicIdValidator publicIdValidator) {
+        this.databaseClient = databaseClient;
+        this.publicIdValidator = publicIdValidator;
+    }
+
+    @Override
+    public Mono<MetadataDto> getMetadataForTaxonomyEntity(String publicId, MetadataFields fields)
+            throws InvalidPublicIdException {
+        return getMetadataForTaxonomyEntities(List.of(publicId), fields).map(metadataDtos -> metadataDtos.get(0));
+    }
+
+    @Override
+    public Mono<List<MetadataDto>> getMetadataForTaxonomyEntities(Collection<String> publicIds, MetadataFields fields)
+            throws InvalidPublicIdException {
+        for (String publicId : publicIds) {
+            publicIdValidator.validatePublicId(publicId);
+        }
+
+        return getMetadata(publicIds, fields).map(metadataDtos -> publicIds.stream().map(publicId -> {
+            final var metadataDto = metadataDtos.get(publicId);
+
+            return metadataDto != null ? metadataDto
+                    : fields.project(MetadataAggregatorServiceImpl.createEmptyDto(publicId));
+        }).collect(Collectors.toList()));
+    }
+
+    private Mono<Map<String, MetadataDto>> getMetadata(Collection<String> publicIds, MetadataFields fields) {
+        if (publicIds.isEmpty()) {
+            return Mono.just(Map.of());
+        }
+
+        return databaseClient.sql(MetadataReadServiceImpl.SELECT_ENTITIES).bind("publicIds", publicIds).map(row -> {
+            final var metadataDto = new MetadataDto(row.get("public_id", String.class));
+            final var id = row.get("id", UUID.class);
+
+            if (fields.includesVisible()) {
+                metadataDto.setVisible(row.get("visible", Boolean.class));
+            }
+            if (fields.includesCustomFields()) {
+                metadataDto.setCustomFields(new HashMap<>());
+            }
+            metadataDto.setVersion(MetadataVersions.of(id, row.get("revision", Long.class)));
+
+            return Map.entry(id, metadataDto);
+        }).all().collectMap(Map.Entry::getKey, Map.Entry::getValue).flatMap(metadataById -> {
+            if (metadataById.isEmpty()) {
+                return Mono.just(Map.of());
+            }
+
+            return Mono.when(addCompetenceAims(metadataById, fields), addCustomFields(metadataById, fields))
+                    .then(Mono.fromSupplier(() -> metadataById.values().stream()
+                            .collect(Collectors.toMap(MetadataDto::getPublicId, metadataDto -> metadataDto))));
+        });
+    }
+
+    private Mono<Void> addCompetenceAims(Map<UUID, MetadataDto> metadataById, MetadataFields fields) {
+        if (!fields.includesCompetenceAims()) {
+            return Mono.empty();
+        }
+
+        return databaseClient.sql(MetadataReadServiceImpl.SELECT_COMPETENCE_AIMS).bind("ids", metadataById.keySet())
+                .map(row -> Map.entry(row.get("taxonomy_entity_id", UUID.class),
+                        new MetadataDto.CompetenceAim(row.get("code", String.class))))
+                .all().collect(HashMap<UUID, Set<MetadataDto.CompetenceAim>>::new, (competenceAimsById, entry) -> {
+                    competenceAimsById.computeIfAbsent(entry.getKey(), id -> new HashSet<>()).add(entry.getValue());
+                }).doOnNext(competenceAimsById -> metadataById.forEach((id, metadataDto) -> metadataDto
+                        .setCompetenceAims(competenceAimsById.getOrDefault(id, Set.of()))))
+                .then();
+    }
+
+    private Mono<Void> addCustomFields(Map<UUID, MetadataDto> metadataById, MetadataFields fields) {
+        if (!fields.includesCustomFields()) {
+            return Mono.empty();
+        }
+
+        final var customFieldKeys = fields.getCustomFieldKeys();
+        var spec = databaseClient.sql(customFieldKeys.isPresent() ? MetadataReadServiceImpl.SELECT_CUSTOM_FIELDS_BY_KEY
+                : MetadataReadServiceImpl.SELECT_CUSTOM_FIELDS).bind("ids", metadataById.keySet());
+        if (customFieldKeys.isPresent()) {
+            spec = spec.bind("keys", customFieldKeys.get());
+        }
+
+        // Each entity is only added to by this query, the maps are not shared with the competence aim query
+        return spec.map(row -> {
+            final var metadataDto = metadataById.get(row.get("taxonomy_entity_id", UUID.class));
+            metadataDto.getCustomFields().put(row.get("key", String.class), row.get("value", String.class));
+
+            return metadataDto;
+        }).all().then();
+    }
+}
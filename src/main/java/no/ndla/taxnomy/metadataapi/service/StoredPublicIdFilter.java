@@ -0,0 +1,202 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import no.ndla.taxnomy.metadataapi.data.domain.MetadataChange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bloom filter over the publicIds of the stored entities, telling entities that certainly have no stored metadata apart
+ * without querying the database. Answers "might be stored" for every publicId until the filter is built.
+ *
+ * Entities created here are added before their transaction commits, entities created by other instances are added from
+ * the {@link ChangeFeedReader}. Deleted entities stay in the filter until it is rebuilt after enough deletions.
+ */
+@Component
+public class StoredPublicIdFilter {
+    private static final String COUNT_ENTITIES = "SELECT COUNT(*) FROM taxonomy_entity";
+    private static final String SELECT_PUBLIC_IDS = "SELECT public_id FROM taxonomy_entity";
+    private static final long MIN_EXPECTED_INSERTIONS = 10_000;
+
+    private final Logger logger = LoggerFactory.getLogger(StoredPublicIdFilter.class);
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final double falsePositiveProbability;
+    private final Duration refreshInterval;
+    private final Counter definiteMisses;
+    private final Counter falsePositives;
+
+    private volatile BloomFilter<CharSequence> filter;
+
+    // While building, publicIds added also go to the filter being built
+    private volatile BloomFilter<CharSequence> nextFilter;
+
+    // Held while adding and while swapping in a built filter, so an add can not miss both filters
+    private final Object swapLock = new Object();
+
+    // Counted by the change feed reader, reset by the refresh thread
+    private final AtomicLong deletionsSinceBuild = new AtomicLong();
+
+    // Only used from the refresh thread
+    private long expectedInsertions;
+
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public StoredPublicIdFilter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            ChangeFeedReader changeFeedReader, MeterRegistry meterRegistry,
+            @Value("${metadata.publicid-filter.enabled:true}") boolean enabled,
+            @Value("${metadata.publicid-filter.false-positive-probability:0.01}") double falsePositiveProbability,
+            @Value("${metadata.publicid-filter.refresh-interval:5s}") Duration refreshInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.enabled = enabled;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.refreshInterval = refreshInterval;
+        this.definiteMisses = meterRegistry.counter("metadata.publicid.filter", "result", "definite_miss");
+        this.falsePositives = meterRegistry.counter("metadata.publicid.filter", "result", "false_positive");
+
+        // Registered before the filter is first built, so no change committed after the build reads the entities is
+        // missed
+        changeFeedReader.addListener(this::applyChanges);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "publicid-filter");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refresh, 0, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns false only if the entity is certainly not stored.
+     */
+    public boolean mightBeStored(String publicId) {
+        final var currentFilter = filter;
+        if (currentFilter == null || currentFilter.mightContain(publicId)) {
+            return true;
+        }
+
+        definiteMisses.increment();
+        return false;
+    }
+
+    /**
+     * Adds an entity being created, must be called before the transaction creating it commits.
+     */
+    public void add(String publicId) {
+        synchronized (swapLock) {
+            if (filter != null) {
+                filter.put(publicId);
+            }
+            if (nextFilter != null) {
+                nextFilter.put(publicId);
+            }
+        }
+    }
+
+    /**
+     * Called when an entity the filter said might be stored turned out not to be.
+     */
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    boolean isBuilt() {
+        return filter != null;
+    }
+
+    void refresh() {
+        try {
+            if (filter == null) {
+                build();
+            } else {
+                rebuildIfNeeded();
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to refresh the publicId filter", e);
+        }
+    }
+
+    void build() {
+        transactionTemplate.executeWithoutResult(status -> {
+            final var count = jdbcTemplate.queryForObject(COUNT_ENTITIES, Long.class);
+            expectedInsertions = Math.max(MIN_EXPECTED_INSERTIONS, 2 * (count != null ? count : 0));
+
+            final var next = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedInsertions,
+                    falsePositiveProbability);
+            synchronized (swapLock) {
+                nextFilter = next;
+            }
+
+            // Changes committed after this may not be visible to the query below, the change feed reader adds them to
+            // this filter or the next
+            deletionsSinceBuild.set(0);
+            jdbcTemplate.query(SELECT_PUBLIC_IDS, resultSet -> {
+                next.put(resultSet.getString("public_id"));
+            });
+
+            synchronized (swapLock) {
+                filter = next;
+                nextFilter = null;
+            }
+        });
+    }
+
+    void applyChanges(List<MetadataChange> changes) {
+        for (final var change : changes) {
+            if (change.isDeleted()) {
+                deletionsSinceBuild.incrementAndGet();
+            } else {
+                add(change.getPublicId());
+            }
+        }
+    }
+
+    private void rebuildIfNeeded() {
+        // Rebuilt to drop deleted entities, or when grown past the size it was built for and the false positive
+        // probability starts to rise
+        final var approximateCount = filter.approximateElementCount();
+        if (deletionsSinceBuild.get() > Math.max(MIN_EXPECTED_INSERTIONS, approximateCount / 10)
+                || approximateCount > expectedInsertions) {
+            build();
+        }
+    }
+}
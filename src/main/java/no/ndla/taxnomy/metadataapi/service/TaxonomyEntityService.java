@@ -4,6 +4,7 @@ import no.ndla.taxnomy.metadataapi.data.domain.TaxonomyEntity;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface TaxonomyEntityService {
@@ -11,6 +12,17 @@ public interface TaxonomyEntityService {
 
     List<TaxonomyEntity> getTaxonomyEntities(Collection<String> publicIds);
 
+    /**
+     * Returns the {@link MetadataVersions} of the entities without loading them, publicIds not stored are not present
+     * in the returned map.
+     */
+    Map<String, String> getTaxonomyEntityVersions(Collection<String> publicIds);
+
+    /**
+     * Increments the revisions of the entities in the database and sets the incremented revisions on them.
+     */
+    void incrementRevisions(Collection<TaxonomyEntity> taxonomyEntities);
+
     TaxonomyEntity getOrCreateTaxonomyEntity(String publicId);
 
     List<TaxonomyEntity> getOrCreateTaxonomyEntities(Collection<String> publicId);
@@ -19,5 +31,8 @@ public interface TaxonomyEntityService {
 
     void saveTaxonomyEntities(Collection<TaxonomyEntity> taxonomyEntities);
 
-    void deleteTaxonomyEntity(String publicId);
+    /**
+     * Returns true if the entity existed.
+     */
+    boolean deleteTaxonomyEntity(String publicId);
 }
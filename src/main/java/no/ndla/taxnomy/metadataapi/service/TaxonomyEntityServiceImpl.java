@@ -2,11 +2,13 @@ package no.ndla.taxnomy.metadataapi.service;
 
 import no.ndla.taxnomy.metadataapi.data.domain.TaxonomyEntity;
 import no.ndla.taxnomy.metadataapi.data.repository.TaxonomyEntityRepository;
+import no.ndla.taxnomy.metadataapi.data.repository.UpsertRepository;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -15,9 +17,17 @@ import static org.springframework.transaction.annotation.Propagation.MANDATORY;
 @Service
 public class TaxonomyEntityServiceImpl implements TaxonomyEntityService {
     private final TaxonomyEntityRepository taxonomyEntityRepository;
+    private final UpsertRepository upsertRepository;
+    private final StoredPublicIdFilter storedPublicIdFilter;
+    private final ChangeFeedService changeFeedService;
 
-    public TaxonomyEntityServiceImpl(TaxonomyEntityRepository taxonomyEntityRepository) {
+    public TaxonomyEntityServiceImpl(TaxonomyEntityRepository taxonomyEntityRepository,
+            UpsertRepository upsertRepository, StoredPublicIdFilter storedPublicIdFilter,
+            ChangeFeedService changeFeedService) {
         this.taxonomyEntityRepository = taxonomyEntityRepository;
+        this.upsertRepository = upsertRepository;
+        this.storedPublicIdFilter = storedPublicIdFilter;
+        this.changeFeedService = changeFeedService;
     }
 
     @Override
@@ -35,17 +45,47 @@ public class TaxonomyEntityServiceImpl implements TaxonomyEntityService {
         return taxonomyEntityRepository.findAllByPublicIdInIncludingCompetenceAims(publicIds);
     }
 
-    private TaxonomyEntity createEmptyTaxonomyEntity(String publicId) {
-        final var taxonomyNode = new TaxonomyEntity();
-        taxonomyNode.setPublicId(publicId);
-        return taxonomyNode;
+    @Override
+    public Map<String, String> getTaxonomyEntityVersions(Collection<String> publicIds) {
+        if (publicIds.size() == 0) {
+            return Map.of();
+        }
+
+        return taxonomyEntityRepository.findRevisionsByPublicIdIn(publicIds).stream()
+                .collect(Collectors.toMap(TaxonomyEntityRepository.Revision::getPublicId,
+                        revision -> MetadataVersions.of(revision.getId(), revision.getRevision())));
     }
 
+    @Override
+    @Transactional(propagation = MANDATORY)
+    public void incrementRevisions(Collection<TaxonomyEntity> taxonomyEntities) {
+        if (taxonomyEntities.size() == 0) {
+            return;
+        }
+
+        final var ids = taxonomyEntities.stream().map(TaxonomyEntity::getId).collect(Collectors.toSet());
+        taxonomyEntityRepository.incrementRevisions(ids);
+
+        // Read back, as a concurrent transaction may have incremented the revision after the entities were read
+        final var revisions = taxonomyEntityRepository.findRevisionsByIdIn(ids).stream().collect(Collectors
+                .toMap(TaxonomyEntityRepository.Revision::getId, TaxonomyEntityRepository.Revision::getRevision));
+        taxonomyEntities.forEach(taxonomyEntity -> taxonomyEntity.setRevision(revisions.get(taxonomyEntity.getId())));
+    }
+
+    // Added whether created or not, the filter must contain the entity before a transaction creating it commits. A
+    // created entity is recorded as changed even if no values are set, other instances add it to their filters from
+    // the change feed
     @Override
     @Transactional(propagation = MANDATORY)
     public TaxonomyEntity getOrCreateTaxonomyEntity(String publicId) {
-        return taxonomyEntityRepository.findFirstByPublicId(publicId)
-                .orElseGet(() -> taxonomyEntityRepository.saveAndFlush(createEmptyTaxonomyEntity(publicId)));
+        storedPublicIdFilter.add(publicId);
+
+        final var upserted = upsertRepository.upsertTaxonomyEntity(publicId);
+        if (upserted.isInserted()) {
+            changeFeedService.recordChange(publicId, MetadataFields.ALL);
+        }
+
+        return taxonomyEntityRepository.getOne(upserted.getId());
     }
 
     @Override
@@ -55,14 +95,14 @@ public class TaxonomyEntityServiceImpl implements TaxonomyEntityService {
             return List.of();
         }
 
-        final var existingEntities = getTaxonomyEntities(publicIds).stream()
-                .collect(Collectors.toMap(TaxonomyEntity::getPublicId, taxonomyEntity -> taxonomyEntity));
+        publicIds.forEach(storedPublicIdFilter::add);
+        changeFeedService.recordChanges(upsertRepository.insertMissingTaxonomyEntities(publicIds).stream()
+                .collect(Collectors.toMap(publicId -> publicId, publicId -> MetadataFields.ALL)));
 
-        final var entitiesToReturn = publicIds.stream()
-                .map(publicId -> existingEntities.computeIfAbsent(publicId, this::createEmptyTaxonomyEntity))
-                .collect(Collectors.toList());
+        final var taxonomyEntities = getTaxonomyEntities(publicIds).stream()
+                .collect(Collectors.toMap(TaxonomyEntity::getPublicId, taxonomyEntity -> taxonomyEntity));
 
-        return taxonomyEntityRepository.saveAll(entitiesToReturn);
+        return publicIds.stream().map(taxonomyEntities::get).collect(Collectors.toList());
     }
 
     @Override
@@ -80,7 +120,10 @@ public class TaxonomyEntityServiceImpl implements TaxonomyEntityService {
 
     @Override
     @Transactional
-    public void deleteTaxonomyEntity(String publicId) {
-        taxonomyEntityRepository.findFirstByPublicId(publicId).ifPresent(taxonomyEntityRepository::delete);
+    public boolean deleteTaxonomyEntity(String publicId) {
+        final var taxonomyEntity = taxonomyEntityRepository.findFirstByPublicId(publicId);
+        taxonomyEntity.ifPresent(taxonomyEntityRepository::delete);
+
+        return taxonomyEntity.isPresent();
     }
 }
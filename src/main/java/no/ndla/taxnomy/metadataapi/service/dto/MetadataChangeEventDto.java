@@ -0,0 +1,47 @@
+package no.ndla.taxnomy.metadataapi.service.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MetadataChangeEventDto {
+    private String publicId;
+
+    // "changed" or "deleted"
+    private String type;
+
+    // The current metadata, only when requested and not deleted
+    private MetadataDto metadata;
+
+    public MetadataChangeEventDto(String publicId, String type, MetadataDto metadata) {
+        this.publicId = publicId;
+        this.type = type;
+        this.metadata = metadata;
+    }
+
+    public MetadataChangeEventDto() {
+    }
+
+    public String getPublicId() {
+        return publicId;
+    }
+
+    public void setPublicId(String publicId) {
+        this.publicId = publicId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public MetadataDto getMetadata() {
+        return metadata;
+    }
+
+    public void setMetadata(MetadataDto metadata) {
+        this.metadata = metadata;
+    }
+}
@@ -0,0 +1,47 @@
+package no.ndla.taxnomy.metadataapi.service.dto;
+
+import java.util.List;
+
+public class MetadataChangePageDto {
+    // The current metadata of the entities changed
+    private List<MetadataDto> changed;
+
+    // PublicIds of the entities deleted
+    private List<String> deleted;
+
+    // Opaque token for requesting the changes after this page, also when there are no more changes yet
+    private String next;
+
+    public MetadataChangePageDto(List<MetadataDto> changed, List<String> deleted, String next) {
+        this.changed = changed;
+        this.deleted = deleted;
+        this.next = next;
+    }
+
+    public MetadataChangePageDto() {
+    }
+
+    public List<MetadataDto> getChanged() {
+        return changed;
+    }
+
+    public void setChanged(List<MetadataDto> changed) {
+        this.changed = changed;
+    }
+
+    public List<String> getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(List<String> deleted) {
+        this.deleted = deleted;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+}
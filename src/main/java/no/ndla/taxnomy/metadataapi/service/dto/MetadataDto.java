@@ -1,5 +1,8 @@
 package no.ndla.taxnomy.metadataapi.service.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import javax.validation.Valid;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.Pattern;
@@ -8,6 +11,8 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+// Fields left out of a sparse fieldset are null and not returned
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class MetadataDto {
     public static class CompetenceAim {
         @Pattern(regexp = "^[A-Za-z0-9-]+$", message = "Error validating competence aim, must only contain letters, numbers and -")
@@ -39,6 +44,10 @@ public class MetadataDto {
 
     private Map<String, String> customFields;
 
+    // Set on returned metadata only, the value used as ETag
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private String version;
+
     public String getPublicId() {
         return publicId;
     }
@@ -88,4 +97,12 @@ public class MetadataDto {
     public void setCustomFields(Map<String, String> customFields) {
         this.customFields = customFields;
     }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,49 @@
+package no.ndla.taxnomy.metadataapi.service.dto;
+
+import java.util.List;
+
+public class MetadataFacetQueryDto {
+    // Counts only the entities matching the query if not null
+    private MetadataQueryDto.Condition query;
+
+    // Keys of the custom fields to count values of
+    private List<String> customFields = List.of();
+
+    // Whether to count competence aims
+    private boolean competenceAims = false;
+
+    // Number of most common values returned per facet
+    private int limit = 20;
+
+    public MetadataQueryDto.Condition getQuery() {
+        return query;
+    }
+
+    public void setQuery(MetadataQueryDto.Condition query) {
+        this.query = query;
+    }
+
+    public List<String> getCustomFields() {
+        return customFields;
+    }
+
+    public void setCustomFields(List<String> customFields) {
+        this.customFields = customFields;
+    }
+
+    public boolean isCompetenceAims() {
+        return competenceAims;
+    }
+
+    public void setCompetenceAims(boolean competenceAims) {
+        this.competenceAims = competenceAims;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+}
@@ -0,0 +1,68 @@
+package no.ndla.taxnomy.metadataapi.service.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+import java.util.Map;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MetadataFacetsDto {
+    public static class FacetCount {
+        private String value;
+        private long count;
+
+        public FacetCount(String value, long count) {
+            this.value = value;
+            this.count = count;
+        }
+
+        FacetCount() {
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public void setCount(long count) {
+            this.count = count;
+        }
+    }
+
+    // Most common values first, by custom field key
+    private Map<String, List<FacetCount>> customFields;
+
+    // Most common competence aim codes first, null if not requested
+    private List<FacetCount> competenceAims;
+
+    public MetadataFacetsDto(Map<String, List<FacetCount>> customFields, List<FacetCount> competenceAims) {
+        this.customFields = customFields;
+        this.competenceAims = competenceAims;
+    }
+
+    public MetadataFacetsDto() {
+    }
+
+    public Map<String, List<FacetCount>> getCustomFields() {
+        return customFields;
+    }
+
+    public void setCustomFields(Map<String, List<FacetCount>> customFields) {
+        this.customFields = customFields;
+    }
+
+    public List<FacetCount> getCompetenceAims() {
+        return competenceAims;
+    }
+
+    public void setCompetenceAims(List<FacetCount> competenceAims) {
+        this.competenceAims = competenceAims;
+    }
+}
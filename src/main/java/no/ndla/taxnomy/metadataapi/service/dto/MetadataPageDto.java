@@ -0,0 +1,34 @@
+package no.ndla.taxnomy.metadataapi.service.dto;
+
+import java.util.List;
+
+public class MetadataPageDto {
+    private List<MetadataDto> results;
+
+    // Opaque token for requesting the next page, null on the last page
+    private String next;
+
+    public MetadataPageDto(List<MetadataDto> results, String next) {
+        this.results = results;
+        this.next = next;
+    }
+
+    public MetadataPageDto() {
+    }
+
+    public List<MetadataDto> getResults() {
+        return results;
+    }
+
+    public void setResults(List<MetadataDto> results) {
+        this.results = results;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+}
@@ -0,0 +1,79 @@
+package no.ndla.taxnomy.metadataapi.service.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import javax.validation.Valid;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A JSON merge patch (RFC 7396) of the metadata of an entity. Members left out of the patch are not changed, members
+ * set to null are removed. Custom fields are merged by key, so a custom field set to null is removed and custom fields
+ * left out are kept. Competence aims are an array and replaced as a whole, as arrays are in merge patches.
+ */
+public class MetadataPatchDto {
+    private String publicId;
+
+    private Boolean visible;
+
+    @Valid
+    private Set<MetadataDto.CompetenceAim> competenceAims;
+
+    private Map<String, String> customFields;
+
+    // Tells members set to null apart from members left out
+    private boolean visiblePatched;
+    private boolean competenceAimsPatched;
+    private boolean customFieldsPatched;
+
+    public String getPublicId() {
+        return publicId;
+    }
+
+    public void setPublicId(String publicId) {
+        this.publicId = publicId;
+    }
+
+    public Boolean isVisible() {
+        return visible;
+    }
+
+    public void setVisible(Boolean visible) {
+        this.visible = visible;
+        this.visiblePatched = true;
+    }
+
+    public Set<MetadataDto.CompetenceAim> getCompetenceAims() {
+        return competenceAims;
+    }
+
+    public void setCompetenceAims(Set<MetadataDto.CompetenceAim> competenceAims) {
+        this.competenceAims = competenceAims != null ? new HashSet<>(competenceAims) : null;
+        this.competenceAimsPatched = true;
+    }
+
+    public Map<String, String> getCustomFields() {
+        return customFields;
+    }
+
+    public void setCustomFields(Map<String, String> customFields) {
+        this.customFields = customFields;
+        this.customFieldsPatched = true;
+    }
+
+    @JsonIgnore
+    public boolean isVisiblePatched() {
+        return visiblePatched;
+    }
+
+    @JsonIgnore
+    public boolean isCompetenceAimsPatched() {
+        return competenceAimsPatched;
+    }
+
+    @JsonIgnore
+    public boolean isCustomFieldsPatched() {
+        return customFieldsPatched;
+    }
+}
@@ -0,0 +1,137 @@
+package no.ndla.taxnomy.metadataapi.service.dto;
+
+import java.util.List;
+
+/**
+ * A query for entities, like {"query": {"and": [{"customField": {"key": "k", "value": "v"}}, {"not": {"visible":
+ * false}}]}}. Each condition has exactly one of its properties set.
+ */
+public class MetadataQueryDto {
+    public static class Condition {
+        private List<Condition> and;
+        private List<Condition> or;
+        private Condition not;
+        private CustomFieldCondition customField;
+        private String competenceAim;
+        private Boolean visible;
+
+        public List<Condition> getAnd() {
+            return and;
+        }
+
+        public void setAnd(List<Condition> and) {
+            this.and = and;
+        }
+
+        public List<Condition> getOr() {
+            return or;
+        }
+
+        public void setOr(List<Condition> or) {
+            this.or = or;
+        }
+
+        public Condition getNot() {
+            return not;
+        }
+
+        public void setNot(Condition not) {
+            this.not = not;
+        }
+
+        public CustomFieldCondition getCustomField() {
+            return customField;
+        }
+
+        public void setCustomField(CustomFieldCondition customField) {
+            this.customField = customField;
+        }
+
+        public String getCompetenceAim() {
+            return competenceAim;
+        }
+
+        public void setCompetenceAim(String competenceAim) {
+            this.competenceAim = competenceAim;
+        }
+
+        public Boolean getVisible() {
+            return visible;
+        }
+
+        public void setVisible(Boolean visible) {
+            this.visible = visible;
+        }
+    }
+
+    // Matches entities with the custom field, with the value if not null
+    public static class CustomFieldCondition {
+        private String key;
+        private String value;
+
+        public CustomFieldCondition(String key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        CustomFieldCondition() {
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public void setKey(String key) {
+            this.key = key;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+    }
+
+    private Condition query;
+
+    // Opaque token from the previous page
+    private String cursor;
+
+    private int pageSize = 100;
+
+    private boolean includeMetadata = true;
+
+    public Condition getQuery() {
+        return query;
+    }
+
+    public void setQuery(Condition query) {
+        this.query = query;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public boolean isIncludeMetadata() {
+        return includeMetadata;
+    }
+
+    public void setIncludeMetadata(boolean includeMetadata) {
+        this.includeMetadata = includeMetadata;
+    }
+}
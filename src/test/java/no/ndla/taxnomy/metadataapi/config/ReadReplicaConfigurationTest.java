@@ -0,0 +1,28 @@
+package no.ndla.taxnomy.metadataapi.config;
+
+import no.ndla.taxnomy.metadataapi.service.MetadataAggregatorService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The replica is the same database as the primary here, the routing itself is covered by ReadReplicaRoutingDataSourceTest
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = "metadata.datasource.replica.url=jdbc:h2:mem:test;DB_CLOSE_DELAY=-1")
+class ReadReplicaConfigurationTest {
+    @Test
+    void readReplicaDataSource(@Autowired DataSource dataSource,
+            @Autowired MetadataAggregatorService metadataAggregatorService) throws Exception {
+        assertTrue(dataSource instanceof LazyConnectionDataSourceProxy);
+        assertTrue(((LazyConnectionDataSourceProxy) dataSource)
+                .getTargetDataSource() instanceof ReadReplicaRoutingDataSource);
+
+        assertNotNull(metadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:7001"));
+    }
+}
@@ -0,0 +1,240 @@
+package no.ndla.taxnomy.metadataapi.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReadReplicaRoutingDataSourceTest {
+    private MutableClock clock;
+    private FakeReplicationLog replicationLog;
+    private ReadReplicaRoutingDataSource routingDataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readOnlyTransactionTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    private static class MutableClock extends Clock {
+        private Instant instant = Instant.parse("2026-10-18T12:00:00Z");
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+    }
+
+    private static class FakeReplicationLog implements ReadReplicaRoutingDataSource.ReplicationLog {
+        private int primaryPosition = 0;
+        private int replayedPosition = 0;
+        private int checks = 0;
+
+        @Override
+        public String getPrimaryPosition() {
+            return Integer.toString(primaryPosition);
+        }
+
+        @Override
+        public boolean hasReplayed(String position) {
+            checks++;
+            return replayedPosition >= Integer.parseInt(position);
+        }
+    }
+
+    private static DriverManagerDataSource createDatabase(String name) {
+        final var dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+
+        final var jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS database_name (name varchar(20))");
+        jdbcTemplate.execute("DELETE FROM database_name");
+        jdbcTemplate.update("INSERT INTO database_name (name) VALUES (?)", name);
+
+        return dataSource;
+    }
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock();
+        replicationLog = new FakeReplicationLog();
+        setUpDataSource(null);
+    }
+
+    private void setUpDataSource(ReadReplicaRoutingDataSource.ReplicationLog replicationLog) {
+        routingDataSource = new ReadReplicaRoutingDataSource(createDatabase("routing-primary"),
+                createDatabase("routing-replica"), replicationLog, Duration.ofSeconds(5), clock);
+        final var dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        readOnlyTransactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    private String readDatabaseName() {
+        return jdbcTemplate.queryForObject("SELECT name FROM database_name", String.class);
+    }
+
+    @Test
+    void routing() {
+        assertEquals("routing-replica", readOnlyTransactionTemplate.execute(status -> readDatabaseName()));
+        assertEquals("routing-primary", transactionTemplate.execute(status -> readDatabaseName()));
+
+        // Connections outside transactions, like schema migrations, go to the primary
+        assertEquals("routing-primary", readDatabaseName());
+    }
+
+    private void write() {
+        jdbcTemplate.update("UPDATE database_name SET name = name");
+    }
+
+    private String readAs(String client) {
+        routingDataSource.setCurrentClient(client);
+        try {
+            return readOnlyTransactionTemplate.execute(status -> readDatabaseName());
+        } finally {
+            routingDataSource.setCurrentClient(null);
+        }
+    }
+
+    private void writeAs(String client) {
+        routingDataSource.setCurrentClient(client);
+        try {
+            transactionTemplate.executeWithoutResult(status -> write());
+        } finally {
+            routingDataSource.setCurrentClient(null);
+        }
+    }
+
+    @Test
+    void clientReadsFromPrimaryWithinMaxLag() {
+        writeAs("client-a");
+
+        clock.advance(Duration.ofSeconds(4));
+        assertEquals("routing-primary", readAs("client-a"));
+
+        // Other clients and work not from a client are not held back by the write
+        assertEquals("routing-replica", readAs("client-b"));
+        assertEquals("routing-replica", readOnlyTransactionTemplate.execute(status -> readDatabaseName()));
+
+        clock.advance(Duration.ofSeconds(1));
+        assertEquals("routing-replica", readAs("client-a"));
+    }
+
+    @Test
+    void onlyCommittedWritesCount() {
+        routingDataSource.setCurrentClient("client-a");
+        try {
+            // Transactions that may write but do not
+            transactionTemplate.executeWithoutResult(status -> readDatabaseName());
+            assertEquals("routing-replica", readOnlyTransactionTemplate.execute(status -> readDatabaseName()));
+
+            transactionTemplate.executeWithoutResult(status -> {
+                write();
+                status.setRollbackOnly();
+            });
+            assertEquals("routing-replica", readOnlyTransactionTemplate.execute(status -> readDatabaseName()));
+
+            transactionTemplate.executeWithoutResult(status -> write());
+            assertEquals("routing-primary", readOnlyTransactionTemplate.execute(status -> readDatabaseName()));
+        } finally {
+            routingDataSource.setCurrentClient(null);
+        }
+    }
+
+    @Test
+    void clientReadsFromPrimaryUntilReplayed() {
+        setUpDataSource(replicationLog);
+
+        // Not measured yet
+        assertEquals("routing-primary", readAs("client-a"));
+
+        routingDataSource.checkLag();
+        assertEquals("routing-replica", readAs("client-a"));
+
+        clock.advance(Duration.ofMillis(10));
+        replicationLog.primaryPosition = 1;
+        writeAs("client-a");
+        assertEquals("routing-primary", readAs("client-a"));
+        assertEquals("routing-replica", readAs("client-b"));
+
+        // Taken after the write, not replayed yet
+        clock.advance(ReadReplicaRoutingDataSource.LAG_CHECK_INTERVAL);
+        routingDataSource.checkLag();
+        assertEquals("routing-primary", readAs("client-a"));
+
+        // Not waiting for the max lag
+        replicationLog.replayedPosition = 1;
+        clock.advance(ReadReplicaRoutingDataSource.LAG_CHECK_INTERVAL);
+        routingDataSource.checkLag();
+        assertEquals("routing-replica", readAs("client-a"));
+    }
+
+    @Test
+    void readsFromPrimaryWhileLagExceedsMaxLag() {
+        setUpDataSource(replicationLog);
+        routingDataSource.checkLag();
+
+        // Written by others, and replayed within the max lag
+        replicationLog.primaryPosition = 1;
+        clock.advance(ReadReplicaRoutingDataSource.LAG_CHECK_INTERVAL);
+        routingDataSource.checkLag();
+        clock.advance(Duration.ofSeconds(4));
+        routingDataSource.checkLag();
+        assertEquals("routing-replica", readAs("client-a"));
+
+        clock.advance(Duration.ofSeconds(1));
+        routingDataSource.checkLag();
+        assertEquals("routing-primary", readAs("client-a"));
+
+        // The replica has replayed some of the writes, but the last replayed was taken more than the max lag ago
+        replicationLog.primaryPosition = 2;
+        clock.advance(ReadReplicaRoutingDataSource.LAG_CHECK_INTERVAL);
+        routingDataSource.checkLag();
+        replicationLog.replayedPosition = 1;
+        clock.advance(Duration.ofSeconds(5));
+        routingDataSource.checkLag();
+        assertEquals("routing-primary", readAs("client-a"));
+
+        replicationLog.replayedPosition = 2;
+        clock.advance(ReadReplicaRoutingDataSource.LAG_CHECK_INTERVAL);
+        routingDataSource.checkLag();
+        assertEquals("routing-replica", readAs("client-a"));
+    }
+
+    @Test
+    void routingDoesNotCheckLag() {
+        setUpDataSource(replicationLog);
+        routingDataSource.checkLag();
+        final var checks = replicationLog.checks;
+
+        clock.advance(Duration.ofMillis(10));
+        replicationLog.primaryPosition = 1;
+        writeAs("client-a");
+        assertEquals("routing-primary", readAs("client-a"));
+        assertEquals("routing-replica", readAs("client-b"));
+        assertEquals(checks, replicationLog.checks);
+    }
+}
@@ -0,0 +1,30 @@
+package no.ndla.taxnomy.metadataapi.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualThreadConfigurationTest {
+    private static final boolean VIRTUAL_THREADS_AVAILABLE = Runtime.version().feature() >= 21;
+
+    @Test
+    void newVirtualThreadPerTaskExecutor() throws Exception {
+        if (!VIRTUAL_THREADS_AVAILABLE) {
+            // Fails on startup instead of silently running on platform threads
+            assertThrows(IllegalStateException.class, VirtualThreadConfiguration::newVirtualThreadPerTaskExecutor);
+            return;
+        }
+
+        final var executor = VirtualThreadConfiguration.newVirtualThreadPerTaskExecutor();
+        try {
+            final var thread = CompletableFuture.supplyAsync(Thread::currentThread, executor).get();
+
+            assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(thread));
+            assertTrue(thread.getName().startsWith("virtual-"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
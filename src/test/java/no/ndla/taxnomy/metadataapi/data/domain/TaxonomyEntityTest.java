@@ -44,6 +44,8 @@ class TaxonomyEntityTest {
         final var competenceAim1 = mock(CompetenceAim.class);
         final var competenceAim2 = mock(CompetenceAim.class);
 
+        when(competenceAim1.isTaxonomyEntitiesLoaded()).thenReturn(true);
+        when(competenceAim2.isTaxonomyEntitiesLoaded()).thenReturn(true);
         when(competenceAim1.containsTaxonomyEntity(taxonomyEntity)).thenReturn(false);
         when(competenceAim2.containsTaxonomyEntity(taxonomyEntity)).thenReturn(false);
 
@@ -82,6 +84,22 @@ class TaxonomyEntityTest {
         assertEquals(0, taxonomyEntity.getCompetenceAims().size());
     }
 
+    @Test
+    void addAndRemoveCompetenceAimWithoutLoadedTaxonomyEntities() {
+        final var competenceAim = mock(CompetenceAim.class);
+        when(competenceAim.isTaxonomyEntitiesLoaded()).thenReturn(false);
+
+        taxonomyEntity.addCompetenceAim(competenceAim);
+        assertTrue(taxonomyEntity.getCompetenceAims().contains(competenceAim));
+
+        taxonomyEntity.removeCompetenceAim(competenceAim);
+        assertEquals(0, taxonomyEntity.getCompetenceAims().size());
+
+        verify(competenceAim, never()).containsTaxonomyEntity(any());
+        verify(competenceAim, never()).addTaxonomyEntity(any());
+        verify(competenceAim, never()).removeTaxonomyEntity(any());
+    }
+
     @Test
     void prePersist() {
         assertNull(taxonomyEntity.getId());
@@ -103,6 +121,8 @@ class TaxonomyEntityTest {
 
         reset(aim1, aim2);
 
+        when(aim1.isTaxonomyEntitiesLoaded()).thenReturn(true);
+        when(aim2.isTaxonomyEntitiesLoaded()).thenReturn(true);
         when(aim1.containsTaxonomyEntity(taxonomyEntity)).thenReturn(true);
         when(aim2.containsTaxonomyEntity(taxonomyEntity)).thenReturn(true);
 
@@ -138,4 +158,11 @@ class TaxonomyEntityTest {
         taxonomyEntity.setVisible(true);
         assertTrue((boolean) getField(taxonomyEntity, "visible"));
     }
+
+    @Test
+    void setAndGetRevision() {
+        assertEquals(0, taxonomyEntity.getRevision());
+        taxonomyEntity.setRevision(2);
+        assertEquals(2, taxonomyEntity.getRevision());
+    }
 }
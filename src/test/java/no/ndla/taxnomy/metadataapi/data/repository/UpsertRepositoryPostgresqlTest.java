@@ -0,0 +1,142 @@
+package no.ndla.taxnomy.metadataapi.data.repository;
+
+import no.ndla.taxnomy.metadataapi.data.domain.MetadataChange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The PostgreSQL statements are not run against H2, this runs them against the database given by
+// METADATA_TEST_POSTGRESQL_URL, for example jdbc:postgresql://localhost:5432/metadata_test. The schema is created there
+// by Liquibase, the rows created are deleted after each test.
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@EnabledIfEnvironmentVariable(named = "METADATA_TEST_POSTGRESQL_URL", matches = ".+")
+class UpsertRepositoryPostgresqlTest {
+    @Autowired
+    private UpsertRepository upsertRepository;
+
+    @Autowired
+    private TaxonomyEntityRepository taxonomyEntityRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @DynamicPropertySource
+    static void postgresqlProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> System.getenv("METADATA_TEST_POSTGRESQL_URL"));
+        registry.add("spring.datasource.username", () -> System.getenv("METADATA_TEST_POSTGRESQL_USERNAME"));
+        registry.add("spring.datasource.password", () -> System.getenv("METADATA_TEST_POSTGRESQL_PASSWORD"));
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+    }
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM taxonomy_entity WHERE public_id LIKE 'urn:test:pg%'");
+        jdbcTemplate.update("DELETE FROM competence_aim WHERE code LIKE 'PG-%'");
+        jdbcTemplate.update("DELETE FROM custom_field WHERE key LIKE 'pg-%'");
+        jdbcTemplate.update("DELETE FROM metadata_change WHERE public_id LIKE 'urn:test:pg%'");
+    }
+
+    private TransactionTemplate transactionTemplate() {
+        return new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    void upsertTaxonomyEntity() {
+        final var created = transactionTemplate()
+                .execute(status -> upsertRepository.upsertTaxonomyEntity("urn:test:pg1"));
+        assertNotNull(created.getId());
+        assertTrue(created.isInserted());
+
+        final var existing = transactionTemplate()
+                .execute(status -> upsertRepository.upsertTaxonomyEntity("urn:test:pg1"));
+        assertEquals(created.getId(), existing.getId());
+        assertFalse(existing.isInserted());
+    }
+
+    @Test
+    void existingTaxonomyEntityIsNotWritten() {
+        transactionTemplate().execute(status -> upsertRepository.upsertTaxonomyEntity("urn:test:pg6"));
+        final var rowVersion = jdbcTemplate.queryForObject(
+                "SELECT CAST(xmin AS text) FROM taxonomy_entity WHERE public_id = 'urn:test:pg6'", String.class);
+
+        transactionTemplate().execute(status -> upsertRepository.upsertTaxonomyEntity("urn:test:pg6"));
+        assertEquals(rowVersion, jdbcTemplate.queryForObject(
+                "SELECT CAST(xmin AS text) FROM taxonomy_entity WHERE public_id = 'urn:test:pg6'", String.class));
+    }
+
+    @Test
+    void insertMissingTaxonomyEntities() {
+        final var id = transactionTemplate()
+                .execute(status -> upsertRepository.upsertTaxonomyEntity("urn:test:pg2").getId());
+
+        assertEquals(Set.of("urn:test:pg3"), transactionTemplate().execute(
+                status -> upsertRepository.insertMissingTaxonomyEntities(List.of("urn:test:pg2", "urn:test:pg3"))));
+
+        assertEquals(id, taxonomyEntityRepository.findFirstByPublicId("urn:test:pg2").orElseThrow().getId());
+        assertTrue(taxonomyEntityRepository.findFirstByPublicId("urn:test:pg3").isPresent());
+    }
+
+    @Test
+    void lockTaxonomyEntities() {
+        final var ids = transactionTemplate()
+                .execute(status -> Set.of(upsertRepository.upsertTaxonomyEntity("urn:test:pg4").getId(),
+                        upsertRepository.upsertTaxonomyEntity("urn:test:pg5").getId()));
+
+        assertEquals(2, transactionTemplate().execute(status -> taxonomyEntityRepository.lockAllByIdIn(ids)).size());
+    }
+
+    @Test
+    void upsertCompetenceAim() {
+        final var id = transactionTemplate().execute(status -> upsertRepository.upsertCompetenceAim("PG-1"));
+        assertNotNull(id);
+        assertEquals(id, transactionTemplate().execute(status -> upsertRepository.upsertCompetenceAim("PG-1")));
+    }
+
+    @Test
+    void insertMissingCompetenceAims() {
+        transactionTemplate().execute(status -> upsertRepository.upsertCompetenceAim("PG-2"));
+
+        final var created = transactionTemplate()
+                .execute(status -> upsertRepository.insertMissingCompetenceAims(List.of("PG-2", "PG-3", "PG-3")));
+        assertEquals(Set.of("PG-3"), created.keySet());
+    }
+
+    @Test
+    void upsertCustomField() {
+        final var id = transactionTemplate().execute(status -> upsertRepository.upsertCustomField("pg-field"));
+        assertNotNull(id);
+        assertEquals(id, transactionTemplate().execute(status -> upsertRepository.upsertCustomField("pg-field")));
+    }
+
+    @Test
+    void upsertMetadataChanges() {
+        transactionTemplate().executeWithoutResult(status -> upsertRepository
+                .upsertMetadataChanges(List.of(new MetadataChange(1_000_001, "urn:test:pg6", false))));
+        transactionTemplate().executeWithoutResult(status -> upsertRepository
+                .upsertMetadataChanges(List.of(new MetadataChange(1_000_002, "urn:test:pg6", true))));
+
+        final var changes = jdbcTemplate
+                .queryForList("SELECT seq, deleted FROM metadata_change WHERE public_id = 'urn:test:pg6'");
+        assertEquals(1, changes.size());
+        assertEquals(1_000_002L, ((Number) changes.get(0).get("seq")).longValue());
+        assertEquals(true, changes.get(0).get("deleted"));
+    }
+}
@@ -0,0 +1,231 @@
+package no.ndla.taxnomy.metadataapi.rest;
+
+import no.ndla.taxnomy.metadataapi.data.domain.MetadataChange;
+import no.ndla.taxnomy.metadataapi.service.ChangeFeedReader;
+import no.ndla.taxnomy.metadataapi.service.ChangeFeedService;
+import no.ndla.taxnomy.metadataapi.service.MetadataAggregatorService;
+import no.ndla.taxnomy.metadataapi.service.MetadataChangeEvent;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataChangeEventDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class MetadataChangeStreamTest {
+    private ChangeFeedService changeFeedService;
+    private ChangeFeedReader changeFeedReader;
+    private MetadataAggregatorService metadataAggregatorService;
+    private List<Runnable> pendingTasks;
+    private MetadataChangeStream metadataChangeStream;
+
+    // Keeps the events sent instead of writing them to a response
+    private static class RecordingSseEmitter extends SseEmitter {
+        private final List<String> ids = new ArrayList<>();
+        private final List<MetadataChangeEventDto> events = new ArrayList<>();
+        private boolean completed = false;
+        Throwable error;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            for (final var dataWithMediaType : builder.build()) {
+                final var data = dataWithMediaType.getData();
+                if (data instanceof MetadataChangeEventDto) {
+                    events.add((MetadataChangeEventDto) data);
+                } else if (data.toString().startsWith("id:")) {
+                    ids.add(data.toString().substring(3).split("\n")[0]);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed = true;
+        }
+
+        @Override
+        public synchronized void completeWithError(Throwable ex) {
+            error = ex;
+        }
+
+        private List<String> publicIds() {
+            return events.stream().map(MetadataChangeEventDto::getPublicId).collect(Collectors.toList());
+        }
+    }
+
+    // Blocks in the first send until interrupted, like a client that stopped reading
+    private static class StalledSseEmitter extends RecordingSseEmitter {
+        private final CountDownLatch sending = new CountDownLatch(1);
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            sending.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        changeFeedService = mock(ChangeFeedService.class);
+        changeFeedReader = mock(ChangeFeedReader.class);
+        metadataAggregatorService = mock(MetadataAggregatorService.class);
+        pendingTasks = new ArrayList<>();
+
+        final Executor executor = pendingTasks::add;
+        metadataChangeStream = new MetadataChangeStream(changeFeedService, changeFeedReader, metadataAggregatorService,
+                executor, 2, Duration.ofMinutes(1), Duration.ofMinutes(1));
+
+        when(metadataAggregatorService.getMetadataForTaxonomyEntities(anyCollection())).thenAnswer(invocationOnMock -> {
+            @SuppressWarnings("unchecked")
+            final var publicIds = (Collection<String>) invocationOnMock.getArgument(0, Collection.class);
+
+            return publicIds.stream().map(MetadataDto::new).collect(Collectors.toList());
+        });
+    }
+
+    private void runPendingTasks() {
+        while (!pendingTasks.isEmpty()) {
+            pendingTasks.remove(0).run();
+        }
+    }
+
+    private static MetadataChange change(long seq, String publicId, boolean deleted) {
+        final var change = mock(MetadataChange.class);
+        when(change.getSeq()).thenReturn(seq);
+        when(change.getPublicId()).thenReturn(publicId);
+        when(change.isDeleted()).thenReturn(deleted);
+
+        return change;
+    }
+
+    @Test
+    void sendsChanges() {
+        final var emitter = new RecordingSseEmitter();
+        metadataChangeStream.subscribe(emitter, null, false);
+        assertTrue(pendingTasks.isEmpty());
+
+        metadataChangeStream.onChanges(List.of(change(1, "urn:test:1", false), change(2, "urn:test:2", true)));
+        runPendingTasks();
+
+        assertEquals(List.of("urn:test:1", "urn:test:2"), emitter.publicIds());
+        assertEquals(List.of("changed", "deleted"),
+                emitter.events.stream().map(MetadataChangeEventDto::getType).collect(Collectors.toList()));
+        assertEquals(List.of(MetadataController.encodeChangeCursor(1), MetadataController.encodeChangeCursor(2)),
+                emitter.ids);
+        assertNull(emitter.events.get(0).getMetadata());
+        verifyNoInteractions(metadataAggregatorService);
+    }
+
+    @Test
+    void sendsMetadata() {
+        final var emitter = new RecordingSseEmitter();
+        metadataChangeStream.subscribe(emitter, null, true);
+
+        metadataChangeStream.onChanges(List.of(change(1, "urn:test:1", false), change(2, "urn:test:2", true)));
+        runPendingTasks();
+
+        assertEquals("urn:test:1", emitter.events.get(0).getMetadata().getPublicId());
+        assertNull(emitter.events.get(1).getMetadata());
+    }
+
+    @Test
+    void resumesFromSeq() {
+        when(changeFeedService.getChanges(anyLong(), anyInt())).thenReturn(List.of());
+        final var changes = List.of(change(6, "urn:test:1", false), change(8, "urn:test:2", true));
+        when(changeFeedService.getChanges(5, MetadataChangeStream.REPLAY_PAGE_SIZE)).thenReturn(changes);
+
+        final var emitter = new RecordingSseEmitter();
+        metadataChangeStream.subscribe(emitter, 5L, false);
+
+        // Read while the replay is pending, sent after it unless already replayed
+        metadataChangeStream.onChanges(List.of(change(8, "urn:test:2", true), change(9, "urn:test:3", false)));
+        runPendingTasks();
+
+        assertEquals(List.of("urn:test:1", "urn:test:2", "urn:test:3"), emitter.publicIds());
+    }
+
+    @Test
+    void readsChangeFeedOnLocalCommit() {
+        // Nothing to read for without subscribers
+        metadataChangeStream.onChange(new MetadataChangeEvent(1, "urn:test:1", false));
+        verifyNoInteractions(changeFeedReader);
+
+        final var emitter = new RecordingSseEmitter();
+        metadataChangeStream.subscribe(emitter, null, false);
+
+        // Sent when read from the change feed, in order with the changes of other instances
+        metadataChangeStream.onChange(new MetadataChangeEvent(3, "urn:test:3", false));
+        verify(changeFeedReader).requestPoll();
+        runPendingTasks();
+        assertTrue(emitter.events.isEmpty());
+
+        metadataChangeStream.onChanges(List.of(change(2, "urn:test:2", false), change(3, "urn:test:3", false)));
+        runPendingTasks();
+        assertEquals(List.of("urn:test:2", "urn:test:3"), emitter.publicIds());
+    }
+
+    @Test
+    void disconnectsSlowSubscribers() {
+        final var slow = new RecordingSseEmitter();
+        metadataChangeStream.subscribe(slow, null, false);
+        assertEquals(1, metadataChangeStream.getSubscriberCount());
+
+        metadataChangeStream.onChanges(List.of(change(1, "urn:test:1", false), change(2, "urn:test:2", false),
+                change(3, "urn:test:3", false)));
+
+        assertTrue(slow.completed);
+        assertEquals(0, metadataChangeStream.getSubscriberCount());
+    }
+
+    @Test
+    void disconnectsStalledSubscribers() throws Exception {
+        final var executor = Executors.newSingleThreadExecutor();
+        final var metadataChangeStream = new MetadataChangeStream(changeFeedService, changeFeedReader,
+                metadataAggregatorService, executor, 2, Duration.ofMinutes(1), Duration.ofMillis(500));
+
+        final var stalled = new StalledSseEmitter();
+        metadataChangeStream.subscribe(stalled, null, false);
+        metadataChangeStream.onChanges(List.of(change(1, "urn:test:1", false)));
+        assertTrue(stalled.sending.await(5, TimeUnit.SECONDS));
+
+        // Waits for the only thread, held by the stalled subscriber
+        final var healthy = new RecordingSseEmitter();
+        metadataChangeStream.subscribe(healthy, null, false);
+        metadataChangeStream.onChanges(List.of(change(2, "urn:test:2", false)));
+
+        // Not stalled for long enough yet
+        metadataChangeStream.checkStalledSends();
+        assertEquals(2, metadataChangeStream.getSubscriberCount());
+
+        Thread.sleep(600);
+        metadataChangeStream.checkStalledSends();
+        assertEquals(1, metadataChangeStream.getSubscriberCount());
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertNotNull(stalled.error);
+        assertEquals(List.of("urn:test:2"), healthy.publicIds());
+        assertNull(healthy.error);
+    }
+}
@@ -0,0 +1,70 @@
+package no.ndla.taxnomy.metadataapi.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+class MetadataContentNegotiationTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    private MetadataDto getMetadata(String accept, MediaType expectedContentType, ObjectMapper objectMapper)
+            throws Exception {
+        final var response = mockMvc
+                .perform(get("/v1/taxonomy_entities/urn:test:9001").header(HttpHeaders.ACCEPT, accept))
+                .andExpect(status().isOk()).andReturn().getResponse();
+
+        assertEquals(expectedContentType, MediaType.parseMediaType(response.getContentType()));
+
+        return objectMapper.readValue(response.getContentAsByteArray(), MetadataDto.class);
+    }
+
+    @Test
+    void oneETagPerResponse() throws Exception {
+        for (final var path : List.of("/v1/taxonomy_entities/urn:test:9001",
+                "/v1/taxonomy_entities?publicIds=urn:test:9001,urn:test:9002")) {
+            final var ok = mockMvc.perform(get(path)).andExpect(status().isOk()).andReturn().getResponse();
+            assertEquals(1, ok.getHeaders(HttpHeaders.ETAG).size());
+            final var eTag = ok.getHeader(HttpHeaders.ETAG);
+
+            final var notModified = mockMvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                    .andExpect(status().isNotModified()).andReturn().getResponse();
+            assertEquals(List.of(eTag), notModified.getHeaders(HttpHeaders.ETAG));
+
+            // Labelled with the version of the body returned, not of the version compared
+            final var changed = mockMvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, "\"other\""))
+                    .andExpect(status().isOk()).andReturn().getResponse();
+            assertEquals(List.of(eTag), changed.getHeaders(HttpHeaders.ETAG));
+        }
+    }
+
+    @Test
+    void formats() throws Exception {
+        assertEquals("urn:test:9001", getMetadata("*/*", MediaType.APPLICATION_JSON, new ObjectMapper()).getPublicId());
+        assertEquals("urn:test:9001",
+                getMetadata("application/cbor", MediaType.APPLICATION_CBOR, new ObjectMapper(new CBORFactory()))
+                        .getPublicId());
+        assertEquals("urn:test:9001",
+                getMetadata("application/x-jackson-smile", MediaType.parseMediaType("application/x-jackson-smile"),
+                        new ObjectMapper(new SmileFactory())).getPublicId());
+    }
+}
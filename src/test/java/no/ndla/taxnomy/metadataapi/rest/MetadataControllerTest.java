@@ -1,20 +1,47 @@
 package no.ndla.taxnomy.metadataapi.rest;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import no.ndla.taxnomy.metadataapi.data.domain.MetadataChange;
 import no.ndla.taxnomy.metadataapi.data.domain.TaxonomyEntity;
 import no.ndla.taxnomy.metadataapi.rest.exception.InvalidRequestException;
+import no.ndla.taxnomy.metadataapi.service.ChangeFeedService;
+import no.ndla.taxnomy.metadataapi.service.CompetenceAimService;
 import no.ndla.taxnomy.metadataapi.service.CustomFieldService;
+import no.ndla.taxnomy.metadataapi.service.MetadataQueryService;
 import no.ndla.taxnomy.metadataapi.service.MetadataAggregatorService;
+import no.ndla.taxnomy.metadataapi.service.MetadataAggregatorServiceImpl;
+import no.ndla.taxnomy.metadataapi.service.MetadataFields;
+import no.ndla.taxnomy.metadataapi.service.PublicIdValidator;
 import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataFacetQueryDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataFacetsDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataPatchDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataQueryDto;
 import no.ndla.taxnomy.metadataapi.service.exception.InvalidDataException;
 import no.ndla.taxnomy.metadataapi.service.exception.InvalidPublicIdException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.ObjectError;
-
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collector;
@@ -28,14 +55,53 @@ import static org.mockito.Mockito.*;
 
 class MetadataControllerTest {
     private MetadataAggregatorService metadataAggregatorService;
+    private MetadataAggregatorServiceImpl uncachedMetadataAggregatorService;
     private CustomFieldService customFieldService;
+    private CompetenceAimService competenceAimService;
+    private MetadataQueryService metadataQueryService;
+    private PublicIdValidator publicIdValidator;
+    private ChangeFeedService changeFeedService;
+    private MetadataChangeStream metadataChangeStream;
     private MetadataController metadataController;
 
     @BeforeEach
     void setUp() {
         metadataAggregatorService = mock(MetadataAggregatorService.class);
+        uncachedMetadataAggregatorService = mock(MetadataAggregatorServiceImpl.class);
         customFieldService = mock(CustomFieldService.class);
-        metadataController = new MetadataController(metadataAggregatorService, customFieldService);
+        publicIdValidator = mock(PublicIdValidator.class);
+        changeFeedService = mock(ChangeFeedService.class);
+        metadataChangeStream = mock(MetadataChangeStream.class);
+        competenceAimService = mock(CompetenceAimService.class);
+        metadataQueryService = mock(MetadataQueryService.class);
+        metadataController = new MetadataController(metadataAggregatorService, uncachedMetadataAggregatorService,
+                customFieldService, competenceAimService, metadataQueryService, publicIdValidator, changeFeedService,
+                metadataChangeStream, new ObjectMapper());
+    }
+
+    private static InputStream lookupBody(List<String> publicIds) throws IOException {
+        return new ByteArrayInputStream(new ObjectMapper().writeValueAsBytes(publicIds));
+    }
+
+    private static WebRequest webRequest() {
+        return new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse());
+    }
+
+    private static WebRequest webRequestAccepting(String accept, String ifNoneMatch) {
+        final var request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.ACCEPT, accept);
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+
+        return new ServletWebRequest(request, new MockHttpServletResponse());
+    }
+
+    private static WebRequest webRequest(String ifNoneMatch) {
+        final var request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+
+        return new ServletWebRequest(request, new MockHttpServletResponse());
     }
 
     @Test
@@ -55,7 +121,7 @@ class MetadataControllerTest {
             when(metadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:1")).thenReturn(metadataDtoToReturn);
         }
 
-        final var returned = metadataController.get("urn:test:1");
+        final var returned = metadataController.get("urn:test:1", null, webRequest()).getBody();
         assertEquals("urn:test:1", returned.getPublicId());
 
         final var returnedAims = returned.getCompetenceAims();
@@ -91,7 +157,8 @@ class MetadataControllerTest {
             final var requestObject = new MetadataDto("urn:test:1");
             requestObject.setCompetenceAims(Set.of(aim1, aim2));
 
-            final var returnedMetadataDto = metadataController.put("urn:test:1", requestObject, bindingResult);
+            final var returnedMetadataDto = metadataController.put("urn:test:1", requestObject, bindingResult, null)
+                    .getBody();
 
             assertEquals("urn:test:1", returnedMetadataDto.getPublicId());
 
@@ -111,7 +178,7 @@ class MetadataControllerTest {
             final var requestObject = new MetadataDto("urn:test:1");
 
             try {
-                metadataController.put("urn:test:1", requestObject, bindingResult);
+                metadataController.put("urn:test:1", requestObject, bindingResult, null);
                 fail("Expected InvalidRequestException");
             } catch (InvalidRequestException ignored) {
 
@@ -119,6 +186,70 @@ class MetadataControllerTest {
         }
     }
 
+    @Test
+    void putWithMinimalReturn() throws InvalidPublicIdException, InvalidDataException {
+        final var requestObject = new MetadataDto("urn:test:1");
+
+        {
+            final var response = metadataController.put("urn:test:1", requestObject, mock(BindingResult.class),
+                    "return=minimal");
+
+            assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
+            assertNull(response.getBody());
+            assertEquals("return=minimal", response.getHeaders().getFirst("Preference-Applied"));
+            verify(metadataAggregatorService).writeMetadataForTaxonomyEntity("urn:test:1", requestObject);
+        }
+
+        {
+            final var response = metadataController.putBulk(new MetadataDto[] { requestObject },
+                    mock(BindingResult.class), "respond-async, return=minimal");
+
+            assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
+            verify(metadataAggregatorService).writeMetadataForTaxonomyEntities(List.of(requestObject));
+        }
+
+        verify(metadataAggregatorService, never()).updateMetadataForTaxonomyEntity(any(), any());
+        verify(metadataAggregatorService, never()).updateMetadataForTaxonomyEntities(any());
+
+        assertTrue(MetadataController.prefersMinimalReturn("Return=Minimal; foo=bar"));
+        assertFalse(MetadataController.prefersMinimalReturn("return=representation"));
+        assertFalse(MetadataController.prefersMinimalReturn(null));
+    }
+
+    @Test
+    void patch() throws InvalidPublicIdException, InvalidDataException {
+        final var patchDto = new MetadataPatchDto();
+        patchDto.setVisible(false);
+
+        {
+            final var metadataDto = new MetadataDto("urn:test:1");
+            when(metadataAggregatorService.patchMetadataForTaxonomyEntity("urn:test:1", patchDto))
+                    .thenReturn(metadataDto);
+            final var bindingResult = mock(BindingResult.class);
+
+            assertSame(metadataDto, metadataController.patch("urn:test:1", patchDto, bindingResult));
+        }
+
+        {
+            final var bindingResult = mock(BindingResult.class);
+            when(bindingResult.hasErrors()).thenReturn(true);
+            when(bindingResult.getErrorCount()).thenReturn(1);
+            when(bindingResult.getAllErrors()).thenReturn(List.of(new ObjectError("name", "message")));
+
+            assertThrows(InvalidRequestException.class,
+                    () -> metadataController.patch("urn:test:1", patchDto, bindingResult));
+        }
+
+        {
+            when(metadataAggregatorService.patchMetadataForTaxonomyEntities(List.of(patchDto)))
+                    .thenThrow(new InvalidPublicIdException("Missing publicId on object index 1"));
+            final var bindingResult = mock(BindingResult.class);
+
+            assertThrows(InvalidRequestException.class,
+                    () -> metadataController.patchBulk(new MetadataPatchDto[] { patchDto }, bindingResult));
+        }
+    }
+
     @Test
     void delete() throws InvalidPublicIdException {
         doThrow(new InvalidPublicIdException("")).when(metadataAggregatorService)
@@ -154,7 +285,8 @@ class MetadataControllerTest {
                         return toReturn;
                     });
 
-            final var returned = metadataController.getMultiple("urn:test:1,urn:test:2,urn:test:3", null, null);
+            final var returned = metadataController
+                    .getMultiple("urn:test:1,urn:test:2,urn:test:3", null, null, null, webRequest()).getBody();
             assertSame(toReturn, returned);
 
             reset(metadataAggregatorService);
@@ -172,7 +304,7 @@ class MetadataControllerTest {
             }
 
             try {
-                metadataController.getMultiple(idListBuilder.toString(), null, null);
+                metadataController.getMultiple(idListBuilder.toString(), null, null, null, webRequest()).getBody();
                 fail("Expected InvalidRequestException");
             } catch (InvalidRequestException ignored) {
 
@@ -181,7 +313,7 @@ class MetadataControllerTest {
 
         {
             try {
-                final var returned = metadataController.getMultiple("", null, null);
+                final var returned = metadataController.getMultiple("", null, null, null, webRequest()).getBody();
                 assertEquals(0, returned.size());
             } catch (InvalidRequestException ignored) {
 
@@ -193,7 +325,7 @@ class MetadataControllerTest {
                     .thenThrow(new InvalidPublicIdException(""));
 
             try {
-                metadataController.getMultiple("urn:test:1", null, null);
+                metadataController.getMultiple("urn:test:1", null, null, null, webRequest()).getBody();
                 fail("Expected InvalidRequestException");
             } catch (InvalidRequestException exception) {
                 assertTrue(exception.getCause() instanceof InvalidPublicIdException);
@@ -205,7 +337,7 @@ class MetadataControllerTest {
                     .thenThrow(new InvalidPublicIdException(""));
 
             try {
-                metadataController.getMultiple(null, null, null);
+                metadataController.getMultiple(null, null, null, null, webRequest()).getBody();
                 fail("Expected InvalidRequestException");
             } catch (InvalidRequestException exception) {
             } catch (NullPointerException exception) {
@@ -222,7 +354,7 @@ class MetadataControllerTest {
         when(customFieldService.getTaxonomyEntitiesByCustomFieldKeyValue("test", "value")).thenReturn(entityList);
         final var expectedList = mock(List.class);
         when(metadataAggregatorService.getMetadataForTaxonomyEntities(Set.of("urn:entity:1"))).thenReturn(expectedList);
-        final var returnedList = metadataController.getMultiple(null, "test", "value");
+        final var returnedList = metadataController.getMultiple(null, "test", "value", null, webRequest()).getBody();
         assertEquals(expectedList, returnedList);
     }
 
@@ -252,7 +384,8 @@ class MetadataControllerTest {
         {
             // This should by trickery above trigger a logged warning of: ... Query for key/value
             // had more than 100 results ...
-            final var returnedList = metadataController.getMultiple(null, "test", "value");
+            final var returnedList = metadataController.getMultiple(null, "test", "value", null, webRequest())
+                    .getBody();
             assertEquals(expectedList, returnedList);
         }
         {
@@ -260,7 +393,8 @@ class MetadataControllerTest {
             // key/value had more than 100 results ...
             // HOWEVER .. the logged message is rate limited, so unless time skew, the message
             // should not appear this time.
-            final var returnedList = metadataController.getMultiple(null, "test", "value");
+            final var returnedList = metadataController.getMultiple(null, "test", "value", null, webRequest())
+                    .getBody();
             assertEquals(expectedList, returnedList);
         }
     }
@@ -290,8 +424,10 @@ class MetadataControllerTest {
                         }).collect(Collectors.toList());
                     });
 
-            final var returnedObjects = metadataController.putBulk(
-                    List.of(entity1ToUpdate, entity2ToUpdate).toArray(new MetadataDto[0]), mock(BindingResult.class));
+            final var returnedObjects = metadataController
+                    .putBulk(List.of(entity1ToUpdate, entity2ToUpdate).toArray(new MetadataDto[0]),
+                            mock(BindingResult.class), null)
+                    .getBody();
 
             assertEquals(2, returnedObjects.size());
             assertSame(entity1ToReturn, returnedObjects.get(0));
@@ -306,11 +442,465 @@ class MetadataControllerTest {
 
             try {
                 metadataController.putBulk(List.of(entityToUpdate).toArray(new MetadataDto[0]),
-                        mock(BindingResult.class));
+                        mock(BindingResult.class), null);
                 fail("Expected InvalidRequestException");
             } catch (InvalidRequestException e) {
                 assertTrue(e.getCause() instanceof InvalidPublicIdException);
             }
         }
     }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void getPageByKeyValue() throws InvalidPublicIdException {
+        when(metadataAggregatorService.getMetadataForTaxonomyEntities(any(Collection.class)))
+                .thenAnswer(invocationOnMock -> {
+                    final var requested = (Collection<String>) invocationOnMock.getArgument(0, Collection.class);
+
+                    return requested.stream().map(MetadataDto::new).collect(Collectors.toList());
+                });
+        when(customFieldService.getTaxonomyEntityPublicIdsByCustomFieldKeyValue("test", "value", null, 3))
+                .thenReturn(List.of("urn:entity:1", "urn:entity:2", "urn:entity:3"));
+        when(customFieldService.getTaxonomyEntityPublicIdsByCustomFieldKeyValue("test", "value", "urn:entity:2", 3))
+                .thenReturn(List.of("urn:entity:3"));
+
+        final var firstPage = metadataController.getPageByKeyValue("test", "value", null, 2);
+        assertEquals(List.of("urn:entity:1", "urn:entity:2"),
+                firstPage.getResults().stream().map(MetadataDto::getPublicId).collect(Collectors.toList()));
+        assertNotNull(firstPage.getNext());
+
+        final var secondPage = metadataController.getPageByKeyValue("test", "value", firstPage.getNext(), 2);
+        assertEquals(List.of("urn:entity:3"),
+                secondPage.getResults().stream().map(MetadataDto::getPublicId).collect(Collectors.toList()));
+        assertNull(secondPage.getNext());
+
+        assertThrows(InvalidRequestException.class,
+                () -> metadataController.getPageByKeyValue("test", "value", null, 0));
+        assertThrows(InvalidRequestException.class,
+                () -> metadataController.getPageByKeyValue("test", "value", null, 1001));
+        assertThrows(InvalidRequestException.class,
+                () -> metadataController.getPageByKeyValue("test", "value", "not a cursor", 10));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void getPageByCompetenceAim() throws InvalidPublicIdException {
+        when(metadataAggregatorService.getMetadataForTaxonomyEntities(any(Collection.class)))
+                .thenAnswer(invocationOnMock -> {
+                    final var requested = (Collection<String>) invocationOnMock.getArgument(0, Collection.class);
+
+                    return requested.stream().map(MetadataDto::new).collect(Collectors.toList());
+                });
+        when(competenceAimService.getTaxonomyEntityPublicIdsByCompetenceAim("KM1", false, null, 3))
+                .thenReturn(List.of("urn:entity:1", "urn:entity:2", "urn:entity:3"));
+        when(competenceAimService.getTaxonomyEntityPublicIdsByCompetenceAim("KM1", false, "urn:entity:2", 3))
+                .thenReturn(List.of("urn:entity:3"));
+        when(competenceAimService.getTaxonomyEntityPublicIdsByCompetenceAim("KM", true, null, 3))
+                .thenReturn(List.of("urn:entity:4"));
+
+        final var firstPage = metadataController.getPageByCompetenceAim("KM1", null, null, 2, true);
+        assertEquals(List.of("urn:entity:1", "urn:entity:2"),
+                firstPage.getResults().stream().map(MetadataDto::getPublicId).collect(Collectors.toList()));
+        assertNotNull(firstPage.getNext());
+
+        final var secondPage = metadataController.getPageByCompetenceAim("KM1", null, firstPage.getNext(), 2, false);
+        assertEquals(List.of("urn:entity:3"),
+                secondPage.getResults().stream().map(MetadataDto::getPublicId).collect(Collectors.toList()));
+        assertNull(secondPage.getNext());
+        verify(metadataAggregatorService, times(1)).getMetadataForTaxonomyEntities(any(Collection.class));
+
+        final var prefixPage = metadataController.getPageByCompetenceAim(null, "KM", null, 2, true);
+        assertEquals("urn:entity:4", prefixPage.getResults().get(0).getPublicId());
+
+        // Codes are stored in upper case
+        assertEquals(2, metadataController.getPageByCompetenceAim("km1", null, null, 2, false).getResults().size());
+        assertEquals("urn:entity:4", metadataController.getPageByCompetenceAim(null, "km", null, 2, false).getResults()
+                .get(0).getPublicId());
+
+        assertThrows(InvalidRequestException.class,
+                () -> metadataController.getPageByCompetenceAim(null, null, null, 10, true));
+        assertThrows(InvalidRequestException.class,
+                () -> metadataController.getPageByCompetenceAim("KM1", "KM", null, 10, true));
+        assertThrows(InvalidRequestException.class,
+                () -> metadataController.getPageByCompetenceAim(null, "", null, 10, true));
+        assertThrows(InvalidRequestException.class,
+                () -> metadataController.getPageByCompetenceAim("KM1", null, null, 0, true));
+    }
+
+    @Test
+    void query() throws InvalidPublicIdException, InvalidDataException {
+        final var condition = new MetadataQueryDto.Condition();
+        condition.setVisible(true);
+        final var queryDto = new MetadataQueryDto();
+        queryDto.setQuery(condition);
+        queryDto.setPageSize(2);
+        queryDto.setIncludeMetadata(false);
+
+        when(metadataQueryService.findTaxonomyEntityPublicIds(condition, null, 3))
+                .thenReturn(List.of("urn:entity:1", "urn:entity:2", "urn:entity:3"));
+        when(metadataQueryService.findTaxonomyEntityPublicIds(condition, "urn:entity:2", 3))
+                .thenReturn(List.of("urn:entity:3"));
+
+        final var firstPage = metadataController.query(queryDto);
+        assertEquals(List.of("urn:entity:1", "urn:entity:2"),
+                firstPage.getResults().stream().map(MetadataDto::getPublicId).collect(Collectors.toList()));
+        assertNotNull(firstPage.getNext());
+        verify(metadataAggregatorService, never()).getMetadataForTaxonomyEntities(any());
+
+        queryDto.setCursor(firstPage.getNext());
+        queryDto.setIncludeMetadata(true);
+        final var metadata = List.of(new MetadataDto("urn:entity:3"));
+        when(metadataAggregatorService.getMetadataForTaxonomyEntities(List.of("urn:entity:3"))).thenReturn(metadata);
+
+        final var secondPage = metadataController.query(queryDto);
+        assertSame(metadata, secondPage.getResults());
+        assertNull(secondPage.getNext());
+
+        when(metadataQueryService.findTaxonomyEntityPublicIds(isNull(), any(), anyInt()))
+                .thenThrow(new InvalidDataException("Empty condition in query"));
+        assertThrows(InvalidRequestException.class, () -> metadataController.query(new MetadataQueryDto()));
+
+        queryDto.setPageSize(1001);
+        assertThrows(InvalidRequestException.class, () -> metadataController.query(queryDto));
+    }
+
+    @Test
+    void facets() throws InvalidDataException {
+        final var facets = new MetadataFacetsDto(Map.of(), null);
+        when(metadataQueryService.getFacets(null, Set.of("key1", "key2"), true, 5)).thenReturn(facets);
+
+        final var facetQueryDto = new MetadataFacetQueryDto();
+        facetQueryDto.setCustomFields(List.of("key1", "key2", "key1"));
+        facetQueryDto.setCompetenceAims(true);
+        facetQueryDto.setLimit(5);
+        assertSame(facets, metadataController.facets(facetQueryDto));
+
+        facetQueryDto.setLimit(0);
+        assertThrows(InvalidRequestException.class, () -> metadataController.facets(facetQueryDto));
+
+        facetQueryDto.setLimit(5);
+        facetQueryDto.setCustomFields(Collections.nCopies(MetadataController.FACETS_MAX_CUSTOM_FIELDS + 1, "key"));
+        assertThrows(InvalidRequestException.class, () -> metadataController.facets(facetQueryDto));
+    }
+
+    @Test
+    void getWithETag() throws InvalidPublicIdException {
+        final var metadataDto = new MetadataDto("urn:test:1");
+        metadataDto.setVersion("v1");
+        when(metadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:1")).thenReturn(metadataDto);
+        when(metadataAggregatorService.getMetadataVersion("urn:test:1")).thenReturn("v1");
+
+        {
+            final var returned = metadataController.get("urn:test:1", null, webRequest());
+            assertEquals(HttpStatus.OK, returned.getStatusCode());
+            assertEquals("\"v1\"", returned.getHeaders().getETag());
+            assertSame(metadataDto, returned.getBody());
+            verify(metadataAggregatorService, never()).getMetadataVersion(any());
+        }
+
+        {
+            final var returned = metadataController.get("urn:test:1", null, webRequest("\"v1\""));
+            assertEquals(HttpStatus.NOT_MODIFIED, returned.getStatusCode());
+            assertNull(returned.getBody());
+            verify(metadataAggregatorService, times(1)).getMetadataForTaxonomyEntity("urn:test:1");
+        }
+
+        {
+            final var returned = metadataController.get("urn:test:1", null, webRequest("\"v0\""));
+            assertEquals(HttpStatus.OK, returned.getStatusCode());
+            assertSame(metadataDto, returned.getBody());
+        }
+    }
+
+    @Test
+    void getMultipleWithETag() throws InvalidPublicIdException {
+        final var metadataDto1 = new MetadataDto("urn:test:1");
+        metadataDto1.setVersion("v1");
+        final var metadataDto2 = new MetadataDto("urn:test:2");
+        metadataDto2.setVersion("v2");
+        when(metadataAggregatorService.getMetadataForTaxonomyEntities(Set.of("urn:test:1", "urn:test:2")))
+                .thenReturn(List.of(metadataDto1, metadataDto2));
+        when(metadataAggregatorService.getMetadataVersions(Set.of("urn:test:1", "urn:test:2")))
+                .thenReturn(Map.of("urn:test:1", "v1", "urn:test:2", "v2"));
+
+        final var returned = metadataController.getMultiple("urn:test:1,urn:test:2", null, null, null, webRequest());
+        final var eTag = returned.getHeaders().getETag();
+        assertNotNull(eTag);
+
+        final var notModified = metadataController.getMultiple("urn:test:2,urn:test:1", null, null, null,
+                webRequest(eTag));
+        assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+        verify(metadataAggregatorService, times(1)).getMetadataForTaxonomyEntities(any());
+
+        when(metadataAggregatorService.getMetadataVersions(Set.of("urn:test:1", "urn:test:2")))
+                .thenReturn(Map.of("urn:test:1", "v1", "urn:test:2", "v3"));
+        final var modified = metadataController.getMultiple("urn:test:1,urn:test:2", null, null, null,
+                webRequest(eTag));
+        assertEquals(HttpStatus.OK, modified.getStatusCode());
+        assertEquals(2, modified.getBody().size());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void revalidate() throws InvalidPublicIdException {
+        when(metadataAggregatorService.getMetadataVersions(any(Collection.class)))
+                .thenReturn(Map.of("urn:test:1", "v1", "urn:test:2", "v2", "urn:test:3", "v3"));
+        final var changed = new MetadataDto("urn:test:2");
+        when(metadataAggregatorService.getMetadataForTaxonomyEntities(Set.of("urn:test:2", "urn:test:3")))
+                .thenReturn(List.of(changed, new MetadataDto("urn:test:3")));
+
+        final var returned = metadataController
+                .revalidate(Map.of("urn:test:1", "v1", "urn:test:2", "v1", "urn:test:3", "v0"));
+        assertEquals(2, returned.size());
+        assertSame(changed, returned.get(0));
+
+        reset(metadataAggregatorService);
+        when(metadataAggregatorService.getMetadataVersions(any(Collection.class)))
+                .thenReturn(Map.of("urn:test:1", "v1"));
+        assertTrue(metadataController.revalidate(Map.of("urn:test:1", "v1")).isEmpty());
+        verify(metadataAggregatorService, never()).getMetadataForTaxonomyEntities(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void lookup() throws InvalidPublicIdException, IOException {
+        when(uncachedMetadataAggregatorService.getMetadataForTaxonomyEntities(any(Collection.class)))
+                .thenAnswer(invocationOnMock -> ((Collection<String>) invocationOnMock.getArgument(0, Collection.class))
+                        .stream().map(publicId -> {
+                            final var metadataDto = new MetadataDto(publicId);
+                            metadataDto.populateEmpty();
+                            return metadataDto;
+                        }).collect(Collectors.toList()));
+
+        final var publicIds = new ArrayList<String>();
+        for (var i = 0; i < MetadataController.LOOKUP_CHUNK_SIZE * 2 + 1; i++) {
+            publicIds.add("urn:test:" + i);
+
+            // Duplicates within a chunk are only returned once
+            if (i == 1) {
+                publicIds.add("urn:test:0");
+            }
+        }
+
+        final var response = metadataController.lookup(lookupBody(publicIds), null);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+
+        // Nothing is read before the response is written
+        verify(uncachedMetadataAggregatorService, never()).getMetadataForTaxonomyEntities(any());
+
+        final var outputStream = new ByteArrayOutputStream();
+        response.getBody().writeTo(outputStream);
+
+        final var returned = new ObjectMapper().readValue(outputStream.toByteArray(), MetadataDto[].class);
+        assertEquals(MetadataController.LOOKUP_CHUNK_SIZE * 2 + 1, returned.length);
+        assertEquals("urn:test:0", returned[0].getPublicId());
+        assertEquals("urn:test:" + MetadataController.LOOKUP_CHUNK_SIZE * 2,
+                returned[returned.length - 1].getPublicId());
+
+        verify(uncachedMetadataAggregatorService, times(3)).getMetadataForTaxonomyEntities(any());
+        verify(uncachedMetadataAggregatorService).getMetadataForTaxonomyEntities(List.of("urn:test:1000"));
+        // Read past the cache
+        verify(metadataAggregatorService, never()).getMetadataForTaxonomyEntities(any());
+    }
+
+    @Test
+    void lookupValidatesBeforeStreaming() throws InvalidPublicIdException, IOException {
+        doThrow(new InvalidPublicIdException("invalid")).when(publicIdValidator).validatePublicId("invalid");
+
+        assertThrows(InvalidRequestException.class,
+                () -> metadataController.lookup(lookupBody(List.of("urn:test:1", "invalid")), null));
+        verify(uncachedMetadataAggregatorService, never()).getMetadataForTaxonomyEntities(any());
+
+        final var withNull = new ArrayList<String>();
+        withNull.add("urn:test:1");
+        withNull.add(null);
+        final var withNullBody = lookupBody(withNull);
+        assertThrows(InvalidRequestException.class, () -> metadataController.lookup(withNullBody, null));
+
+        final var notAnArray = new ByteArrayInputStream(
+                "{\"publicId\": \"urn:test:1\"}".getBytes(StandardCharsets.UTF_8));
+        assertThrows(InvalidRequestException.class, () -> metadataController.lookup(notAnArray, null));
+
+        verify(uncachedMetadataAggregatorService, never()).getMetadataForTaxonomyEntities(any());
+        verify(metadataAggregatorService, never()).getMetadataForTaxonomyEntities(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void lookupAbortedByInvalidLaterChunk() throws InvalidPublicIdException, IOException {
+        doThrow(new InvalidPublicIdException("invalid")).when(publicIdValidator).validatePublicId("invalid");
+        when(uncachedMetadataAggregatorService.getMetadataForTaxonomyEntities(any(Collection.class)))
+                .thenAnswer(invocationOnMock -> ((Collection<String>) invocationOnMock.getArgument(0, Collection.class))
+                        .stream().map(MetadataDto::new).collect(Collectors.toList()));
+
+        final var publicIds = new ArrayList<String>();
+        for (var i = 0; i < MetadataController.LOOKUP_CHUNK_SIZE; i++) {
+            publicIds.add("urn:test:" + i);
+        }
+        publicIds.add("invalid");
+
+        final var response = metadataController.lookup(lookupBody(publicIds), null);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+
+        final var outputStream = new ByteArrayOutputStream();
+        assertThrows(InvalidRequestException.class, () -> response.getBody().writeTo(outputStream));
+
+        // The first chunk was written, but the array is not ended
+        verify(uncachedMetadataAggregatorService, times(1)).getMetadataForTaxonomyEntities(any());
+        assertThrows(IOException.class,
+                () -> new ObjectMapper().readValue(outputStream.toByteArray(), MetadataDto[].class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void lookupAbortedByTooMany() throws InvalidPublicIdException, IOException {
+        when(uncachedMetadataAggregatorService.getMetadataForTaxonomyEntities(any(Collection.class)))
+                .thenAnswer(invocationOnMock -> ((Collection<String>) invocationOnMock.getArgument(0, Collection.class))
+                        .stream().map(MetadataDto::new).collect(Collectors.toList()));
+
+        final var tooMany = new ArrayList<String>();
+        for (var i = 0; i <= MetadataController.LOOKUP_MAX_SIZE; i++) {
+            tooMany.add("urn:test:" + i);
+        }
+
+        final var response = metadataController.lookup(lookupBody(tooMany), null);
+        assertThrows(InvalidRequestException.class, () -> response.getBody().writeTo(new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void getETagPerFormat() throws InvalidPublicIdException {
+        final var metadataDto = new MetadataDto("urn:test:1");
+        metadataDto.setVersion("v1");
+        when(metadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:1")).thenReturn(metadataDto);
+        when(metadataAggregatorService.getMetadataVersion("urn:test:1")).thenReturn("v1");
+
+        final var json = metadataController.get("urn:test:1", null, webRequest());
+        assertEquals("\"v1\"", json.getHeaders().getETag());
+        assertEquals(List.of(HttpHeaders.ACCEPT), json.getHeaders().getVary());
+
+        final var cbor = metadataController.get("urn:test:1", null, webRequestAccepting("application/cbor", null));
+        assertEquals("\"v1-cbor\"", cbor.getHeaders().getETag());
+
+        // A cached JSON copy does not match the CBOR representation
+        assertEquals(HttpStatus.OK, metadataController
+                .get("urn:test:1", null, webRequestAccepting("application/cbor", "\"v1\"")).getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED, metadataController
+                .get("urn:test:1", null, webRequestAccepting("application/cbor", "\"v1-cbor\"")).getStatusCode());
+    }
+
+    @Test
+    void getETagOfReturnedVersion() throws InvalidPublicIdException {
+        // Changed between reading the version and reading the metadata
+        final var metadataDto = new MetadataDto("urn:test:1");
+        metadataDto.setVersion("v2");
+        when(metadataAggregatorService.getMetadataVersion("urn:test:1")).thenReturn("v1");
+        when(metadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:1")).thenReturn(metadataDto);
+
+        final var response = new MockHttpServletResponse();
+        final var request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"v0\"");
+
+        final var returned = metadataController.get("urn:test:1", null, new ServletWebRequest(request, response));
+        assertEquals(HttpStatus.OK, returned.getStatusCode());
+        assertEquals("\"v2\"", returned.getHeaders().getETag());
+        // Nothing written to the response besides the returned headers
+        assertNull(response.getHeader(HttpHeaders.ETAG));
+
+        assertEquals(HttpStatus.NOT_MODIFIED,
+                metadataController.get("urn:test:1", null, webRequest("W/\"v0\", \"v1\"")).getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED,
+                metadataController.get("urn:test:1", null, webRequest("*")).getStatusCode());
+    }
+
+    @Test
+    void lookupCbor() throws InvalidPublicIdException, IOException {
+        final var metadataDto = new MetadataDto("urn:test:1");
+        metadataDto.populateEmpty();
+        when(uncachedMetadataAggregatorService.getMetadataForTaxonomyEntities(List.of("urn:test:1")))
+                .thenReturn(List.of(metadataDto));
+
+        final var response = metadataController.lookup(lookupBody(List.of("urn:test:1")), "application/cbor");
+        assertEquals(MediaType.APPLICATION_CBOR, response.getHeaders().getContentType());
+
+        final var outputStream = new ByteArrayOutputStream();
+        response.getBody().writeTo(outputStream);
+
+        final var returned = new ObjectMapper(new CBORFactory()).readValue(outputStream.toByteArray(),
+                MetadataDto[].class);
+        assertEquals(1, returned.length);
+        assertEquals("urn:test:1", returned[0].getPublicId());
+    }
+
+    @Test
+    void getWithFields() throws Exception {
+        final var metadataDto = new MetadataDto("urn:test:1");
+        when(metadataAggregatorService.getMetadataForTaxonomyEntity(eq("urn:test:1"), any(MetadataFields.class)))
+                .thenReturn(metadataDto);
+        when(metadataAggregatorService.getMetadataForTaxonomyEntities(eq(Set.of("urn:test:1")),
+                any(MetadataFields.class))).thenReturn(List.of(metadataDto));
+
+        assertSame(metadataDto, metadataController.get("urn:test:1", "visible", webRequest()).getBody());
+        assertEquals(List.of(metadataDto),
+                metadataController.getMultiple("urn:test:1", null, null, "competenceAims", webRequest()).getBody());
+        verify(metadataAggregatorService, never()).getMetadataForTaxonomyEntity(any());
+
+        assertThrows(InvalidRequestException.class,
+                () -> metadataController.get("urn:test:1", "unknown", webRequest()));
+    }
+
+    private static MetadataChange change(long seq, String publicId, boolean deleted) {
+        final var change = mock(MetadataChange.class);
+        when(change.getSeq()).thenReturn(seq);
+        when(change.getPublicId()).thenReturn(publicId);
+        when(change.isDeleted()).thenReturn(deleted);
+
+        return change;
+    }
+
+    @Test
+    void getChanges() throws InvalidPublicIdException {
+        final var changes = List.of(change(3, "urn:test:1", false), change(5, "urn:test:2", true),
+                change(8, "urn:test:3", false));
+        when(changeFeedService.getChanges(0, 3)).thenReturn(changes);
+        final var changed = List.of(new MetadataDto("urn:test:1"), new MetadataDto("urn:test:3"));
+        when(uncachedMetadataAggregatorService.getMetadataForTaxonomyEntities(List.of("urn:test:1", "urn:test:3")))
+                .thenReturn(changed);
+        // The cache still holds the metadata from before the changes
+        final var stale = List.of(new MetadataDto("urn:test:1"), new MetadataDto("urn:test:3"));
+        when(metadataAggregatorService.getMetadataForTaxonomyEntities(List.of("urn:test:1", "urn:test:3")))
+                .thenReturn(stale);
+
+        final var page = metadataController.getChanges(null, 3);
+        assertSame(changed, page.getChanged());
+        assertEquals(List.of("urn:test:2"), page.getDeleted());
+        assertNotNull(page.getNext());
+
+        // Up to date, the same cursor is returned
+        when(changeFeedService.getChanges(8, 3)).thenReturn(List.of());
+        final var empty = metadataController.getChanges(page.getNext(), 3);
+        assertTrue(empty.getChanged().isEmpty());
+        assertTrue(empty.getDeleted().isEmpty());
+        assertEquals(page.getNext(), empty.getNext());
+
+        assertThrows(InvalidRequestException.class, () -> metadataController.getChanges("invalid", 3));
+        assertThrows(InvalidRequestException.class, () -> metadataController.getChanges(null, 0));
+    }
+
+    @Test
+    void streamChanges() {
+        final var cursor = MetadataController.encodeChangeCursor(42);
+        assertEquals(42, MetadataController.decodeChangeCursor(cursor));
+
+        metadataController.streamChanges(null, null, false);
+        verify(metadataChangeStream).subscribe(null, false);
+
+        metadataController.streamChanges(null, MetadataController.encodeChangeCursor(7), true);
+        verify(metadataChangeStream).subscribe(7L, true);
+
+        // Last-Event-ID of a reconnecting client takes precedence
+        metadataController.streamChanges(cursor, MetadataController.encodeChangeCursor(7), false);
+        verify(metadataChangeStream).subscribe(42L, false);
+
+        assertThrows(InvalidRequestException.class, () -> metadataController.streamChanges("invalid", null, false));
+    }
 }
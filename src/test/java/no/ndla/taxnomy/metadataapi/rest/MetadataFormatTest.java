@@ -0,0 +1,23 @@
+package no.ndla.taxnomy.metadataapi.rest;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MetadataFormatTest {
+    @Test
+    void fromAccept() {
+        assertEquals(MetadataFormat.JSON, MetadataFormat.fromAccept(null));
+        assertEquals(MetadataFormat.JSON, MetadataFormat.fromAccept("*/*"));
+        assertEquals(MetadataFormat.JSON, MetadataFormat.fromAccept("application/*"));
+        assertEquals(MetadataFormat.JSON, MetadataFormat.fromAccept("application/json"));
+        assertEquals(MetadataFormat.JSON, MetadataFormat.fromAccept("text/html"));
+        assertEquals(MetadataFormat.JSON, MetadataFormat.fromAccept("not a media type"));
+
+        assertEquals(MetadataFormat.CBOR, MetadataFormat.fromAccept("application/cbor"));
+        assertEquals(MetadataFormat.CBOR, MetadataFormat.fromAccept("application/json;q=0.5, application/cbor"));
+        assertEquals(MetadataFormat.SMILE, MetadataFormat.fromAccept("application/x-jackson-smile, */*;q=0.1"));
+        assertEquals(MetadataFormat.JSON,
+                MetadataFormat.fromAccept("application/x-jackson-smile;q=0.5, application/json"));
+    }
+}
@@ -0,0 +1,85 @@
+package no.ndla.taxnomy.metadataapi.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.ndla.taxnomy.metadataapi.service.MetadataAggregatorService;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Checks that the metadata returned by a write is the metadata stored by it.
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+class MetadataUpdateResponseTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MetadataAggregatorService metadataAggregatorService;
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        metadataAggregatorService.deleteMetadataForTaxonomyEntity("urn:test:9101");
+    }
+
+    // Read as a tree, the version is read-only and not deserialized into MetadataDto
+    private JsonNode putMetadata(Map<String, String> customFields) throws Exception {
+        final var metadataDto = new MetadataDto("urn:test:9101");
+        metadataDto.setCustomFields(customFields);
+
+        final var response = mockMvc
+                .perform(put("/v1/taxonomy_entities/urn:test:9101").contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsBytes(metadataDto)))
+                .andExpect(status().isOk()).andReturn().getResponse();
+
+        return objectMapper.readTree(response.getContentAsByteArray());
+    }
+
+    private JsonNode getMetadata() throws Exception {
+        final var response = mockMvc.perform(get("/v1/taxonomy_entities/urn:test:9101")).andExpect(status().isOk())
+                .andReturn().getResponse();
+
+        return objectMapper.readTree(response.getContentAsByteArray());
+    }
+
+    private JsonNode tree(Map<String, String> customFields) {
+        return objectMapper.valueToTree(customFields);
+    }
+
+    @Test
+    void putReturnsChangedCustomFields() throws Exception {
+        final var created = putMetadata(Map.of("probe-key", "old", "other-key", "kept"));
+        assertEquals(tree(Map.of("probe-key", "old", "other-key", "kept")), created.get("customFields"));
+
+        final var changed = putMetadata(Map.of("probe-key", "new", "other-key", "kept"));
+        assertEquals(tree(Map.of("probe-key", "new", "other-key", "kept")), changed.get("customFields"));
+        assertNotEquals(created.get("version"), changed.get("version"));
+
+        final var removed = putMetadata(Map.of("probe-key", "new"));
+        assertEquals(tree(Map.of("probe-key", "new")), removed.get("customFields"));
+
+        final var stored = getMetadata();
+        assertEquals(removed.get("customFields"), stored.get("customFields"));
+        assertEquals(removed.get("version"), stored.get("version"));
+    }
+}
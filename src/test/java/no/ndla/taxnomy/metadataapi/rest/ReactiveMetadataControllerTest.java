@@ -0,0 +1,124 @@
+package no.ndla.taxnomy.metadataapi.rest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.ndla.taxnomy.metadataapi.service.MetadataAggregatorServiceImpl;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("reactive")
+class ReactiveMetadataControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MetadataAggregatorServiceImpl metadataAggregatorService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        final var metadataDto = new MetadataDto("urn:test:6501");
+        metadataDto.setVisible(false);
+        metadataDto.setCompetenceAims(Set.of(new MetadataDto.CompetenceAim("RA1")));
+        metadataDto.setCustomFields(Map.of("reactive-1", "value-1", "reactive-2", "value-2"));
+
+        metadataAggregatorService.updateMetadataForTaxonomyEntity("urn:test:6501", metadataDto);
+    }
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        metadataAggregatorService.deleteMetadataForTaxonomyEntity("urn:test:6501");
+    }
+
+    // Returns the response of the async dispatch, the request is not answered by the request thread
+    private ResultActions performAsync(RequestBuilder requestBuilder) throws Exception {
+        final var result = mockMvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn();
+
+        return mockMvc.perform(asyncDispatch(result));
+    }
+
+    @Test
+    void getByPublicId() throws Exception {
+        final var response = performAsync(get("/v1/taxonomy_entities/urn:test:6501")).andExpect(status().isOk())
+                .andReturn().getResponse();
+        final var metadataDto = objectMapper.readValue(response.getContentAsByteArray(), MetadataDto.class);
+
+        assertEquals(MetadataController.eTag(
+                metadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:6501").getVersion(),
+                MetadataFormat.JSON), response.getHeader(HttpHeaders.ETAG));
+        assertFalse(metadataDto.isVisible());
+        assertEquals(Set.of("RA1"), metadataDto.getCompetenceAims().stream().map(MetadataDto.CompetenceAim::getCode)
+                .collect(Collectors.toSet()));
+        assertEquals(Map.of("reactive-1", "value-1", "reactive-2", "value-2"), metadataDto.getCustomFields());
+
+        // Answered from the ETag of the reactive read
+        performAsync(get("/v1/taxonomy_entities/urn:test:6501").header(HttpHeaders.IF_NONE_MATCH,
+                response.getHeader(HttpHeaders.ETAG))).andExpect(status().isNotModified());
+    }
+
+    @Test
+    void getByPublicIdWithFields() throws Exception {
+        final var response = performAsync(get("/v1/taxonomy_entities/urn:test:6501?fields=customFields.reactive-1"))
+                .andExpect(status().isOk()).andReturn().getResponse();
+        final var metadataDto = objectMapper.readValue(response.getContentAsByteArray(), MetadataDto.class);
+
+        assertEquals(Map.of("reactive-1", "value-1"), metadataDto.getCustomFields());
+        assertNull(metadataDto.getCompetenceAims());
+        assertNull(metadataDto.isVisible());
+    }
+
+    @Test
+    void getByPublicIds() throws Exception {
+        final var response = performAsync(get("/v1/taxonomy_entities?publicIds=urn:test:6501,urn:test:6599"))
+                .andExpect(status().isOk()).andReturn().getResponse();
+        final List<MetadataDto> metadataDtos = objectMapper.readValue(response.getContentAsByteArray(),
+                new TypeReference<>() {
+                });
+
+        assertEquals(List.of("urn:test:6501", "urn:test:6599"),
+                metadataDtos.stream().map(MetadataDto::getPublicId).collect(Collectors.toList()));
+        assertEquals(Set.of("RA1"), metadataDtos.get(0).getCompetenceAims().stream()
+                .map(MetadataDto.CompetenceAim::getCode).collect(Collectors.toSet()));
+        assertTrue(metadataDtos.get(1).isVisible());
+        assertEquals(Set.of(), metadataDtos.get(1).getCompetenceAims());
+    }
+
+    @Test
+    void blockingReads() throws Exception {
+        // Reads by custom field are still served by the blocking controller
+        mockMvc.perform(get("/v1/taxonomy_entities?key=reactive-1&value=value-1"))
+                .andExpect(request().asyncNotStarted()).andExpect(status().isOk());
+    }
+
+    @Test
+    void invalidPublicId() throws Exception {
+        mockMvc.perform(get("/v1/taxonomy_entities/invalid id")).andExpect(status().isBadRequest());
+    }
+}
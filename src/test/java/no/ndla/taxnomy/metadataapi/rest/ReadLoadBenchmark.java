@@ -0,0 +1,136 @@
+package no.ndla.taxnomy.metadataapi.rest;
+
+import no.ndla.taxnomy.metadataapi.service.MetadataAggregatorServiceImpl;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the blocking reads of {@link MetadataController}, on platform and on virtual threads, with the reactive
+ * reads of {@link ReactiveMetadataController} under many concurrent requests, with few platform request threads and
+ * without the metadata cache. Not run as part of the build, run with:
+ *
+ * <pre>
+ * mvn test -Dtest='ReadLoadBenchmark*'
+ * </pre>
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "server.tomcat.threads.max=20", "metadata.cache.maximum-size=0", "metadata.r2dbc.pool.max-size=10" })
+abstract class ReadLoadBenchmark {
+    private static final int ENTITIES = 100;
+    private static final int CONCURRENCY = 500;
+    private static final int WARMUP_REQUESTS = 2_000;
+    private static final int REQUESTS = 20_000;
+
+    static class Mvc extends ReadLoadBenchmark {
+    }
+
+    @ActiveProfiles("reactive")
+    static class Reactive extends ReadLoadBenchmark {
+    }
+
+    @TestPropertySource(properties = "metadata.threads.virtual=true")
+    @EnabledIf("virtualThreadsAvailable")
+    static class VirtualThreads extends ReadLoadBenchmark {
+        static boolean virtualThreadsAvailable() {
+            return Runtime.version().feature() >= 21;
+        }
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private MetadataAggregatorServiceImpl metadataAggregatorService;
+
+    private List<String> publicIds;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        publicIds = IntStream.range(0, ENTITIES).mapToObj(i -> "urn:benchmark:" + i).collect(Collectors.toList());
+
+        final var updateDtos = new ArrayList<MetadataDto>();
+        for (final var publicId : publicIds) {
+            final var updateDto = new MetadataDto(publicId);
+            updateDto.setCompetenceAims(Set.of(new MetadataDto.CompetenceAim("BA1"),
+                    new MetadataDto.CompetenceAim("BA2"), new MetadataDto.CompetenceAim("BA3")));
+            updateDto.setCustomFields(Map.of("benchmark-1", "value", "benchmark-2", "value", "benchmark-3", "value"));
+            updateDtos.add(updateDto);
+        }
+        metadataAggregatorService.updateMetadataForTaxonomyEntities(updateDtos);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (final var publicId : publicIds) {
+            metadataAggregatorService.deleteMetadataForTaxonomyEntity(publicId);
+        }
+    }
+
+    // Returns the latencies in microseconds, sorted
+    private long[] run(HttpClient httpClient, int requests) throws InterruptedException {
+        final var inFlight = new Semaphore(CONCURRENCY);
+        final var latencies = new long[requests];
+        final var futures = new ArrayList<CompletableFuture<?>>();
+
+        for (var i = 0; i < requests; i++) {
+            final var index = i;
+            final var request = HttpRequest.newBuilder(URI.create(
+                    "http://localhost:" + port + "/v1/taxonomy_entities/" + publicIds.get(i % publicIds.size())))
+                    .build();
+
+            inFlight.acquire();
+            final var start = System.nanoTime();
+            futures.add(httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, e) -> {
+                        latencies[index] = (System.nanoTime() - start) / 1000;
+                        inFlight.release();
+                    }).thenAccept(response -> assertEquals(200, response.statusCode())));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    @Test
+    void readUnderLoad() throws InterruptedException {
+        final var httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        run(httpClient, WARMUP_REQUESTS);
+
+        final var start = System.nanoTime();
+        final var latencies = run(httpClient, REQUESTS);
+        final var elapsed = System.nanoTime() - start;
+
+        System.out.printf("%-8s %6d req, %3d concurrent: %8.0f req/s, p50 %6d us, p99 %6d us%n",
+                getClass().getSimpleName(), REQUESTS, CONCURRENCY, REQUESTS / (elapsed / 1e9), latencies[REQUESTS / 2],
+                latencies[REQUESTS * 99 / 100]);
+    }
+}
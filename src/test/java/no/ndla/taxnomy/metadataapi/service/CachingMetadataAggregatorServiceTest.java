@@ -0,0 +1,360 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import no.ndla.taxnomy.metadataapi.data.domain.MetadataChange;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import no.ndla.taxnomy.metadataapi.service.exception.InvalidDataException;
+import no.ndla.taxnomy.metadataapi.service.exception.InvalidPublicIdException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class CachingMetadataAggregatorServiceTest {
+    private MetadataAggregatorService metadataAggregatorService;
+    private StoredPublicIdFilter storedPublicIdFilter;
+    private PublicIdValidator publicIdValidator;
+    private Cache<String, MetadataDto> cache;
+    private CachingMetadataAggregatorService cachingMetadataAggregatorService;
+
+    @BeforeEach
+    void setUp() throws InvalidPublicIdException {
+        metadataAggregatorService = mock(MetadataAggregatorService.class);
+        storedPublicIdFilter = mock(StoredPublicIdFilter.class);
+        publicIdValidator = mock(PublicIdValidator.class);
+        cache = Caffeine.newBuilder().maximumSize(100).recordStats().build();
+        cachingMetadataAggregatorService = new CachingMetadataAggregatorService(metadataAggregatorService,
+                storedPublicIdFilter, publicIdValidator, new MetadataBatchLoader(metadataAggregatorService,
+                        publicIdValidator, new SimpleMeterRegistry(), Duration.ZERO, 100, Duration.ofSeconds(10)),
+                cache);
+
+        when(storedPublicIdFilter.mightBeStored(any())).thenReturn(true);
+
+        when(metadataAggregatorService.getMetadataForTaxonomyEntity(any()))
+                .thenAnswer(invocationOnMock -> new MetadataDto(invocationOnMock.getArgument(0, String.class)));
+        when(metadataAggregatorService.getMetadataForTaxonomyEntities(anyCollection())).thenAnswer(invocationOnMock -> {
+            @SuppressWarnings("unchecked")
+            final var publicIds = (Collection<String>) invocationOnMock.getArgument(0, Collection.class);
+
+            return publicIds.stream().map(MetadataDto::new).collect(Collectors.toList());
+        });
+    }
+
+    @Test
+    void getMetadataForTaxonomyEntity() throws InvalidPublicIdException {
+        final var first = cachingMetadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:1");
+        final var second = cachingMetadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:1");
+
+        assertSame(first, second);
+        verify(metadataAggregatorService, times(1)).getMetadataForTaxonomyEntity("urn:test:1");
+
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    void getMetadataForTaxonomyEntities() throws InvalidPublicIdException {
+        final var single = cachingMetadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:2");
+
+        final var returned = cachingMetadataAggregatorService
+                .getMetadataForTaxonomyEntities(List.of("urn:test:1", "urn:test:2", "urn:test:3"));
+
+        assertEquals(List.of("urn:test:1", "urn:test:2", "urn:test:3"),
+                returned.stream().map(MetadataDto::getPublicId).collect(Collectors.toList()));
+        assertSame(single, returned.get(1));
+
+        // Only the entities not already cached are loaded
+        verify(metadataAggregatorService).getMetadataForTaxonomyEntities(Set.of("urn:test:1", "urn:test:3"));
+
+        final var returnedAgain = cachingMetadataAggregatorService
+                .getMetadataForTaxonomyEntities(List.of("urn:test:3", "urn:test:1"));
+        assertSame(returned.get(2), returnedAgain.get(0));
+        assertSame(returned.get(0), returnedAgain.get(1));
+        verify(metadataAggregatorService, times(1)).getMetadataForTaxonomyEntities(anyCollection());
+    }
+
+    @Test
+    void invalidatedByWrites() throws InvalidPublicIdException, InvalidDataException {
+        cachingMetadataAggregatorService.getMetadataForTaxonomyEntities(List.of("urn:test:1", "urn:test:2"));
+        assertEquals(2, cache.estimatedSize());
+
+        cachingMetadataAggregatorService.updateMetadataForTaxonomyEntity("urn:test:1", new MetadataDto("urn:test:1"));
+        assertNull(cache.getIfPresent("urn:test:1"));
+        assertNotNull(cache.getIfPresent("urn:test:2"));
+
+        cachingMetadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:1");
+        cachingMetadataAggregatorService.updateMetadataForTaxonomyEntities(List.of(new MetadataDto("urn:test:1")));
+        assertNull(cache.getIfPresent("urn:test:1"));
+        assertNotNull(cache.getIfPresent("urn:test:2"));
+
+        cachingMetadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:1");
+        cachingMetadataAggregatorService.writeMetadataForTaxonomyEntity("urn:test:1", new MetadataDto("urn:test:1"));
+        assertNull(cache.getIfPresent("urn:test:1"));
+
+        cachingMetadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:1");
+        cachingMetadataAggregatorService.writeMetadataForTaxonomyEntities(List.of(new MetadataDto("urn:test:1")));
+        assertNull(cache.getIfPresent("urn:test:1"));
+        assertNotNull(cache.getIfPresent("urn:test:2"));
+
+        cachingMetadataAggregatorService.deleteMetadataForTaxonomyEntity("urn:test:2");
+        assertNull(cache.getIfPresent("urn:test:2"));
+
+        verify(metadataAggregatorService).updateMetadataForTaxonomyEntity(eq("urn:test:1"), any());
+        verify(metadataAggregatorService).updateMetadataForTaxonomyEntities(anyList());
+        verify(metadataAggregatorService).writeMetadataForTaxonomyEntity(eq("urn:test:1"), any());
+        verify(metadataAggregatorService).writeMetadataForTaxonomyEntities(anyList());
+        verify(metadataAggregatorService).deleteMetadataForTaxonomyEntity("urn:test:2");
+    }
+
+    @Test
+    void invalidatedByChangesOfOtherInstances() throws InvalidPublicIdException {
+        cachingMetadataAggregatorService.getMetadataForTaxonomyEntities(List.of("urn:test:1", "urn:test:2"));
+
+        cachingMetadataAggregatorService.onChanges(List.of(new MetadataChange(1, "urn:test:1", false)));
+        assertNull(cache.getIfPresent("urn:test:1"));
+        assertNotNull(cache.getIfPresent("urn:test:2"));
+    }
+
+    @Test
+    void invalidatedWhenWriteFails() throws InvalidPublicIdException, InvalidDataException {
+        cachingMetadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:1");
+
+        when(metadataAggregatorService.updateMetadataForTaxonomyEntity(eq("urn:test:1"), any()))
+                .thenThrow(new InvalidDataException("test"));
+
+        assertThrows(InvalidDataException.class, () -> cachingMetadataAggregatorService
+                .updateMetadataForTaxonomyEntity("urn:test:1", new MetadataDto("urn:test:1")));
+        assertNull(cache.getIfPresent("urn:test:1"));
+    }
+
+    @Test
+    void loadRacingWithWriteIsNotCached() throws InvalidPublicIdException, InvalidDataException {
+        // Simulates a write committing while a read is loading from the database
+        when(metadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:1")).thenAnswer(invocationOnMock -> {
+            cachingMetadataAggregatorService.deleteMetadataForTaxonomyEntity("urn:test:1");
+            return new MetadataDto("urn:test:1");
+        });
+
+        assertNotNull(cachingMetadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:1"));
+        assertNull(cache.getIfPresent("urn:test:1"));
+    }
+
+    @Test
+    void getMetadataVersions() throws InvalidPublicIdException {
+        final var cached = new MetadataDto("urn:test:1");
+        cached.setVersion("v1");
+        cache.put("urn:test:1", cached);
+
+        when(metadataAggregatorService.getMetadataVersions(Set.of("urn:test:2")))
+                .thenReturn(Map.of("urn:test:2", "v2"));
+
+        assertEquals(Map.of("urn:test:1", "v1", "urn:test:2", "v2"),
+                cachingMetadataAggregatorService.getMetadataVersions(List.of("urn:test:1", "urn:test:2")));
+        assertEquals("v1", cachingMetadataAggregatorService.getMetadataVersion("urn:test:1"));
+
+        verify(metadataAggregatorService, never()).getMetadataVersion(any());
+        verify(metadataAggregatorService, never()).getMetadataForTaxonomyEntities(anyCollection());
+    }
+
+    @Test
+    void getSparseMetadata() throws Exception {
+        final var fields = MetadataFields.parse("visible");
+        cachingMetadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:1");
+
+        when(metadataAggregatorService.getMetadataForTaxonomyEntities(anyCollection(), eq(fields)))
+                .thenReturn(List.of(new MetadataDto("urn:test:2")));
+
+        final var returned = cachingMetadataAggregatorService
+                .getMetadataForTaxonomyEntities(List.of("urn:test:1", "urn:test:2"), fields);
+        assertEquals(List.of("urn:test:1", "urn:test:2"),
+                returned.stream().map(MetadataDto::getPublicId).collect(Collectors.toList()));
+
+        // Projected from the cached metadata, partial metadata is not cached
+        verify(metadataAggregatorService).getMetadataForTaxonomyEntities(Set.of("urn:test:2"), fields);
+        assertNull(cache.getIfPresent("urn:test:2"));
+        assertNotSame(cache.getIfPresent("urn:test:1"), returned.get(0));
+    }
+
+    @Test
+    void notStoredAreNotLoaded() throws Exception {
+        when(storedPublicIdFilter.mightBeStored("urn:test:2")).thenReturn(false);
+
+        final var single = cachingMetadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:2");
+        assertEquals("urn:test:2", single.getPublicId());
+        assertEquals(MetadataVersions.EMPTY, single.getVersion());
+        assertEquals(MetadataVersions.EMPTY, cachingMetadataAggregatorService.getMetadataVersion("urn:test:2"));
+        assertNull(cachingMetadataAggregatorService
+                .getMetadataForTaxonomyEntity("urn:test:2", MetadataFields.parse("visible")).getCustomFields());
+
+        final var returned = cachingMetadataAggregatorService
+                .getMetadataForTaxonomyEntities(List.of("urn:test:1", "urn:test:2"));
+        assertEquals(List.of("urn:test:1", "urn:test:2"),
+                returned.stream().map(MetadataDto::getPublicId).collect(Collectors.toList()));
+        verify(metadataAggregatorService).getMetadataForTaxonomyEntities(Set.of("urn:test:1"));
+
+        when(metadataAggregatorService.getMetadataVersions(Set.of("urn:test:3")))
+                .thenReturn(Map.of("urn:test:3", "v3"));
+        assertEquals(Map.of("urn:test:2", MetadataVersions.EMPTY, "urn:test:3", "v3"),
+                cachingMetadataAggregatorService.getMetadataVersions(List.of("urn:test:2", "urn:test:3")));
+
+        // Not cached, and still validated
+        assertNull(cache.getIfPresent("urn:test:2"));
+        verify(publicIdValidator, atLeastOnce()).validatePublicId("urn:test:2");
+        verify(metadataAggregatorService, never()).getMetadataForTaxonomyEntity(any());
+        verify(metadataAggregatorService, never()).getMetadataVersion(any());
+
+        doThrow(new InvalidPublicIdException("invalid")).when(publicIdValidator).validatePublicId("urn:test:2");
+        assertThrows(InvalidPublicIdException.class,
+                () -> cachingMetadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:2"));
+    }
+
+    @Test
+    void countsFalsePositives() throws InvalidPublicIdException {
+        when(metadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:1")).thenAnswer(invocationOnMock -> {
+            final var metadataDto = new MetadataDto("urn:test:1");
+            metadataDto.setVersion(MetadataVersions.EMPTY);
+            return metadataDto;
+        });
+
+        cachingMetadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:1");
+        verify(storedPublicIdFilter).recordFalsePositive();
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void concurrentLoadsAreCoalesced() throws Exception {
+        final var loading = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+        when(metadataAggregatorService.getMetadataForTaxonomyEntities(anyCollection())).thenAnswer(invocationOnMock -> {
+            loading.countDown();
+            release.await();
+
+            @SuppressWarnings("unchecked")
+            final var publicIds = (Collection<String>) invocationOnMock.getArgument(0, Collection.class);
+            return publicIds.stream().map(MetadataDto::new).collect(Collectors.toList());
+        });
+
+        final var executor = Executors.newFixedThreadPool(2);
+        try {
+            final var first = executor.submit(() -> cachingMetadataAggregatorService
+                    .getMetadataForTaxonomyEntities(List.of("urn:test:1", "urn:test:2")));
+            loading.await();
+
+            // Waits for the load in progress instead of loading the same entity
+            final var waitingThread = new AtomicReference<Thread>();
+            final var second = executor.submit(() -> {
+                waitingThread.set(Thread.currentThread());
+                return cachingMetadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:2");
+            });
+            while (waitingThread.get() == null) {
+                Thread.sleep(1);
+            }
+            awaitWaiting(waitingThread.get());
+
+            release.countDown();
+            assertSame(first.get().get(1), second.get());
+        } finally {
+            executor.shutdown();
+        }
+
+        verify(metadataAggregatorService, times(1)).getMetadataForTaxonomyEntities(anyCollection());
+        verify(metadataAggregatorService, never()).getMetadataForTaxonomyEntity(any());
+    }
+
+    @Test
+    void failedSharedLoadIsRetried() throws Exception {
+        final var loading = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+        when(metadataAggregatorService.getMetadataForTaxonomyEntities(anyCollection())).thenAnswer(invocationOnMock -> {
+            loading.countDown();
+            release.await();
+            throw new InvalidPublicIdException("urn:test:1");
+        });
+
+        final var executor = Executors.newFixedThreadPool(2);
+        try {
+            final var first = executor.submit(() -> cachingMetadataAggregatorService
+                    .getMetadataForTaxonomyEntities(List.of("urn:test:1", "urn:test:2")));
+            loading.await();
+
+            final var waitingThread = new AtomicReference<Thread>();
+            final var second = executor.submit(() -> {
+                waitingThread.set(Thread.currentThread());
+                return cachingMetadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:2");
+            });
+            while (waitingThread.get() == null) {
+                Thread.sleep(1);
+            }
+            awaitWaiting(waitingThread.get());
+
+            release.countDown();
+            final var exception = assertThrows(ExecutionException.class, first::get);
+            assertTrue(exception.getCause() instanceof InvalidPublicIdException);
+
+            // The failure was caused by another entity, so this one is loaded on its own
+            assertEquals("urn:test:2", second.get().getPublicId());
+        } finally {
+            executor.shutdown();
+        }
+
+        verify(metadataAggregatorService).getMetadataForTaxonomyEntity("urn:test:2");
+    }
+
+    @Test
+    void errorInSharedLoadReleasesWaiters() throws Exception {
+        final var loading = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+        when(metadataAggregatorService.getMetadataForTaxonomyEntities(anyCollection())).thenAnswer(invocationOnMock -> {
+            loading.countDown();
+            release.await();
+            throw new StackOverflowError();
+        });
+
+        final var executor = Executors.newFixedThreadPool(2);
+        try {
+            final var first = executor.submit(() -> cachingMetadataAggregatorService
+                    .getMetadataForTaxonomyEntities(List.of("urn:test:1", "urn:test:2")));
+            loading.await();
+
+            final var waitingThread = new AtomicReference<Thread>();
+            final var second = executor.submit(() -> {
+                waitingThread.set(Thread.currentThread());
+                return cachingMetadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:2");
+            });
+            while (waitingThread.get() == null) {
+                Thread.sleep(1);
+            }
+            awaitWaiting(waitingThread.get());
+
+            release.countDown();
+            final var exception = assertThrows(ExecutionException.class, () -> first.get(10, TimeUnit.SECONDS));
+            assertTrue(exception.getCause() instanceof StackOverflowError);
+
+            assertEquals("urn:test:2", second.get(10, TimeUnit.SECONDS).getPublicId());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
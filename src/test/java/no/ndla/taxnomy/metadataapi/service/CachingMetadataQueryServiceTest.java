@@ -0,0 +1,122 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import no.ndla.taxnomy.metadataapi.data.domain.MetadataChange;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataFacetsDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataQueryDto;
+import no.ndla.taxnomy.metadataapi.service.exception.InvalidDataException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class CachingMetadataQueryServiceTest {
+    private MetadataQueryService metadataQueryService;
+    private Cache<String, CachingMetadataQueryService.CachedFacets> cache;
+    private CachingMetadataQueryService cachingMetadataQueryService;
+
+    @BeforeEach
+    void setUp() throws InvalidDataException {
+        metadataQueryService = mock(MetadataQueryService.class);
+        cache = Caffeine.newBuilder().maximumSize(100).build();
+        cachingMetadataQueryService = new CachingMetadataQueryService(metadataQueryService, new ObjectMapper(), cache);
+
+        when(metadataQueryService.getFacets(any(), anyCollection(), anyBoolean(), anyInt()))
+                .thenAnswer(invocationOnMock -> new MetadataFacetsDto(Map.of(), null));
+    }
+
+    private static MetadataQueryDto.Condition visible(boolean visible) {
+        final var condition = new MetadataQueryDto.Condition();
+        condition.setVisible(visible);
+
+        return condition;
+    }
+
+    @Test
+    void getFacets() throws InvalidDataException {
+        final var first = cachingMetadataQueryService.getFacets(visible(true), List.of("key"), false, 10);
+        assertSame(first, cachingMetadataQueryService.getFacets(visible(true), List.of("key"), false, 10));
+        verify(metadataQueryService, times(1)).getFacets(any(), anyCollection(), anyBoolean(), anyInt());
+
+        // Different filters, keys and limits are cached separately
+        assertNotSame(first, cachingMetadataQueryService.getFacets(visible(false), List.of("key"), false, 10));
+        assertNotSame(first, cachingMetadataQueryService.getFacets(visible(true), List.of("other"), false, 10));
+        assertNotSame(first, cachingMetadataQueryService.getFacets(visible(true), List.of("key"), false, 5));
+        assertNotSame(first, cachingMetadataQueryService.getFacets(null, List.of("key"), false, 10));
+        assertEquals(5, cache.estimatedSize());
+    }
+
+    @Test
+    void invalidatedByChanges() throws InvalidDataException {
+        final var first = cachingMetadataQueryService.getFacets(null, List.of("key"), true, 10);
+
+        cachingMetadataQueryService.onChange(new MetadataChangeEvent(1, "urn:test:1", false));
+        assertEquals(0, cache.estimatedSize());
+
+        assertNotSame(first, cachingMetadataQueryService.getFacets(null, List.of("key"), true, 10));
+    }
+
+    @Test
+    void invalidatedOnlyByChangesToCountedOrFilteredFields() throws InvalidDataException {
+        final var byVisible = cachingMetadataQueryService.getFacets(visible(true), List.of("key"), false, 10);
+        final var byKey = cachingMetadataQueryService.getFacets(null, List.of("key"), false, 10);
+        final var byCompetenceAim = cachingMetadataQueryService.getFacets(null, List.of(), true, 10);
+
+        // Other custom fields can not change any of the counts
+        cachingMetadataQueryService.onChange(new MetadataChangeEvent(1, "urn:test:1", false,
+                MetadataFields.of(false, false, true, Set.of("other"))));
+        assertSame(byVisible, cachingMetadataQueryService.getFacets(visible(true), List.of("key"), false, 10));
+        assertSame(byKey, cachingMetadataQueryService.getFacets(null, List.of("key"), false, 10));
+        assertSame(byCompetenceAim, cachingMetadataQueryService.getFacets(null, List.of(), true, 10));
+
+        // Visible only moves entities in or out of the filter on it
+        cachingMetadataQueryService
+                .onChange(new MetadataChangeEvent(2, "urn:test:1", false, MetadataFields.of(true, false, false, null)));
+        assertNotSame(byVisible, cachingMetadataQueryService.getFacets(visible(true), List.of("key"), false, 10));
+        assertSame(byKey, cachingMetadataQueryService.getFacets(null, List.of("key"), false, 10));
+        assertSame(byCompetenceAim, cachingMetadataQueryService.getFacets(null, List.of(), true, 10));
+
+        // Replacing all the custom fields can change any custom field count
+        cachingMetadataQueryService
+                .onChange(new MetadataChangeEvent(3, "urn:test:1", false, MetadataFields.of(false, false, true, null)));
+        assertNotSame(byKey, cachingMetadataQueryService.getFacets(null, List.of("key"), false, 10));
+        assertSame(byCompetenceAim, cachingMetadataQueryService.getFacets(null, List.of(), true, 10));
+
+        // Deletions change everything
+        cachingMetadataQueryService.onChange(new MetadataChangeEvent(4, "urn:test:1", true, MetadataFields.NONE));
+        assertEquals(0, cache.estimatedSize());
+    }
+
+    @Test
+    void invalidatedByChangesOfOtherInstances() throws InvalidDataException {
+        final var byVisible = cachingMetadataQueryService.getFacets(visible(true), List.of(), false, 10);
+
+        // Which fields changed is not known
+        cachingMetadataQueryService.onChanges(List.of(new MetadataChange(1, "urn:test:1", false)));
+        assertEquals(0, cache.estimatedSize());
+        assertNotSame(byVisible, cachingMetadataQueryService.getFacets(visible(true), List.of(), false, 10));
+    }
+
+    @Test
+    void loadRacingWithChangeIsNotCached() throws InvalidDataException {
+        when(metadataQueryService.getFacets(any(), anyCollection(), anyBoolean(), anyInt()))
+                .thenAnswer(invocationOnMock -> {
+                    cachingMetadataQueryService.onChange(new MetadataChangeEvent(1, "urn:test:1", false));
+                    return new MetadataFacetsDto(Map.of(), null);
+                });
+
+        assertNotNull(cachingMetadataQueryService.getFacets(null, List.of("key"), true, 10));
+        assertEquals(0, cache.estimatedSize());
+    }
+}
@@ -0,0 +1,84 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.data.domain.MetadataChange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ChangeFeedReaderTest {
+    private ChangeFeedService changeFeedService;
+    private ChangeFeedReader changeFeedReader;
+    private List<List<Long>> read;
+    private List<List<Long>> readRemote;
+
+    private static List<Long> getSeqs(List<MetadataChange> changes) {
+        return changes.stream().map(MetadataChange::getSeq).collect(Collectors.toList());
+    }
+
+    @BeforeEach
+    void setUp() {
+        changeFeedService = mock(ChangeFeedService.class);
+        when(changeFeedService.getLastSeq()).thenReturn(5L);
+        when(changeFeedService.getChanges(anyLong(), anyInt())).thenReturn(List.of());
+
+        changeFeedReader = new ChangeFeedReader(changeFeedService, Duration.ofSeconds(5));
+
+        read = new ArrayList<>();
+        readRemote = new ArrayList<>();
+        changeFeedReader.addListener(changes -> read.add(getSeqs(changes)));
+        changeFeedReader.addRemoteListener(changes -> readRemote.add(getSeqs(changes)));
+    }
+
+    @Test
+    void readsFromLastSeq() {
+        when(changeFeedService.getChanges(eq(5L), anyInt())).thenReturn(
+                List.of(new MetadataChange(6, "urn:test:1", false), new MetadataChange(8, "urn:test:2", true)));
+        when(changeFeedService.getChanges(eq(8L), anyInt()))
+                .thenReturn(List.of(new MetadataChange(9, "urn:test:3", false)));
+
+        changeFeedReader.poll();
+        assertEquals(List.of(List.of(6L, 8L), List.of(9L)), read);
+
+        // Resumes after the last change read
+        changeFeedReader.poll();
+        verify(changeFeedService, times(2)).getChanges(eq(9L), anyInt());
+        assertEquals(2, read.size());
+    }
+
+    @Test
+    void remoteListenersSkipLocalChanges() {
+        when(changeFeedService.getChanges(eq(5L), anyInt())).thenReturn(
+                List.of(new MetadataChange(6, "urn:test:1", false), new MetadataChange(7, "urn:test:2", false)));
+        changeFeedReader.onChange(new MetadataChangeEvent(7, "urn:test:2", false));
+
+        changeFeedReader.poll();
+        assertEquals(List.of(List.of(6L, 7L)), read);
+        assertEquals(List.of(List.of(6L)), readRemote);
+    }
+
+    @Test
+    void failingListenerDoesNotStopOthers() {
+        when(changeFeedService.getChanges(eq(5L), anyInt()))
+                .thenReturn(List.of(new MetadataChange(6, "urn:test:1", false)));
+
+        final var failing = new ChangeFeedReader(changeFeedService, Duration.ofSeconds(5));
+        final var readAfterFailure = new ArrayList<List<Long>>();
+        failing.addListener(changes -> {
+            throw new IllegalStateException();
+        });
+        failing.addListener(changes -> readAfterFailure.add(getSeqs(changes)));
+
+        failing.poll();
+        assertEquals(List.of(List.of(6L)), readAfterFailure);
+    }
+}
@@ -0,0 +1,141 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.data.domain.MetadataChange;
+import no.ndla.taxnomy.metadataapi.data.repository.MetadataChangeRepository;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+class ChangeFeedServiceImplTest {
+    @Autowired
+    private ChangeFeedServiceImpl changeFeedService;
+
+    @Autowired
+    private MetadataAggregatorServiceImpl metadataAggregatorService;
+
+    @Autowired
+    private MetadataChangeRepository metadataChangeRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        metadataAggregatorService.deleteMetadataForTaxonomyEntity("urn:test:6101");
+        metadataAggregatorService.deleteMetadataForTaxonomyEntity("urn:test:6102");
+
+        metadataChangeRepository.deleteAll(metadataChangeRepository.findAll().stream()
+                .filter(change -> change.getPublicId().startsWith("urn:test:610")).collect(Collectors.toList()));
+    }
+
+    private Optional<MetadataChange> findChange(String publicId) {
+        return changeFeedService.getChanges(0, Integer.MAX_VALUE).stream()
+                .filter(change -> change.getPublicId().equals(publicId)).findFirst();
+    }
+
+    @Test
+    void getChanges() throws Exception {
+        final var update1 = new MetadataDto("urn:test:6101");
+        update1.setVisible(false);
+        final var update2 = new MetadataDto("urn:test:6102");
+        update2.setVisible(false);
+        metadataAggregatorService.updateMetadataForTaxonomyEntities(List.of(update1, update2));
+
+        final var first = findChange("urn:test:6101").orElseThrow();
+        assertFalse(first.isDeleted());
+        assertTrue(findChange("urn:test:6102").isPresent());
+
+        // Changing again moves the entity to the end of the feed
+        update1.setVisible(true);
+        metadataAggregatorService.updateMetadataForTaxonomyEntity("urn:test:6101", update1);
+
+        final var changes = changeFeedService.getChanges(first.getSeq(), Integer.MAX_VALUE);
+        final var second = findChange("urn:test:6101").orElseThrow();
+        assertTrue(second.getSeq() > findChange("urn:test:6102").orElseThrow().getSeq());
+        assertEquals(second.getSeq(), changes.get(changes.size() - 1).getSeq());
+
+        // Writes that do not change anything are not in the feed
+        metadataAggregatorService.updateMetadataForTaxonomyEntity("urn:test:6101", update1);
+        assertEquals(second.getSeq(), findChange("urn:test:6101").orElseThrow().getSeq());
+
+        // Deletions are kept as tombstones
+        metadataAggregatorService.deleteMetadataForTaxonomyEntity("urn:test:6101");
+        final var deleted = findChange("urn:test:6101").orElseThrow();
+        assertTrue(deleted.isDeleted());
+        assertTrue(deleted.getSeq() > second.getSeq());
+
+        assertEquals(1, changeFeedService.getChanges(0, 1).size());
+        assertEquals(deleted.getSeq(), changeFeedService.getLastSeq());
+    }
+
+    @Test
+    void numberedInCommitOrder() throws Exception {
+        final var transactionTemplate = new TransactionTemplate(transactionManager);
+        final var recorded = new CountDownLatch(1);
+        final var otherCommitted = new CountDownLatch(1);
+
+        // Records a change first, but commits after the other transaction
+        final var first = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(status -> {
+            changeFeedService.recordChange("urn:test:6101", MetadataFields.ALL);
+            recorded.countDown();
+            try {
+                assertTrue(otherCommitted.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+
+        assertTrue(recorded.await(10, TimeUnit.SECONDS));
+        transactionTemplate
+                .executeWithoutResult(status -> changeFeedService.recordChange("urn:test:6102", MetadataFields.ALL));
+        final var otherSeq = findChange("urn:test:6102").orElseThrow().getSeq();
+        assertTrue(findChange("urn:test:6101").isEmpty());
+        otherCommitted.countDown();
+        first.get(10, TimeUnit.SECONDS);
+
+        // A consumer that read up to the other change still gets the change committed after it
+        final var changes = changeFeedService.getChanges(otherSeq, Integer.MAX_VALUE);
+        assertEquals("urn:test:6101", changes.get(0).getPublicId());
+        assertEquals(changes.get(0).getSeq(), changeFeedService.getLastSeq());
+    }
+
+    @Test
+    void recordedOncePerTransaction() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            final var changedFields = new LinkedHashMap<String, MetadataFields>();
+            changedFields.put("urn:test:6102", MetadataFields.ALL);
+            changedFields.put("urn:test:6101", MetadataFields.ALL);
+
+            changeFeedService.recordChange("urn:test:6101", MetadataFields.ALL);
+            changeFeedService.recordChanges(changedFields);
+            changeFeedService.recordDeletion("urn:test:6102");
+        });
+
+        final var changes = changeFeedService.getChanges(0, Integer.MAX_VALUE).stream()
+                .filter(change -> change.getPublicId().startsWith("urn:test:610")).collect(Collectors.toList());
+        assertEquals(2, changes.size());
+        assertEquals("urn:test:6101", changes.get(0).getPublicId());
+        assertFalse(changes.get(0).isDeleted());
+        assertEquals("urn:test:6102", changes.get(1).getPublicId());
+        assertTrue(changes.get(1).isDeleted());
+        assertEquals(changes.get(0).getSeq() + 1, changes.get(1).getSeq());
+    }
+}
@@ -1,6 +1,9 @@
 package no.ndla.taxnomy.metadataapi.service;
 
+import no.ndla.taxnomy.metadataapi.data.domain.CompetenceAim;
 import no.ndla.taxnomy.metadataapi.data.repository.CompetenceAimRepository;
+import no.ndla.taxnomy.metadataapi.data.repository.CustomFieldRepository;
+import no.ndla.taxnomy.metadataapi.data.repository.UpsertRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,18 +12,25 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+import java.util.Set;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(SpringExtension.class)
 @SpringBootTest
 class CompetenceAimServiceImplTest {
     private CompetenceAimRepository competenceAimRepository;
+    private DictionaryServiceImpl dictionaryService;
     private CompetenceAimServiceImpl competenceAimService;
 
     @BeforeEach
-    void setUp(@Autowired CompetenceAimRepository competenceAimRepository) {
+    void setUp(@Autowired CompetenceAimRepository competenceAimRepository,
+            @Autowired CustomFieldRepository customFieldRepository, @Autowired UpsertRepository upsertRepository) {
         this.competenceAimRepository = competenceAimRepository;
-        competenceAimService = new CompetenceAimServiceImpl(competenceAimRepository);
+        dictionaryService = new DictionaryServiceImpl(customFieldRepository, competenceAimRepository);
+        competenceAimService = new CompetenceAimServiceImpl(competenceAimRepository, upsertRepository,
+                dictionaryService);
     }
 
     @Test
@@ -35,4 +45,77 @@ class CompetenceAimServiceImplTest {
         assertSame(aim1, competenceAimRepository.findFirstByCode("TEST12").orElseThrow());
         assertSame(aim1, competenceAimService.getOrCreateCompetenceAim("TEST12"));
     }
+
+    @Test
+    @Transactional
+    void getOrCreateKnownCompetenceAim() {
+        final var competenceAim = new CompetenceAim();
+        competenceAim.setCode("TEST13");
+        competenceAimRepository.saveAndFlush(competenceAim);
+
+        // Created outside of the service within the test transaction, so only known after loading
+        assertTrue(dictionaryService.getCompetenceAimId("TEST13").isEmpty());
+        dictionaryService.load();
+
+        final var returned = competenceAimService.getOrCreateCompetenceAim("TEST13");
+        assertEquals(competenceAim.getId(), returned.getId());
+        assertEquals("TEST13", returned.getCode());
+    }
+
+    @Test
+    @Transactional
+    void getOrCreateCompetenceAims() {
+        final var existing = new CompetenceAim();
+        existing.setCode("TEST14");
+        competenceAimRepository.saveAndFlush(existing);
+        final var known = competenceAimService.getOrCreateCompetenceAim("TEST15");
+
+        final var competenceAims = competenceAimService
+                .getOrCreateCompetenceAims(List.of("TEST14", "TEST15", "TEST16", "TEST17"));
+
+        assertEquals(Set.of("TEST14", "TEST15", "TEST16", "TEST17"), competenceAims.keySet());
+        assertSame(existing, competenceAims.get("TEST14"));
+        assertSame(known, competenceAims.get("TEST15"));
+        assertEquals("TEST16", competenceAims.get("TEST16").getCode());
+        assertEquals(competenceAimRepository.findFirstByCode("TEST17").orElseThrow().getId(),
+                competenceAims.get("TEST17").getId());
+
+        // Found, not created again
+        final var again = competenceAimService.getOrCreateCompetenceAims(List.of("TEST16", "TEST17"));
+        assertSame(competenceAims.get("TEST16"), again.get("TEST16"));
+        assertSame(competenceAims.get("TEST17"), again.get("TEST17"));
+        assertTrue(competenceAimService.getOrCreateCompetenceAims(List.of()).isEmpty());
+    }
+
+    @Test
+    @Transactional
+    void getTaxonomyEntityPublicIdsByCompetenceAim(@Autowired TaxonomyEntityService taxonomyEntityService) {
+        final var rv1 = competenceAimService.getOrCreateCompetenceAim("RV1");
+        final var rv2 = competenceAimService.getOrCreateCompetenceAim("RV2");
+        final var rvx = competenceAimService.getOrCreateCompetenceAim("RVX_1");
+
+        taxonomyEntityService.getOrCreateTaxonomyEntity("urn:test:6203").addCompetenceAim(rv1);
+        final var entity1 = taxonomyEntityService.getOrCreateTaxonomyEntity("urn:test:6201");
+        entity1.addCompetenceAim(rv1);
+        entity1.addCompetenceAim(rv2);
+        taxonomyEntityService.getOrCreateTaxonomyEntity("urn:test:6202").addCompetenceAim(rvx);
+
+        assertEquals(List.of("urn:test:6201", "urn:test:6203"),
+                competenceAimService.getTaxonomyEntityPublicIdsByCompetenceAim("RV1", false, null, 10));
+        assertEquals(List.of("urn:test:6203"),
+                competenceAimService.getTaxonomyEntityPublicIdsByCompetenceAim("RV1", false, "urn:test:6201", 10));
+        assertEquals(List.of(), competenceAimService.getTaxonomyEntityPublicIdsByCompetenceAim("RV", false, null, 10));
+
+        // Each entity once, even if it has more than one matching competence aim
+        assertEquals(List.of("urn:test:6201", "urn:test:6202", "urn:test:6203"),
+                competenceAimService.getTaxonomyEntityPublicIdsByCompetenceAim("RV", true, null, 10));
+        assertEquals(List.of("urn:test:6201", "urn:test:6202"),
+                competenceAimService.getTaxonomyEntityPublicIdsByCompetenceAim("RV", true, null, 2));
+
+        // Wildcards in the prefix are matched literally
+        assertEquals(List.of("urn:test:6202"),
+                competenceAimService.getTaxonomyEntityPublicIdsByCompetenceAim("RVX_", true, null, 10));
+        assertEquals(List.of(), competenceAimService.getTaxonomyEntityPublicIdsByCompetenceAim("RV_", true, null, 10));
+        assertEquals(List.of(), competenceAimService.getTaxonomyEntityPublicIdsByCompetenceAim("R%", true, null, 10));
+    }
 }
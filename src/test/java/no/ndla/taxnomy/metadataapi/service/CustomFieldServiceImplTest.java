@@ -3,9 +3,11 @@ package no.ndla.taxnomy.metadataapi.service;
 import no.ndla.taxnomy.metadataapi.data.domain.CustomField;
 import no.ndla.taxnomy.metadataapi.data.domain.CustomFieldValue;
 import no.ndla.taxnomy.metadataapi.data.domain.TaxonomyEntity;
+import no.ndla.taxnomy.metadataapi.data.repository.CompetenceAimRepository;
 import no.ndla.taxnomy.metadataapi.data.repository.CustomFieldRepository;
 import no.ndla.taxnomy.metadataapi.data.repository.CustomFieldValueRepository;
 import no.ndla.taxnomy.metadataapi.data.repository.TaxonomyEntityRepository;
+import no.ndla.taxnomy.metadataapi.data.repository.UpsertRepository;
 import no.ndla.taxnomy.metadataapi.service.exception.EntityNotFoundException;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -14,11 +16,19 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -28,18 +38,22 @@ public class CustomFieldServiceImplTest {
     private TaxonomyEntityRepository taxonomyEntityRepository;
     private CustomFieldRepository customFieldRepository;
     private CustomFieldValueRepository customFieldValueRepository;
+    private DictionaryServiceImpl dictionaryService;
     private CustomFieldServiceImpl customFieldService;
 
     @BeforeEach
     public void setUp(@Autowired TaxonomyEntityRepository taxonomyEntityRepository,
             @Autowired CustomFieldRepository customFieldRepository,
-            @Autowired CustomFieldValueRepository customFieldValueRepository) {
+            @Autowired CustomFieldValueRepository customFieldValueRepository,
+            @Autowired CompetenceAimRepository competenceAimRepository, @Autowired UpsertRepository upsertRepository) {
         this.taxonomyEntityRepository = taxonomyEntityRepository;
         this.customFieldRepository = customFieldRepository;
         this.customFieldValueRepository = customFieldValueRepository;
-        this.customFieldService = new CustomFieldServiceImpl(customFieldRepository, customFieldValueRepository);
         taxonomyEntityRepository.deleteAll();
         customFieldRepository.deleteAll();
+        this.dictionaryService = new DictionaryServiceImpl(customFieldRepository, competenceAimRepository);
+        this.customFieldService = new CustomFieldServiceImpl(customFieldRepository, customFieldValueRepository,
+                taxonomyEntityRepository, upsertRepository, dictionaryService);
     }
 
     @AfterAll
@@ -51,14 +65,16 @@ public class CustomFieldServiceImplTest {
     }
 
     @Test
-    public void testSetCustomFieldForTheFirstTime() {
+    public void testSetCustomFieldForTheFirstTime(@Autowired PlatformTransactionManager transactionManager) {
         assertFalse(customFieldRepository.findByKey("new-field").isPresent());
         TaxonomyEntity taxonomyEntity = new TaxonomyEntity();
         taxonomyEntity.setPublicId("urn:test:1");
         taxonomyEntity = taxonomyEntityRepository.save(taxonomyEntity);
         assertNotNull(taxonomyEntity.getId());
         assertTrue(customFieldService.getCustomFields(taxonomyEntity).isEmpty());
-        customFieldService.setCustomField(taxonomyEntity, "new-field", "A Value");
+        final var finalTaxonomyEntity = taxonomyEntity;
+        new TransactionTemplate(transactionManager).executeWithoutResult(
+                status -> customFieldService.setCustomField(finalTaxonomyEntity, "new-field", "A Value"));
         final var customField = customFieldRepository.findByKey("new-field").orElse(null);
         assertNotNull(customField);
         assertNotNull(customField.getId());
@@ -72,6 +88,39 @@ public class CustomFieldServiceImplTest {
         assertEquals(customField.getId(), customFieldValue.getCustomField().getId());
         assertEquals("new-field", customFieldValue.getCustomField().getKey());
         assertEquals("A Value", customFieldValue.getValue());
+        assertEquals(customField.getId(), dictionaryService.getCustomFieldId("new-field").orElseThrow());
+    }
+
+    @Test
+    public void testSetCustomFieldWithKnownKey(@Autowired PlatformTransactionManager transactionManager) {
+        CustomField customField = new CustomField();
+        customField.setPublicId("urn:customfield:1");
+        customField.setKey("known-field");
+        customField = customFieldRepository.save(customField);
+        dictionaryService.load();
+        assertEquals(customField.getId(), dictionaryService.getCustomFieldId("known-field").orElseThrow());
+        TaxonomyEntity taxonomyEntity = new TaxonomyEntity();
+        taxonomyEntity.setPublicId("urn:test:1");
+        taxonomyEntity = taxonomyEntityRepository.save(taxonomyEntity);
+        // The changed values are written on flush, which requires a transaction
+        final var transactionTemplate = new TransactionTemplate(transactionManager);
+        final var finalTaxonomyEntity = taxonomyEntity;
+        transactionTemplate.executeWithoutResult(
+                status -> customFieldService.setCustomField(finalTaxonomyEntity, "known-field", "A Value"));
+        final var customFieldValue = customFieldValueRepository
+                .findByTaxonomyEntityAndCustomField(taxonomyEntity.getId(), customField.getId()).orElseThrow();
+        assertEquals("A Value", customFieldValue.getValue());
+        assertEquals(1, customFieldRepository.count());
+        assertEquals(1, customFieldService.getTaxonomyEntitiesByCustomFieldKeyValue("known-field", "A Value").size());
+
+        // The existing value is updated in place
+        transactionTemplate.executeWithoutResult(
+                status -> customFieldService.setCustomField(finalTaxonomyEntity, "known-field", "Another Value"));
+        final var updatedValue = customFieldValueRepository
+                .findByTaxonomyEntityAndCustomField(taxonomyEntity.getId(), customField.getId()).orElseThrow();
+        assertEquals(customFieldValue.getId(), updatedValue.getId());
+        assertEquals("Another Value", updatedValue.getValue());
+        assertEquals(1, customFieldValueRepository.count());
     }
 
     @Test
@@ -89,6 +138,117 @@ public class CustomFieldServiceImplTest {
         assertTrue(customFieldService.getCustomFields(taxonomyEntity).isEmpty());
     }
 
+    @Test
+    public void testSetCustomFieldsForMultipleEntities(@Autowired PlatformTransactionManager transactionManager) {
+        final var taxonomyEntities = new ArrayList<TaxonomyEntity>();
+        for (var i = 1; i <= 3; i++) {
+            TaxonomyEntity taxonomyEntity = new TaxonomyEntity();
+            taxonomyEntity.setPublicId("urn:test:" + i);
+            taxonomyEntities.add(taxonomyEntityRepository.save(taxonomyEntity));
+        }
+        final var entity1 = taxonomyEntities.get(0);
+        final var entity2 = taxonomyEntities.get(1);
+        final var entity3 = taxonomyEntities.get(2);
+
+        // The updated values are written on flush, which requires a transaction
+        final var transactionTemplate = new TransactionTemplate(transactionManager);
+        final var created = transactionTemplate.execute(status -> customFieldService.setCustomFields(Map.of(entity1,
+                Map.of("field-1", "A", "field-2", "B"), entity2, Map.of("field-1", "C"), entity3, Map.of())));
+        assertEquals(Set.of(entity1, entity2), created);
+        assertEquals(2, customFieldRepository.count());
+
+        final var changed = transactionTemplate.execute(status -> customFieldService.setCustomFields(Map.of(entity1,
+                Map.of("field-1", "A", "field-2", "D"), entity2, Map.of(), entity3, Map.of("field-3", "E"))));
+        assertEquals(Set.of(entity1, entity2, entity3), changed);
+
+        final var unchanged = transactionTemplate.execute(
+                status -> customFieldService.setCustomFields(Map.of(entity1, Map.of("field-1", "A", "field-2", "D"))));
+        assertTrue(unchanged.isEmpty());
+
+        final var values = customFieldService.getCustomFields(List.of(entity1, entity2, entity3));
+        assertEquals("A", values.get(entity1.getId()).get("field-1").getValue());
+        assertEquals("D", values.get(entity1.getId()).get("field-2").getValue());
+        assertNull(values.get(entity2.getId()));
+        assertEquals("E", values.get(entity3.getId()).get("field-3").getValue());
+        assertEquals(3, customFieldRepository.count());
+    }
+
+    @Test
+    public void testPatchCustomFieldsForMultipleEntities(@Autowired PlatformTransactionManager transactionManager) {
+        final var taxonomyEntities = new ArrayList<TaxonomyEntity>();
+        for (var i = 1; i <= 2; i++) {
+            TaxonomyEntity taxonomyEntity = new TaxonomyEntity();
+            taxonomyEntity.setPublicId("urn:test:" + i);
+            taxonomyEntities.add(taxonomyEntityRepository.save(taxonomyEntity));
+        }
+        final var entity1 = taxonomyEntities.get(0);
+        final var entity2 = taxonomyEntities.get(1);
+
+        final var transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.execute(status -> customFieldService.setCustomFields(
+                Map.of(entity1, Map.of("field-1", "A", "field-2", "B"), entity2, Map.of("field-1", "C"))));
+
+        // Fields mapped to null are removed, fields left out are kept
+        final var patch1 = new HashMap<String, String>();
+        patch1.put("field-2", null);
+        patch1.put("field-3", "D");
+        final var patch2 = new HashMap<String, String>();
+        patch2.put("field-2", null);
+        final var changed = transactionTemplate
+                .execute(status -> customFieldService.patchCustomFields(Map.of(entity1, patch1, entity2, patch2)));
+        assertEquals(Set.of(entity1), changed);
+
+        final var unchanged = transactionTemplate
+                .execute(status -> customFieldService.patchCustomFields(Map.of(entity2, Map.of("field-1", "C"))));
+        assertTrue(unchanged.isEmpty());
+
+        final var values = customFieldService.getCustomFields(List.of(entity1, entity2));
+        assertEquals(Set.of("field-1", "field-3"), values.get(entity1.getId()).keySet());
+        assertEquals("A", values.get(entity1.getId()).get("field-1").getValue());
+        assertEquals("D", values.get(entity1.getId()).get("field-3").getValue());
+        assertEquals(Set.of("field-1"), values.get(entity2.getId()).keySet());
+    }
+
+    @Test
+    public void testSetCustomFieldsConcurrently(@Autowired PlatformTransactionManager transactionManager)
+            throws Exception {
+        TaxonomyEntity taxonomyEntity = new TaxonomyEntity();
+        taxonomyEntity.setPublicId("urn:test:1");
+        final var entity = taxonomyEntityRepository.save(taxonomyEntity);
+
+        // The key exists, so both only add the value
+        final var transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate
+                .execute(status -> customFieldService.setCustomFields(Map.of(entity, Map.of("field-1", "A"))));
+        transactionTemplate.execute(status -> customFieldService.setCustomFields(Map.of(entity, Map.of())));
+
+        final var executor = Executors.newSingleThreadExecutor();
+        try {
+            // Both add the same value, the other transaction reads the values before the first one commits
+            final var other = new AtomicReference<Future<Set<TaxonomyEntity>>>();
+            transactionTemplate.executeWithoutResult(status -> {
+                customFieldService.setCustomFields(Map.of(entity, Map.of("field-1", "A")));
+                status.flush();
+
+                other.set(executor.submit(() -> transactionTemplate.execute(
+                        otherStatus -> customFieldService.setCustomFields(Map.of(entity, Map.of("field-1", "B"))))));
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            // Waited for the first to commit, and updated its value instead of adding another
+            assertEquals(Set.of(entity), other.get().get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final var values = customFieldService.getCustomFields(List.of(entity));
+        assertEquals("B", values.get(entity.getId()).get("field-1").getValue());
+    }
+
     @Test
     public void testGetCustomFieldValuesAndDelete() throws EntityNotFoundException {
         CustomField customField = new CustomField();
@@ -116,6 +276,49 @@ public class CustomFieldServiceImplTest {
         assertTrue(customFieldService.getCustomFields(taxonomyEntity).isEmpty());
     }
 
+    @Test
+    public void testGetCustomFieldsForMultipleEntities() {
+        CustomField customField1 = new CustomField();
+        customField1.setPublicId("urn:customfield:1");
+        customField1.setKey("field-1");
+        customField1 = customFieldRepository.save(customField1);
+        CustomField customField2 = new CustomField();
+        customField2.setPublicId("urn:customfield:2");
+        customField2.setKey("field-2");
+        customField2 = customFieldRepository.save(customField2);
+        final var taxonomyEntities = new ArrayList<TaxonomyEntity>();
+        for (var i = 1; i <= 3; i++) {
+            TaxonomyEntity taxonomyEntity = new TaxonomyEntity();
+            taxonomyEntity.setPublicId("urn:test:" + i);
+            taxonomyEntities.add(taxonomyEntityRepository.save(taxonomyEntity));
+        }
+        for (final var customField : List.of(customField1, customField2)) {
+            CustomFieldValue customFieldValue = new CustomFieldValue();
+            customFieldValue.setCustomField(customField);
+            customFieldValue.setTaxonomyEntity(taxonomyEntities.get(0));
+            customFieldValue.setValue(customField.getKey() + "-value");
+            customFieldValueRepository.save(customFieldValue);
+        }
+        {
+            CustomFieldValue customFieldValue = new CustomFieldValue();
+            customFieldValue.setCustomField(customField2);
+            customFieldValue.setTaxonomyEntity(taxonomyEntities.get(1));
+            customFieldValue.setValue("other-value");
+            customFieldValueRepository.save(customFieldValue);
+        }
+        final var values = customFieldService.getCustomFields(taxonomyEntities);
+        assertEquals(2, values.size());
+        final var entity1Values = values.get(taxonomyEntities.get(0).getId());
+        assertEquals(2, entity1Values.size());
+        assertEquals("field-1-value", entity1Values.get("field-1").getValue());
+        assertEquals("field-2-value", entity1Values.get("field-2").getValue());
+        final var entity2Values = values.get(taxonomyEntities.get(1).getId());
+        assertEquals(1, entity2Values.size());
+        assertEquals("other-value", entity2Values.get("field-2").getValue());
+        assertFalse(values.containsKey(taxonomyEntities.get(2).getId()));
+        assertTrue(customFieldService.getCustomFields(List.of()).isEmpty());
+    }
+
     @Test
     public void testDeleteUnknownValue() {
         final var id = UUID.randomUUID();
@@ -190,4 +393,37 @@ public class CustomFieldServiceImplTest {
         assertEquals(1, entities.size());
         assertEquals("urn:test:1", entities.get(0).getPublicId());
     }
+
+    @Test
+    public void testGetPublicIdsByKeyValuePaginated(@Autowired PlatformTransactionManager transactionManager) {
+        CustomField customField = new CustomField();
+        customField.setPublicId("urn:customfield:1");
+        customField.setKey("testkey");
+        customField = customFieldRepository.save(customField);
+        for (var i = 1; i <= 5; i++) {
+            TaxonomyEntity taxonomyEntity = new TaxonomyEntity();
+            taxonomyEntity.setPublicId("urn:test:" + i);
+            taxonomyEntity = taxonomyEntityRepository.save(taxonomyEntity);
+            CustomFieldValue customFieldValue = new CustomFieldValue();
+            customFieldValue.setCustomField(customField);
+            customFieldValue.setTaxonomyEntity(taxonomyEntity);
+            customFieldValue.setValue(i % 2 == 0 ? "even" : "odd");
+            customFieldValueRepository.save(customFieldValue);
+        }
+        // The publicIds are streamed from the database, which requires a transaction
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            assertEquals(List.of("urn:test:1", "urn:test:2"),
+                    customFieldService.getTaxonomyEntityPublicIdsByCustomFieldKeyValue("testkey", null, null, 2));
+            assertEquals(List.of("urn:test:3", "urn:test:4"), customFieldService
+                    .getTaxonomyEntityPublicIdsByCustomFieldKeyValue("testkey", null, "urn:test:2", 2));
+            assertEquals(List.of("urn:test:5"), customFieldService
+                    .getTaxonomyEntityPublicIdsByCustomFieldKeyValue("testkey", null, "urn:test:4", 2));
+            assertEquals(List.of("urn:test:1", "urn:test:3", "urn:test:5"),
+                    customFieldService.getTaxonomyEntityPublicIdsByCustomFieldKeyValue("testkey", "odd", null, 10));
+            assertEquals(List.of("urn:test:4"), customFieldService
+                    .getTaxonomyEntityPublicIdsByCustomFieldKeyValue("testkey", "even", "urn:test:2", 10));
+            assertTrue(customFieldService.getTaxonomyEntityPublicIdsByCustomFieldKeyValue("otherkey", null, null, 10)
+                    .isEmpty());
+        });
+    }
 }
@@ -0,0 +1,81 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.data.domain.CompetenceAim;
+import no.ndla.taxnomy.metadataapi.data.domain.CustomField;
+import no.ndla.taxnomy.metadataapi.data.repository.CompetenceAimRepository;
+import no.ndla.taxnomy.metadataapi.data.repository.CustomFieldRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DictionaryServiceImplTest {
+    private CustomFieldRepository customFieldRepository;
+    private CompetenceAimRepository competenceAimRepository;
+    private DictionaryServiceImpl dictionaryService;
+
+    @BeforeEach
+    void setUp() {
+        customFieldRepository = mock(CustomFieldRepository.class);
+        competenceAimRepository = mock(CompetenceAimRepository.class);
+        dictionaryService = new DictionaryServiceImpl(customFieldRepository, competenceAimRepository);
+    }
+
+    @Test
+    void load() {
+        final var customField = mock(CustomField.class);
+        final var customFieldId = UUID.randomUUID();
+        when(customField.getKey()).thenReturn("key");
+        when(customField.getId()).thenReturn(customFieldId);
+        when(customFieldRepository.findAll()).thenReturn(List.of(customField));
+
+        final var competenceAim = mock(CompetenceAim.class);
+        final var competenceAimId = UUID.randomUUID();
+        when(competenceAim.getCode()).thenReturn("AIM1");
+        when(competenceAim.getId()).thenReturn(competenceAimId);
+        when(competenceAimRepository.findAll()).thenReturn(List.of(competenceAim));
+
+        assertTrue(dictionaryService.getCustomFieldId("key").isEmpty());
+        assertTrue(dictionaryService.getCompetenceAimId("AIM1").isEmpty());
+
+        dictionaryService.load();
+
+        assertEquals(customFieldId, dictionaryService.getCustomFieldId("key").orElseThrow());
+        assertEquals(competenceAimId, dictionaryService.getCompetenceAimId("AIM1").orElseThrow());
+        assertTrue(dictionaryService.getCustomFieldId("other").isEmpty());
+        assertTrue(dictionaryService.getCompetenceAimId("AIM2").isEmpty());
+    }
+
+    @Test
+    void registerWithoutTransaction() {
+        final var customFieldId = UUID.randomUUID();
+
+        dictionaryService.registerCustomField("key", customFieldId);
+
+        assertEquals(customFieldId, dictionaryService.getCustomFieldId("key").orElseThrow());
+    }
+
+    @Test
+    void registerAfterCommit() {
+        final var competenceAimId = UUID.randomUUID();
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            dictionaryService.registerCompetenceAim("AIM1", competenceAimId);
+
+            assertTrue(dictionaryService.getCompetenceAimId("AIM1").isEmpty());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(competenceAimId, dictionaryService.getCompetenceAimId("AIM1").orElseThrow());
+    }
+}
@@ -3,7 +3,7 @@ package no.ndla.taxnomy.metadataapi.service;
 import no.ndla.taxnomy.metadataapi.data.domain.CompetenceAim;
 import no.ndla.taxnomy.metadataapi.data.domain.TaxonomyEntity;
 import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
-import no.ndla.taxnomy.metadataapi.service.exception.EntityNotFoundException;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataPatchDto;
 import no.ndla.taxnomy.metadataapi.service.exception.InvalidDataException;
 import no.ndla.taxnomy.metadataapi.service.exception.InvalidPublicIdException;
 import org.junit.jupiter.api.BeforeEach;
@@ -22,6 +22,8 @@ class MetadataAggregatorServiceImplTest {
     private CompetenceAimService competenceAimService;
     private CustomFieldService customFieldService;
     private PublicIdValidator publicIdValidator;
+    private MetadataReadService metadataReadService;
+    private ChangeFeedService changeFeedService;
     private MetadataAggregatorServiceImpl metadataAggregatorService;
 
     @BeforeEach
@@ -30,22 +32,71 @@ class MetadataAggregatorServiceImplTest {
         competenceAimService = mock(CompetenceAimService.class);
         customFieldService = mock(CustomFieldService.class);
         publicIdValidator = mock(PublicIdValidator.class);
+        metadataReadService = mock(MetadataReadService.class);
+        changeFeedService = mock(ChangeFeedService.class);
 
         when(taxonomyEntityService.saveTaxonomyEntity(Mockito.any())).thenAnswer(inv -> inv.getArgument(0));
+        // Resolved through the aims stubbed by code in the tests
+        when(competenceAimService.getOrCreateCompetenceAims(anyCollection())).thenAnswer(inv -> {
+            final Collection<String> codes = inv.getArgument(0);
+
+            return codes.stream().collect(
+                    Collectors.toMap(code -> code, code -> competenceAimService.getOrCreateCompetenceAim(code)));
+        });
 
         metadataAggregatorService = new MetadataAggregatorServiceImpl(taxonomyEntityService, competenceAimService,
-                customFieldService, publicIdValidator);
+                customFieldService, publicIdValidator, metadataReadService, changeFeedService);
     }
 
     @Test
     void getMetadataForTaxonomyEntity() throws InvalidPublicIdException {
+        final var stored = new MetadataDto("urn:test:1");
+        when(metadataReadService.getMetadata(List.of("urn:test:1"), MetadataFields.ALL))
+                .thenReturn(Map.of("urn:test:1", stored));
+
+        assertSame(stored, metadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:1"));
+        verify(publicIdValidator).validatePublicId("urn:test:1");
+
+        final var metadataDto = metadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:2");
+        assertEquals("urn:test:2", metadataDto.getPublicId());
+        assertTrue(metadataDto.isVisible());
+        assertTrue(metadataDto.getCompetenceAims().isEmpty());
+        assertTrue(metadataDto.getCustomFields().isEmpty());
+        assertEquals(MetadataVersions.EMPTY, metadataDto.getVersion());
+        verify(publicIdValidator).validatePublicId("urn:test:2");
+
+        // Reads do not go through the entities
+        verify(taxonomyEntityService, never()).getTaxonomyEntity(any());
+    }
+
+    @Test
+    void getMetadataForTaxonomyEntities() throws InvalidPublicIdException {
+        final var stored = new MetadataDto("urn:test:2");
+        when(metadataReadService.getMetadata(List.of("urn:test:1", "urn:test:2"), MetadataFields.ALL))
+                .thenReturn(Map.of("urn:test:2", stored));
+
+        final var returned = metadataAggregatorService
+                .getMetadataForTaxonomyEntities(List.of("urn:test:1", "urn:test:2"));
+
+        assertEquals(2, returned.size());
+        assertEquals("urn:test:1", returned.get(0).getPublicId());
+        assertEquals(MetadataVersions.EMPTY, returned.get(0).getVersion());
+        assertSame(stored, returned.get(1));
+
+        verify(publicIdValidator).validatePublicId("urn:test:1");
+        verify(publicIdValidator).validatePublicId("urn:test:2");
+        verify(taxonomyEntityService, never()).getTaxonomyEntities(any());
+    }
+
+    @Test
+    void loadMetadataForTaxonomyEntity() {
         {
             final var taxonomyEntity = mock(TaxonomyEntity.class);
             when(taxonomyEntity.getPublicId()).thenReturn("urn:test:1");
             when(taxonomyEntityService.getTaxonomyEntity("urn:test:1")).thenReturn(Optional.of(taxonomyEntity));
             when(customFieldService.getCustomFields(taxonomyEntity)).thenReturn(Map.of());
 
-            final var metadataDto = metadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:1");
+            final var metadataDto = metadataAggregatorService.loadMetadataForTaxonomyEntity("urn:test:1");
 
             assertEquals("urn:test:1", metadataDto.getPublicId());
             assertNotNull(metadataDto.getCompetenceAims());
@@ -53,7 +104,6 @@ class MetadataAggregatorServiceImplTest {
             assertNotNull(metadataDto.getCustomFields());
             assertTrue(metadataDto.getCustomFields().isEmpty());
 
-            verify(publicIdValidator).validatePublicId("urn:test:1");
         }
 
         {
@@ -80,7 +130,7 @@ class MetadataAggregatorServiceImplTest {
 
             when(taxonomyEntity.getCompetenceAims()).thenReturn(Set.of(aim1, aim2));
 
-            final var metadataDto = metadataAggregatorService.getMetadataForTaxonomyEntity("urn:test:2");
+            final var metadataDto = metadataAggregatorService.loadMetadataForTaxonomyEntity("urn:test:2");
 
             assertEquals("urn:test:2", metadataDto.getPublicId());
             assertNotNull(metadataDto.getCompetenceAims());
@@ -91,8 +141,6 @@ class MetadataAggregatorServiceImplTest {
 
             assertNotNull(metadataDto.getCustomFields());
             assertEquals("value", metadataDto.getCustomFields().get("test"));
-
-            verify(publicIdValidator).validatePublicId("urn:test:2");
         }
     }
 
@@ -104,14 +152,11 @@ class MetadataAggregatorServiceImplTest {
             when(aimToKeep1.getCode()).thenReturn("K1");
             final var aimToKeep2 = mock(CompetenceAim.class);
             when(aimToKeep2.getCode()).thenReturn("K2");
-            final var fieldToKeep1 = UUID.randomUUID();
-            final var fieldToKeep2 = UUID.randomUUID();
 
             final var aimToRemove1 = mock(CompetenceAim.class);
             when(aimToRemove1.getCode()).thenReturn("R1");
             final var aimToRemove2 = mock(CompetenceAim.class);
             when(aimToRemove2.getCode()).thenReturn("R2");
-            final var fieldToRemove = UUID.randomUUID();
 
             final var aimToAdd1 = mock(CompetenceAim.class);
             when(aimToAdd1.getCode()).thenReturn("A1");
@@ -129,10 +174,6 @@ class MetadataAggregatorServiceImplTest {
             when(taxonomyEntity.getCompetenceAims())
                     .thenReturn(Set.of(aimToKeep1, aimToKeep2, aimToRemove1, aimToRemove2));
             when(taxonomyEntityService.getOrCreateTaxonomyEntity("urn:test:4001")).thenReturn(taxonomyEntity);
-            when(customFieldService.getCustomFields(taxonomyEntity))
-                    .thenReturn(Map.of("keep1", new CustomFieldServiceImpl.FieldValueImpl(fieldToKeep1, "keep-value"),
-                            "keep2", new CustomFieldServiceImpl.FieldValueImpl(fieldToKeep2, "keep-value"), "remove",
-                            new CustomFieldServiceImpl.FieldValueImpl(fieldToRemove, "remove-value")));
 
             final var requestObject = new MetadataDto("urn:test:4001");
             requestObject
@@ -146,17 +187,9 @@ class MetadataAggregatorServiceImplTest {
             verify(taxonomyEntity).addCompetenceAim(aimToAdd2);
             verify(taxonomyEntity).removeCompetenceAim(aimToRemove1);
             verify(taxonomyEntity).removeCompetenceAim(aimToRemove2);
-            verify(customFieldService, times(1)).setCustomField(taxonomyEntity, "keep1", "changed-keep-value");
-            verify(customFieldService, never()).setCustomField(Mockito.eq(taxonomyEntity), Mockito.eq("keep2"),
-                    Mockito.anyString());
-            verify(customFieldService, times(1)).setCustomField(taxonomyEntity, "add", "add-value");
-            try {
-                verify(customFieldService, never()).unsetCustomField(fieldToKeep1);
-                verify(customFieldService, never()).unsetCustomField(fieldToKeep2);
-                verify(customFieldService, times(1)).unsetCustomField(fieldToRemove);
-            } catch (EntityNotFoundException e) {
-                throw new RuntimeException(e);
-            }
+            verify(customFieldService).setCustomFields(Map.of(taxonomyEntity,
+                    Map.of("keep1", "changed-keep-value", "keep2", "keep-value", "add", "add-value")));
+            verify(customFieldService, never()).setCustomField(any(), any(), any());
         }
         // Test with no aims set in request, supposed to do no change
         {
@@ -208,7 +241,7 @@ class MetadataAggregatorServiceImplTest {
             verify(taxonomyEntity).addCompetenceAim(aimToAdd1);
             verify(taxonomyEntity).addCompetenceAim(aimToAdd2);
             verify(taxonomyEntity, times(0)).removeCompetenceAim(any());
-            verify(customFieldService, times(1)).setCustomField(taxonomyEntity, "add", "add-value");
+            verify(customFieldService).setCustomFields(Map.of(taxonomyEntity, Map.of("add", "add-value")));
         }
 
         // Test setting visible flag
@@ -232,6 +265,149 @@ class MetadataAggregatorServiceImplTest {
         }
     }
 
+    @Test
+    void updateRecordsChanges() throws InvalidPublicIdException, InvalidDataException {
+        final var taxonomyEntity = mock(TaxonomyEntity.class);
+        when(taxonomyEntity.getPublicId()).thenReturn("urn:test:4101");
+        when(taxonomyEntity.isVisible()).thenReturn(true);
+        when(taxonomyEntityService.getOrCreateTaxonomyEntity("urn:test:4101")).thenReturn(taxonomyEntity);
+
+        final var unchanged = new MetadataDto("urn:test:4101");
+        unchanged.setVisible(true);
+        metadataAggregatorService.updateMetadataForTaxonomyEntity("urn:test:4101", unchanged);
+
+        verify(taxonomyEntityService, never()).incrementRevisions(any());
+        verify(changeFeedService, never()).recordChange(any(), any());
+
+        final var changed = new MetadataDto("urn:test:4101");
+        changed.setVisible(false);
+        metadataAggregatorService.updateMetadataForTaxonomyEntity("urn:test:4101", changed);
+
+        verify(taxonomyEntityService).incrementRevisions(List.of(taxonomyEntity));
+        verify(changeFeedService).recordChange("urn:test:4101", MetadataFields.of(true, false, false, null));
+    }
+
+    @Test
+    void writeMetadataWithoutReadingBack() throws InvalidPublicIdException, InvalidDataException {
+        final var taxonomyEntity = new TaxonomyEntity();
+        taxonomyEntity.setPublicId("urn:test:4301");
+        taxonomyEntity.setVisible(true);
+        when(taxonomyEntityService.getOrCreateTaxonomyEntity("urn:test:4301")).thenReturn(taxonomyEntity);
+        when(taxonomyEntityService.getOrCreateTaxonomyEntities(List.of("urn:test:4301")))
+                .thenReturn(List.of(taxonomyEntity));
+
+        final var updateDto = new MetadataDto("urn:test:4301");
+        updateDto.setVisible(false);
+        metadataAggregatorService.writeMetadataForTaxonomyEntity("urn:test:4301", updateDto);
+        assertFalse(taxonomyEntity.isVisible());
+        verify(taxonomyEntityService).saveTaxonomyEntity(taxonomyEntity);
+
+        updateDto.setVisible(true);
+        metadataAggregatorService.writeMetadataForTaxonomyEntities(List.of(updateDto));
+        assertTrue(taxonomyEntity.isVisible());
+        verify(taxonomyEntityService).saveTaxonomyEntities(anyCollection());
+
+        verify(taxonomyEntityService, never()).getTaxonomyEntity(any());
+        verify(taxonomyEntityService, never()).getTaxonomyEntities(any());
+        verify(customFieldService, never()).getCustomFields(any(TaxonomyEntity.class));
+    }
+
+    @Test
+    void patchMetadataForTaxonomyEntity() throws InvalidPublicIdException, InvalidDataException {
+        final var aim1 = mock(CompetenceAim.class);
+        when(aim1.getCode()).thenReturn("A1");
+        final var aim2 = mock(CompetenceAim.class);
+        when(aim2.getCode()).thenReturn("A2");
+        when(competenceAimService.getOrCreateCompetenceAim("A2")).thenReturn(aim2);
+
+        final var taxonomyEntity = new TaxonomyEntity();
+        taxonomyEntity.setPublicId("urn:test:4201");
+        taxonomyEntity.setVisible(true);
+        taxonomyEntity.addCompetenceAim(aim1);
+        when(taxonomyEntityService.getOrCreateTaxonomyEntity("urn:test:4201")).thenReturn(taxonomyEntity);
+        when(taxonomyEntityService.getTaxonomyEntity("urn:test:4201")).thenReturn(Optional.of(taxonomyEntity));
+        when(customFieldService.getCustomFields(taxonomyEntity)).thenReturn(Map.of());
+
+        {
+            // Only the custom fields are patched
+            final var customFields = new HashMap<String, String>();
+            customFields.put("key1", "value1");
+            customFields.put("key2", null);
+            final var patchDto = new MetadataPatchDto();
+            patchDto.setCustomFields(customFields);
+            when(customFieldService.patchCustomFields(Map.of(taxonomyEntity, customFields)))
+                    .thenReturn(Set.of(taxonomyEntity));
+
+            metadataAggregatorService.patchMetadataForTaxonomyEntity("urn:test:4201", patchDto);
+
+            assertEquals(Set.of(aim1), taxonomyEntity.getCompetenceAims());
+            assertTrue(taxonomyEntity.isVisible());
+            verify(customFieldService).patchCustomFields(Map.of(taxonomyEntity, customFields));
+            verify(customFieldService).setCustomFields(Map.of());
+            verify(customFieldService, never()).setCustomField(any(), any(), any());
+            verify(changeFeedService).recordChanges(
+                    Map.of("urn:test:4201", MetadataFields.of(false, false, true, Set.of("key1", "key2"))));
+        }
+
+        {
+            // Competence aims are replaced, removing the custom fields removes all
+            final var patchDto = new MetadataPatchDto();
+            patchDto.setCompetenceAims(Set.of(new MetadataDto.CompetenceAim("A2")));
+            patchDto.setCustomFields(null);
+
+            metadataAggregatorService.patchMetadataForTaxonomyEntity("urn:test:4201", patchDto);
+
+            assertEquals(Set.of(aim2), taxonomyEntity.getCompetenceAims());
+            assertTrue(taxonomyEntity.isVisible());
+            verify(competenceAimService).getOrCreateCompetenceAims(Set.of("A2"));
+            verify(customFieldService).setCustomFields(Map.of(taxonomyEntity, Map.of()));
+        }
+
+        {
+            final var patchDto = new MetadataPatchDto();
+            patchDto.setVisible(null);
+
+            assertThrows(InvalidDataException.class,
+                    () -> metadataAggregatorService.patchMetadataForTaxonomyEntity("urn:test:4201", patchDto));
+        }
+    }
+
+    @Test
+    void patchMetadataForTaxonomyEntities() throws InvalidPublicIdException, InvalidDataException {
+        final var entity1 = new TaxonomyEntity();
+        entity1.setPublicId("urn:test:4211");
+        entity1.setVisible(true);
+        final var entity2 = new TaxonomyEntity();
+        entity2.setPublicId("urn:test:4212");
+        entity2.setVisible(true);
+        when(taxonomyEntityService.getOrCreateTaxonomyEntities(List.of("urn:test:4211", "urn:test:4212")))
+                .thenReturn(List.of(entity1, entity2));
+        when(taxonomyEntityService.getTaxonomyEntities(List.of("urn:test:4211", "urn:test:4212")))
+                .thenReturn(List.of(entity1, entity2));
+
+        final var patch1 = new MetadataPatchDto();
+        patch1.setPublicId("urn:test:4211");
+        patch1.setVisible(false);
+        final var patch2 = new MetadataPatchDto();
+        patch2.setPublicId("urn:test:4212");
+        patch2.setCustomFields(Map.of("key", "value"));
+
+        final var returned = metadataAggregatorService.patchMetadataForTaxonomyEntities(List.of(patch1, patch2));
+
+        assertEquals(2, returned.size());
+        assertFalse(entity1.isVisible());
+        assertTrue(entity2.isVisible());
+        verify(customFieldService).patchCustomFields(Map.of(entity2, Map.of("key", "value")));
+        verify(changeFeedService).recordChanges(Map.of("urn:test:4211", MetadataFields.of(true, false, false, null)));
+        verify(taxonomyEntityService).saveTaxonomyEntities(anyCollection());
+
+        final var missingPublicId = new MetadataPatchDto();
+        assertThrows(InvalidPublicIdException.class,
+                () -> metadataAggregatorService.patchMetadataForTaxonomyEntities(List.of(missingPublicId)));
+        assertThrows(InvalidDataException.class,
+                () -> metadataAggregatorService.patchMetadataForTaxonomyEntities(List.of(patch1, patch1)));
+    }
+
     @Test
     void deleteMetadataForTaxonomyEntity() throws InvalidPublicIdException {
         doThrow(new InvalidPublicIdException("")).when(publicIdValidator).validatePublicId("urn:test:2");
@@ -240,10 +416,20 @@ class MetadataAggregatorServiceImplTest {
             verifyNoInteractions(taxonomyEntityService);
             verifyNoInteractions(publicIdValidator);
 
+            when(taxonomyEntityService.deleteTaxonomyEntity("urn:test:1")).thenReturn(true);
             metadataAggregatorService.deleteMetadataForTaxonomyEntity("urn:test:1");
 
             verify(taxonomyEntityService).deleteTaxonomyEntity("urn:test:1");
             verify(publicIdValidator).validatePublicId("urn:test:1");
+            verify(changeFeedService).recordDeletion("urn:test:1");
+        }
+
+        // No tombstone for entities that did not exist
+        {
+            metadataAggregatorService.deleteMetadataForTaxonomyEntity("urn:test:3");
+
+            verify(taxonomyEntityService).deleteTaxonomyEntity("urn:test:3");
+            verify(changeFeedService, never()).recordDeletion("urn:test:3");
         }
 
         try {
@@ -256,7 +442,7 @@ class MetadataAggregatorServiceImplTest {
 
     @SuppressWarnings("unchecked")
     @Test
-    void getMetadataForTaxonomyEntities() throws InvalidPublicIdException {
+    void loadMetadataForTaxonomyEntities() {
         final var entity1 = mock(TaxonomyEntity.class);
         when(entity1.getPublicId()).thenReturn("urn:test:1");
         when(entity1.isVisible()).thenReturn(true);
@@ -271,9 +457,20 @@ class MetadataAggregatorServiceImplTest {
 
         when(entity1.getCompetenceAims()).thenReturn(Set.of(aim1, aim2));
 
-        when(customFieldService.getCustomFields(entity1))
-                .thenReturn(Map.of("test", new CustomFieldServiceImpl.FieldValueImpl(UUID.randomUUID(), "value")));
-        when(customFieldService.getCustomFields(entity3)).thenReturn(Map.of());
+        final var entity1Id = UUID.randomUUID();
+        when(entity1.getId()).thenReturn(entity1Id);
+        when(entity3.getId()).thenReturn(UUID.randomUUID());
+
+        when(customFieldService.getCustomFields(anyCollection())).thenAnswer(invocationOnMock -> {
+            final var requestedEntities = (Collection<TaxonomyEntity>) invocationOnMock.getArgument(0,
+                    Collection.class);
+
+            assertEquals(2, requestedEntities.size());
+            assertTrue(requestedEntities.containsAll(Set.of(entity1, entity3)));
+
+            return Map.of(entity1Id,
+                    Map.of("test", new CustomFieldServiceImpl.FieldValueImpl(UUID.randomUUID(), "value")));
+        });
 
         when(taxonomyEntityService.getTaxonomyEntities(any(Collection.class))).thenAnswer(invocationOnMock -> {
             final var requestList = (Collection<String>) invocationOnMock.getArgument(0, Collection.class);
@@ -285,11 +482,11 @@ class MetadataAggregatorServiceImplTest {
         });
 
         final var returned = metadataAggregatorService
-                .getMetadataForTaxonomyEntities(Set.of("urn:test:1", "urn:test:2", "urn:test:3"));
+                .loadMetadataForTaxonomyEntities(Set.of("urn:test:1", "urn:test:2", "urn:test:3"));
 
-        verify(publicIdValidator).validatePublicId("urn:test:1");
-        verify(publicIdValidator).validatePublicId("urn:test:2");
-        verify(publicIdValidator).validatePublicId("urn:test:3");
+        // Custom fields are loaded in one batch and not per entity
+        verify(customFieldService, times(1)).getCustomFields(anyCollection());
+        verify(customFieldService, never()).getCustomFields(any(TaxonomyEntity.class));
 
         assertEquals(3, returned.size());
 
@@ -431,11 +628,13 @@ class MetadataAggregatorServiceImplTest {
             verify(publicIdValidator, atLeastOnce()).validatePublicId(entity2PublicId);
             verify(publicIdValidator, atLeastOnce()).validatePublicId(entity3PublicId);
 
-            verify(customFieldService, times(1)).setCustomField(entity1, "test", "value");
-            verify(customFieldService, never()).setCustomField(Mockito.eq(entity2), Mockito.anyString(),
-                    Mockito.anyString());
-            verify(customFieldService, never()).setCustomField(Mockito.eq(entity2), Mockito.anyString(),
-                    Mockito.anyString());
+            // Set together, entity3 has no custom fields in the request and is left out
+            verify(customFieldService, times(1))
+                    .setCustomFields(Map.of(entity1, Map.of("test", "value"), entity2, Map.of()));
+            verify(customFieldService, never()).setCustomField(Mockito.any(), Mockito.anyString(), Mockito.anyString());
+            verify(competenceAimService, times(1)).getOrCreateCompetenceAims(Set.of("A3"));
+            verify(changeFeedService, times(1)).recordChanges(Mockito.anyMap());
+            verify(taxonomyEntityService, times(1)).saveTaxonomyEntities(Mockito.anyCollection());
         }
 
         // Try update with a request DTO without publicId
@@ -452,4 +651,30 @@ class MetadataAggregatorServiceImplTest {
             }
         }
     }
+
+    @Test
+    void updateSameEntityTwice() throws InvalidPublicIdException, InvalidDataException {
+        final var aim1 = mock(CompetenceAim.class);
+        when(aim1.getCode()).thenReturn("A1");
+        when(competenceAimService.getOrCreateCompetenceAim("A1")).thenReturn(aim1);
+
+        final var entity = new TaxonomyEntity();
+        entity.addCompetenceAim(aim1);
+        entity.setPublicId("urn:test:1");
+        when(taxonomyEntityService.getOrCreateTaxonomyEntities(anyCollection())).thenReturn(List.of(entity, entity));
+
+        // The first update removes the aim, the second adds it back
+        final var update1 = new MetadataDto();
+        update1.setPublicId("urn:test:1");
+        update1.setCompetenceAims(Set.of());
+
+        final var update2 = new MetadataDto();
+        update2.setPublicId("urn:test:1");
+        update2.setCompetenceAims(Set.of(new MetadataDto.CompetenceAim("A1")));
+
+        metadataAggregatorService.writeMetadataForTaxonomyEntities(List.of(update1, update2));
+
+        assertEquals(Set.of(aim1), entity.getCompetenceAims());
+        verify(competenceAimService).getOrCreateCompetenceAims(Set.of("A1"));
+    }
 }
@@ -0,0 +1,155 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import no.ndla.taxnomy.metadataapi.service.exception.InvalidPublicIdException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class MetadataBatchLoaderTest {
+    private MetadataAggregatorService metadataAggregatorService;
+    private PublicIdValidator publicIdValidator;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws InvalidPublicIdException {
+        metadataAggregatorService = mock(MetadataAggregatorService.class);
+        publicIdValidator = mock(PublicIdValidator.class);
+        meterRegistry = new SimpleMeterRegistry();
+
+        when(metadataAggregatorService.getMetadataForTaxonomyEntity(any()))
+                .thenAnswer(invocationOnMock -> new MetadataDto(invocationOnMock.getArgument(0, String.class)));
+        when(metadataAggregatorService.getMetadataForTaxonomyEntities(anyCollection())).thenAnswer(invocationOnMock -> {
+            @SuppressWarnings("unchecked")
+            final var publicIds = (Collection<String>) invocationOnMock.getArgument(0, Collection.class);
+
+            return publicIds.stream().map(MetadataDto::new).collect(Collectors.toList());
+        });
+    }
+
+    private MetadataBatchLoader createLoader(Duration window, int maxBatchSize) {
+        return new MetadataBatchLoader(metadataAggregatorService, publicIdValidator, meterRegistry, window,
+                maxBatchSize, Duration.ofSeconds(10));
+    }
+
+    private static <T> List<T> runConcurrently(List<Callable<T>> tasks) throws Exception {
+        final var executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            final var results = new ArrayList<T>();
+            for (final Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void disabled() throws InvalidPublicIdException {
+        final var loader = createLoader(Duration.ZERO, 100);
+        assertFalse(loader.isEnabled());
+
+        assertEquals("urn:test:1", loader.load("urn:test:1").getPublicId());
+        verify(metadataAggregatorService).getMetadataForTaxonomyEntity("urn:test:1");
+        verify(metadataAggregatorService, never()).getMetadataForTaxonomyEntities(anyCollection());
+    }
+
+    @Test
+    void loadedWhenWindowHasPassed() throws InvalidPublicIdException {
+        final var loader = createLoader(Duration.ofMillis(10), 100);
+        assertTrue(loader.isEnabled());
+
+        assertEquals("urn:test:1", loader.load("urn:test:1").getPublicId());
+        verify(metadataAggregatorService).getMetadataForTaxonomyEntities(Set.of("urn:test:1"));
+        verify(metadataAggregatorService, never()).getMetadataForTaxonomyEntity(any());
+    }
+
+    @Test
+    void concurrentLoadsAreBatched() throws Exception {
+        // The batch is loaded as soon as it is full, long before the window has passed
+        final var loader = createLoader(Duration.ofMinutes(1), 3);
+
+        final var loaded = runConcurrently(List.<Callable<MetadataDto>> of(() -> loader.load("urn:test:1"),
+                () -> loader.load("urn:test:2"), () -> loader.load("urn:test:3")));
+
+        assertEquals(List.of("urn:test:1", "urn:test:2", "urn:test:3"),
+                loaded.stream().map(MetadataDto::getPublicId).collect(Collectors.toList()));
+        verify(metadataAggregatorService, times(1))
+                .getMetadataForTaxonomyEntities(Set.of("urn:test:1", "urn:test:2", "urn:test:3"));
+        assertEquals(3, meterRegistry.summary("metadata.batch.size").totalAmount());
+    }
+
+    @Test
+    void failedBatchFailsAllLoads() throws Exception {
+        when(metadataAggregatorService.getMetadataForTaxonomyEntities(anyCollection()))
+                .thenThrow(new IllegalStateException());
+        final var loader = createLoader(Duration.ofMinutes(1), 2);
+
+        final var executor = Executors.newFixedThreadPool(2);
+        try {
+            final var first = executor.submit(() -> loader.load("urn:test:1"));
+            final var second = executor.submit(() -> loader.load("urn:test:2"));
+
+            assertTrue(assertThrows(ExecutionException.class, first::get).getCause() instanceof IllegalStateException);
+            assertTrue(assertThrows(ExecutionException.class, second::get).getCause() instanceof IllegalStateException);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void errorInBatchFailsAllLoads() throws Exception {
+        when(metadataAggregatorService.getMetadataForTaxonomyEntities(anyCollection()))
+                .thenThrow(new StackOverflowError());
+        final var loader = createLoader(Duration.ofMinutes(1), 2);
+
+        final var executor = Executors.newFixedThreadPool(2);
+        try {
+            final var first = executor.submit(() -> loader.load("urn:test:1"));
+            final var second = executor.submit(() -> loader.load("urn:test:2"));
+
+            assertTrue(assertThrows(ExecutionException.class, () -> first.get(10, TimeUnit.SECONDS))
+                    .getCause() instanceof StackOverflowError);
+            assertTrue(assertThrows(ExecutionException.class, () -> second.get(10, TimeUnit.SECONDS))
+                    .getCause() instanceof StackOverflowError);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void loadMissingFromResultFails() throws InvalidPublicIdException {
+        when(metadataAggregatorService.getMetadataForTaxonomyEntities(anyCollection())).thenReturn(List.of());
+        final var loader = createLoader(Duration.ofMillis(10), 100);
+
+        assertThrows(IllegalStateException.class, () -> loader.load("urn:test:1"));
+    }
+
+    @Test
+    void invalidPublicIdIsNotBatched() throws InvalidPublicIdException {
+        doThrow(new InvalidPublicIdException("invalid")).when(publicIdValidator).validatePublicId("invalid");
+        final var loader = createLoader(Duration.ofMinutes(1), 100);
+
+        assertThrows(InvalidPublicIdException.class, () -> loader.load("invalid"));
+        verifyNoInteractions(metadataAggregatorService);
+    }
+}
@@ -0,0 +1,80 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Counts the JDBC statements prepared by bulk updates of 1000 entities, creating them, changing them and removing their
+ * custom fields. Not run as part of the build, run with:
+ *
+ * <pre>
+ * mvn test -Dtest=MetadataBulkUpdateBenchmark
+ * </pre>
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class MetadataBulkUpdateBenchmark {
+    private static final int ENTITIES = 1000;
+
+    @Autowired
+    private MetadataAggregatorServiceImpl metadataAggregatorService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private final List<String> publicIds = IntStream.range(0, ENTITIES).mapToObj(i -> "urn:bulk:" + i)
+            .collect(Collectors.toList());
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (final var publicId : publicIds) {
+            metadataAggregatorService.deleteMetadataForTaxonomyEntity(publicId);
+        }
+    }
+
+    private void measure(String name, Function<String, MetadataDto> createUpdateDto) throws Exception {
+        final var updateDtos = publicIds.stream().map(createUpdateDto).collect(Collectors.toList());
+        final var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        final var start = System.nanoTime();
+        metadataAggregatorService.updateMetadataForTaxonomyEntities(updateDtos);
+        final var elapsed = System.nanoTime() - start;
+
+        System.out.printf("%-8s %5d entities: %6d statements, %6.0f ms%n", name, ENTITIES,
+                statistics.getPrepareStatementCount(), elapsed / 1e6);
+    }
+
+    private static MetadataDto updateDto(String publicId, Map<String, String> customFields, boolean visible) {
+        final var updateDto = new MetadataDto(publicId);
+        updateDto.setVisible(visible);
+        updateDto.setCompetenceAims(Set.of(new MetadataDto.CompetenceAim("BU1"), new MetadataDto.CompetenceAim("BU2")));
+        updateDto.setCustomFields(customFields);
+
+        return updateDto;
+    }
+
+    @Test
+    void updateMetadata() throws Exception {
+        measure("create",
+                publicId -> updateDto(publicId, Map.of("bulk-1", "value", "bulk-2", "value", "bulk-3", "value"), true));
+        measure("change", publicId -> updateDto(publicId,
+                Map.of("bulk-1", "changed", "bulk-2", "value", "bulk-4", "value"), false));
+        measure("remove", publicId -> updateDto(publicId, Map.of(), false));
+    }
+}
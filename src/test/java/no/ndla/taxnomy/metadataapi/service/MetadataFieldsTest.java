@@ -0,0 +1,76 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import no.ndla.taxnomy.metadataapi.service.exception.InvalidDataException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetadataFieldsTest {
+    @Test
+    void parse() throws InvalidDataException {
+        assertTrue(MetadataFields.ALL.isAll());
+        assertTrue(MetadataFields.parse("visible,competenceAims,customFields").isAll());
+
+        final var visibleAndAims = MetadataFields.parse("visible, competenceAims");
+        assertFalse(visibleAndAims.isAll());
+        assertTrue(visibleAndAims.includesVisible());
+        assertTrue(visibleAndAims.includesCompetenceAims());
+        assertFalse(visibleAndAims.includesCustomFields());
+
+        final var someCustomFields = MetadataFields.parse("customFields.key1,customFields.key2");
+        assertFalse(someCustomFields.includesVisible());
+        assertTrue(someCustomFields.includesCustomFields());
+        assertEquals(Optional.of(Set.of("key1", "key2")), someCustomFields.getCustomFieldKeys());
+
+        // All the custom fields when also requested without key
+        assertEquals(Optional.empty(), MetadataFields.parse("customFields.key1,customFields").getCustomFieldKeys());
+
+        assertThrows(InvalidDataException.class, () -> MetadataFields.parse("unknown"));
+        assertThrows(InvalidDataException.class, () -> MetadataFields.parse("customFields."));
+        assertThrows(InvalidDataException.class, () -> MetadataFields.parse(""));
+    }
+
+    @Test
+    void unionAndOverlaps() {
+        final var visible = MetadataFields.of(true, false, false, null);
+        final var key1 = MetadataFields.of(false, false, true, Set.of("key1"));
+        final var key2 = MetadataFields.of(false, false, true, Set.of("key2"));
+        final var allCustomFields = MetadataFields.of(false, false, true, null);
+
+        assertEquals(MetadataFields.of(true, false, true, Set.of("key1")), visible.union(key1));
+        assertEquals(MetadataFields.of(false, false, true, Set.of("key1", "key2")), key1.union(key2));
+        assertEquals(allCustomFields, key1.union(allCustomFields));
+        assertEquals(MetadataFields.ALL, MetadataFields.ALL.union(key1));
+        assertEquals(key1, MetadataFields.NONE.union(key1));
+
+        assertTrue(visible.overlaps(MetadataFields.ALL));
+        assertTrue(key1.overlaps(allCustomFields));
+        assertTrue(key1.overlaps(key1.union(key2)));
+        assertFalse(key1.overlaps(key2));
+        assertFalse(visible.overlaps(key1));
+        assertFalse(MetadataFields.NONE.overlaps(MetadataFields.ALL));
+    }
+
+    @Test
+    void project() throws InvalidDataException {
+        final var metadataDto = new MetadataDto("urn:test:1");
+        metadataDto.setVisible(false);
+        metadataDto.setCompetenceAims(Set.of(new MetadataDto.CompetenceAim("A1")));
+        metadataDto.setCustomFields(Map.of("key1", "value1", "key2", "value2"));
+        metadataDto.setVersion("v1");
+
+        assertSame(metadataDto, MetadataFields.ALL.project(metadataDto));
+
+        final var projected = MetadataFields.parse("visible,customFields.key2").project(metadataDto);
+        assertEquals("urn:test:1", projected.getPublicId());
+        assertEquals("v1", projected.getVersion());
+        assertFalse(projected.isVisible());
+        assertNull(projected.getCompetenceAims());
+        assertEquals(Map.of("key2", "value2"), projected.getCustomFields());
+    }
+}
@@ -0,0 +1,161 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataFacetsDto;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataQueryDto;
+import no.ndla.taxnomy.metadataapi.service.exception.InvalidDataException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+class MetadataQueryServiceImplTest {
+    @Autowired
+    private MetadataQueryServiceImpl metadataQueryService;
+
+    @Autowired
+    private MetadataAggregatorServiceImpl metadataAggregatorService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        final var entity1 = new MetadataDto("urn:test:6301");
+        entity1.setCustomFields(Map.of("query-subject", "math", "query-level", "1"));
+        entity1.setCompetenceAims(Set.of(new MetadataDto.CompetenceAim("QA1")));
+        final var entity2 = new MetadataDto("urn:test:6302");
+        entity2.setCustomFields(Map.of("query-subject", "math", "query-level", "2"));
+        entity2.setVisible(false);
+        final var entity3 = new MetadataDto("urn:test:6303");
+        entity3.setCustomFields(Map.of("query-subject", "history"));
+        entity3.setCompetenceAims(Set.of(new MetadataDto.CompetenceAim("QA1")));
+
+        metadataAggregatorService.updateMetadataForTaxonomyEntities(List.of(entity1, entity2, entity3));
+    }
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        for (final var publicId : List.of("urn:test:6301", "urn:test:6302", "urn:test:6303")) {
+            metadataAggregatorService.deleteMetadataForTaxonomyEntity(publicId);
+        }
+    }
+
+    private static MetadataQueryDto.Condition customField(String key, String value) {
+        final var condition = new MetadataQueryDto.Condition();
+        condition.setCustomField(new MetadataQueryDto.CustomFieldCondition(key, value));
+
+        return condition;
+    }
+
+    private static MetadataQueryDto.Condition competenceAim(String code) {
+        final var condition = new MetadataQueryDto.Condition();
+        condition.setCompetenceAim(code);
+
+        return condition;
+    }
+
+    private static MetadataQueryDto.Condition visible(boolean visible) {
+        final var condition = new MetadataQueryDto.Condition();
+        condition.setVisible(visible);
+
+        return condition;
+    }
+
+    private static MetadataQueryDto.Condition and(MetadataQueryDto.Condition... conditions) {
+        final var condition = new MetadataQueryDto.Condition();
+        condition.setAnd(List.of(conditions));
+
+        return condition;
+    }
+
+    private static MetadataQueryDto.Condition or(MetadataQueryDto.Condition... conditions) {
+        final var condition = new MetadataQueryDto.Condition();
+        condition.setOr(List.of(conditions));
+
+        return condition;
+    }
+
+    private static MetadataQueryDto.Condition not(MetadataQueryDto.Condition not) {
+        final var condition = new MetadataQueryDto.Condition();
+        condition.setNot(not);
+
+        return condition;
+    }
+
+    private List<String> find(MetadataQueryDto.Condition condition) throws InvalidDataException {
+        return metadataQueryService.findTaxonomyEntityPublicIds(condition, null, 100);
+    }
+
+    @Test
+    void findTaxonomyEntityPublicIds() throws InvalidDataException {
+        assertEquals(List.of("urn:test:6301", "urn:test:6302"), find(customField("query-subject", "math")));
+        assertEquals(List.of("urn:test:6301", "urn:test:6302"), find(customField("query-level", null)));
+        assertEquals(List.of("urn:test:6301", "urn:test:6303"), find(competenceAim("QA1")));
+        assertEquals(List.of("urn:test:6301", "urn:test:6303"), find(competenceAim("qa1")));
+
+        assertEquals(List.of("urn:test:6301"),
+                find(and(customField("query-subject", "math"), competenceAim("QA1"), visible(true))));
+        assertEquals(List.of("urn:test:6302", "urn:test:6303"),
+                find(or(customField("query-subject", "history"), customField("query-level", "2"))));
+        assertEquals(List.of("urn:test:6303"),
+                find(and(customField("query-subject", null), not(customField("query-level", null)))));
+        assertEquals(List.of("urn:test:6302"),
+                find(and(customField("query-subject", null), not(or(competenceAim("QA1"), visible(true))))));
+
+        assertEquals(List.of("urn:test:6302"), metadataQueryService
+                .findTaxonomyEntityPublicIds(customField("query-subject", "math"), "urn:test:6301", 100));
+        assertEquals(List.of("urn:test:6301"),
+                metadataQueryService.findTaxonomyEntityPublicIds(customField("query-subject", "math"), null, 1));
+    }
+
+    private static List<String> values(List<MetadataFacetsDto.FacetCount> facetCounts) {
+        return facetCounts.stream().map(facetCount -> facetCount.getValue() + "=" + facetCount.getCount())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void getFacets() throws InvalidDataException {
+        final var facets = metadataQueryService.getFacets(null, List.of("query-subject", "query-level"), true, 10);
+        assertEquals(List.of("math=2", "history=1"), values(facets.getCustomFields().get("query-subject")));
+        assertEquals(List.of("1=1", "2=1"), values(facets.getCustomFields().get("query-level")));
+        assertTrue(values(facets.getCompetenceAims()).contains("QA1=2"));
+
+        final var filtered = metadataQueryService.getFacets(visible(true), List.of("query-subject"), true, 10);
+        assertEquals(List.of("history=1", "math=1"), values(filtered.getCustomFields().get("query-subject")));
+
+        final var limited = metadataQueryService.getFacets(customField("query-subject", null), List.of("query-subject"),
+                false, 1);
+        assertEquals(List.of("math=2"), values(limited.getCustomFields().get("query-subject")));
+        assertNull(limited.getCompetenceAims());
+
+        final var filteredAims = metadataQueryService.getFacets(competenceAim("QA1"), List.of(), true, 10);
+        assertEquals(List.of("QA1=2"), values(filteredAims.getCompetenceAims()));
+    }
+
+    @Test
+    void invalidQueries() {
+        assertThrows(InvalidDataException.class, () -> find(null));
+        assertThrows(InvalidDataException.class, () -> find(new MetadataQueryDto.Condition()));
+        assertThrows(InvalidDataException.class, () -> find(and()));
+        assertThrows(InvalidDataException.class, () -> find(customField(null, "value")));
+
+        final var twoProperties = visible(true);
+        twoProperties.setCompetenceAim("QA1");
+        assertThrows(InvalidDataException.class, () -> find(twoProperties));
+
+        final var tooMany = new MetadataQueryDto.Condition();
+        tooMany.setOr(Collections.nCopies(MetadataQueryServiceImpl.MAX_CONDITIONS, visible(true)));
+        assertThrows(InvalidDataException.class, () -> find(tooMany));
+    }
+}
@@ -0,0 +1,105 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Compares reading metadata through the JPA entities with reading it through {@link MetadataReadService}, for 1, 10 and
+ * 100 entities. Not run as part of the build, run with:
+ *
+ * <pre>
+ * mvn test -Dtest=MetadataReadBenchmark
+ * </pre>
+ *
+ * Allocations are measured on the calling thread only.
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+class MetadataReadBenchmark {
+    private static final int ENTITIES = 100;
+    private static final int WARMUP_ITERATIONS = 200;
+    private static final int ITERATIONS = 1000;
+
+    @Autowired
+    private MetadataAggregatorServiceImpl metadataAggregatorService;
+
+    @Autowired
+    private MetadataReadService metadataReadService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private List<String> publicIds;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        publicIds = IntStream.range(0, ENTITIES).mapToObj(i -> "urn:benchmark:" + i).collect(Collectors.toList());
+
+        final var updateDtos = new ArrayList<MetadataDto>();
+        for (final var publicId : publicIds) {
+            final var updateDto = new MetadataDto(publicId);
+            updateDto.setCompetenceAims(Set.of(new MetadataDto.CompetenceAim("BA1"),
+                    new MetadataDto.CompetenceAim("BA2"), new MetadataDto.CompetenceAim("BA3")));
+            updateDto.setCustomFields(Map.of("benchmark-1", "value", "benchmark-2", "value", "benchmark-3", "value"));
+            updateDtos.add(updateDto);
+        }
+        metadataAggregatorService.updateMetadataForTaxonomyEntities(updateDtos);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (final var publicId : publicIds) {
+            metadataAggregatorService.deleteMetadataForTaxonomyEntity(publicId);
+        }
+    }
+
+    private static void measure(String name, int count, Supplier<?> read) {
+        final var threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        for (var i = 0; i < WARMUP_ITERATIONS; i++) {
+            read.get();
+        }
+
+        final var allocatedBefore = threadMXBean.getCurrentThreadAllocatedBytes();
+        final var start = System.nanoTime();
+        for (var i = 0; i < ITERATIONS; i++) {
+            read.get();
+        }
+        final var elapsed = System.nanoTime() - start;
+        final var allocated = threadMXBean.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        System.out.printf("%-8s %4d ids: %8.1f us/op %10d bytes/op%n", name, count, elapsed / 1000.0 / ITERATIONS,
+                allocated / ITERATIONS);
+    }
+
+    @Test
+    void readMetadata() {
+        final var transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+
+        for (final var count : List.of(1, 10, 100)) {
+            final var ids = publicIds.subList(0, count);
+
+            measure("entities", count, () -> transactionTemplate
+                    .execute(status -> metadataAggregatorService.loadMetadataForTaxonomyEntities(ids)));
+            measure("jdbc", count, () -> metadataReadService.getMetadata(ids, MetadataFields.ALL));
+        }
+    }
+}
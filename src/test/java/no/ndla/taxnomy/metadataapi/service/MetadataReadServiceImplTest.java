@@ -0,0 +1,109 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+class MetadataReadServiceImplTest {
+    @Autowired
+    private MetadataReadServiceImpl metadataReadService;
+
+    @Autowired
+    private MetadataAggregatorServiceImpl metadataAggregatorService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        for (final var publicId : List.of("urn:test:6001", "urn:test:6002", "urn:test:6003")) {
+            metadataAggregatorService.deleteMetadataForTaxonomyEntity(publicId);
+        }
+    }
+
+    private static Set<String> codes(MetadataDto metadataDto) {
+        return metadataDto.getCompetenceAims().stream().map(MetadataDto.CompetenceAim::getCode)
+                .collect(Collectors.toSet());
+    }
+
+    @Test
+    void getMetadata() throws Exception {
+        assertTrue(metadataReadService.getMetadata(List.of(), MetadataFields.ALL).isEmpty());
+        assertTrue(metadataReadService.getMetadata(List.of("urn:test:6001"), MetadataFields.ALL).isEmpty());
+
+        final var update1 = new MetadataDto("urn:test:6001");
+        update1.setCompetenceAims(Set.of(new MetadataDto.CompetenceAim("RA1"), new MetadataDto.CompetenceAim("RA2")));
+        update1.setCustomFields(Map.of("read-key-1", "value-1", "read-key-2", "value-2"));
+        final var update2 = new MetadataDto("urn:test:6002");
+        update2.setVisible(false);
+
+        final var updated = metadataAggregatorService.updateMetadataForTaxonomyEntities(List.of(update1, update2));
+
+        final var read = metadataReadService.getMetadata(List.of("urn:test:6001", "urn:test:6002", "urn:test:6003"),
+                MetadataFields.ALL);
+        assertEquals(Set.of("urn:test:6001", "urn:test:6002"), read.keySet());
+
+        // Must be the same as read through the entities
+        for (final var expected : updated) {
+            final var actual = read.get(expected.getPublicId());
+
+            assertEquals(expected.isVisible(), actual.isVisible());
+            assertEquals(expected.getVersion(), actual.getVersion());
+            assertEquals(codes(expected), codes(actual));
+            assertEquals(expected.getCustomFields(), actual.getCustomFields());
+        }
+
+        assertEquals(Set.of("RA1", "RA2"), codes(read.get("urn:test:6001")));
+        assertEquals(Map.of("read-key-1", "value-1", "read-key-2", "value-2"),
+                read.get("urn:test:6001").getCustomFields());
+        assertFalse(read.get("urn:test:6002").isVisible());
+        assertTrue(read.get("urn:test:6002").getCompetenceAims().isEmpty());
+        assertTrue(read.get("urn:test:6002").getCustomFields().isEmpty());
+
+        // Also when joining an existing transaction
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> assertEquals(2,
+                metadataReadService.getMetadata(List.of("urn:test:6001", "urn:test:6002"), MetadataFields.ALL).size()));
+    }
+
+    @Test
+    void getSparseMetadata() throws Exception {
+        final var update = new MetadataDto("urn:test:6003");
+        update.setCompetenceAims(Set.of(new MetadataDto.CompetenceAim("RA1")));
+        update.setCustomFields(Map.of("read-key-1", "value-1", "read-key-2", "value-2"));
+        metadataAggregatorService.updateMetadataForTaxonomyEntity("urn:test:6003", update);
+
+        {
+            final var read = metadataReadService
+                    .getMetadata(List.of("urn:test:6003"), MetadataFields.parse("visible,competenceAims"))
+                    .get("urn:test:6003");
+            assertTrue(read.isVisible());
+            assertEquals(Set.of("RA1"), codes(read));
+            assertNull(read.getCustomFields());
+            assertNotNull(read.getVersion());
+        }
+
+        {
+            final var read = metadataReadService
+                    .getMetadata(List.of("urn:test:6003"), MetadataFields.parse("customFields.read-key-2"))
+                    .get("urn:test:6003");
+            assertNull(read.isVisible());
+            assertNull(read.getCompetenceAims());
+            assertEquals(Map.of("read-key-2", "value-2"), read.getCustomFields());
+        }
+    }
+}
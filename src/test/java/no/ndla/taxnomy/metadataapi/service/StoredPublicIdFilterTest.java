@@ -0,0 +1,120 @@
+package no.ndla.taxnomy.metadataapi.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import no.ndla.taxnomy.metadataapi.service.dto.MetadataDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Not started, so the filters are only built and refreshed by the tests
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = "metadata.publicid-filter.enabled=false")
+class StoredPublicIdFilterTest {
+    @Autowired
+    private StoredPublicIdFilter storedPublicIdFilter;
+
+    @Autowired
+    private MetadataAggregatorServiceImpl metadataAggregatorService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ChangeFeedService changeFeedService;
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        for (final var publicId : List.of("urn:test:6401", "urn:test:6402", "urn:test:6403", "urn:test:6404",
+                "urn:test:6405")) {
+            metadataAggregatorService.deleteMetadataForTaxonomyEntity(publicId);
+        }
+    }
+
+    private StoredPublicIdFilter createFilter(ChangeFeedReader changeFeedReader, MeterRegistry meterRegistry) {
+        return new StoredPublicIdFilter(jdbcTemplate, transactionManager, changeFeedReader, meterRegistry, true, 0.01,
+                Duration.ofSeconds(5));
+    }
+
+    private ChangeFeedReader createChangeFeedReader() {
+        return new ChangeFeedReader(changeFeedService, Duration.ofSeconds(5));
+    }
+
+    private void store(String publicId) throws Exception {
+        final var metadataDto = new MetadataDto(publicId);
+        metadataDto.setVisible(false);
+        metadataAggregatorService.updateMetadataForTaxonomyEntity(publicId, metadataDto);
+    }
+
+    @Test
+    void mightBeStored() throws Exception {
+        final var meterRegistry = new SimpleMeterRegistry();
+        final var filter = createFilter(createChangeFeedReader(), meterRegistry);
+        store("urn:test:6401");
+
+        // Everything might be stored until built
+        assertFalse(filter.isBuilt());
+        assertTrue(filter.mightBeStored("urn:test:6499"));
+
+        filter.build();
+        assertTrue(filter.isBuilt());
+        assertTrue(filter.mightBeStored("urn:test:6401"));
+        assertFalse(filter.mightBeStored("urn:test:6499"));
+
+        filter.recordFalsePositive();
+        assertEquals(1, meterRegistry.counter("metadata.publicid.filter", "result", "definite_miss").count());
+        assertEquals(1, meterRegistry.counter("metadata.publicid.filter", "result", "false_positive").count());
+    }
+
+    @Test
+    void addedWhenCreated() throws Exception {
+        storedPublicIdFilter.build();
+        assertFalse(storedPublicIdFilter.mightBeStored("urn:test:6402"));
+
+        store("urn:test:6402");
+        assertTrue(storedPublicIdFilter.mightBeStored("urn:test:6402"));
+    }
+
+    @Test
+    void addedFromChangeFeed() throws Exception {
+        // Created through the filter of the application context, like by another instance
+        final var changeFeedReader = createChangeFeedReader();
+        final var filter = createFilter(changeFeedReader, new SimpleMeterRegistry());
+        filter.build();
+        store("urn:test:6403");
+        assertFalse(filter.mightBeStored("urn:test:6403"));
+
+        changeFeedReader.poll();
+        assertTrue(filter.mightBeStored("urn:test:6403"));
+    }
+
+    @Test
+    void addedFromChangeFeedWhenCreatedWithDefaults() throws Exception {
+        final var changeFeedReader = createChangeFeedReader();
+        final var filter = createFilter(changeFeedReader, new SimpleMeterRegistry());
+        filter.build();
+
+        // Nothing is changed from the defaults, the entities are only created
+        metadataAggregatorService.updateMetadataForTaxonomyEntity("urn:test:6404", new MetadataDto("urn:test:6404"));
+        metadataAggregatorService.updateMetadataForTaxonomyEntities(List.of(new MetadataDto("urn:test:6405")));
+        assertFalse(filter.mightBeStored("urn:test:6404"));
+        assertFalse(filter.mightBeStored("urn:test:6405"));
+
+        changeFeedReader.poll();
+        assertTrue(filter.mightBeStored("urn:test:6404"));
+        assertTrue(filter.mightBeStored("urn:test:6405"));
+    }
+}
@@ -4,18 +4,23 @@ import no.ndla.taxnomy.metadataapi.data.domain.CompetenceAim;
 import no.ndla.taxnomy.metadataapi.data.domain.TaxonomyEntity;
 import no.ndla.taxnomy.metadataapi.data.repository.CompetenceAimRepository;
 import no.ndla.taxnomy.metadataapi.data.repository.TaxonomyEntityRepository;
+import no.ndla.taxnomy.metadataapi.data.repository.UpsertRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
 
 @ExtendWith(SpringExtension.class)
 @SpringBootTest
@@ -24,9 +29,11 @@ class TaxonomyEntityServiceImplTest {
     private TaxonomyEntityServiceImpl taxonomyEntityService;
 
     @BeforeEach
-    void setUp(@Autowired TaxonomyEntityRepository taxonomyEntityRepository) {
+    void setUp(@Autowired TaxonomyEntityRepository taxonomyEntityRepository,
+            @Autowired UpsertRepository upsertRepository, @Autowired ChangeFeedService changeFeedService) {
         this.taxonomyEntityRepository = taxonomyEntityRepository;
-        taxonomyEntityService = new TaxonomyEntityServiceImpl(taxonomyEntityRepository);
+        taxonomyEntityService = new TaxonomyEntityServiceImpl(taxonomyEntityRepository, upsertRepository,
+                mock(StoredPublicIdFilter.class), changeFeedService);
     }
 
     @Test
@@ -64,6 +71,39 @@ class TaxonomyEntityServiceImplTest {
 
         assertTrue(taxonomyEntityService.getTaxonomyEntity("urn:test:1302").isPresent());
         assertSame(taxonomyEntity2, taxonomyEntityService.getTaxonomyEntity("urn:test:1302").orElseThrow());
+
+        // Existing entities are returned, not created again
+        assertSame(taxonomyEntity2, taxonomyEntityService.getOrCreateTaxonomyEntity("urn:test:1302"));
+        assertEquals(taxonomyEntity1.getId(), taxonomyEntityService.getOrCreateTaxonomyEntity("urn:test:1301").getId());
+    }
+
+    @Test
+    void incrementRevisionsConcurrently(@Autowired PlatformTransactionManager transactionManager) {
+        final var transactionTemplate = new TransactionTemplate(transactionManager);
+        final var otherTransactionTemplate = new TransactionTemplate(transactionManager);
+        otherTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        transactionTemplate
+                .executeWithoutResult(status -> taxonomyEntityService.getOrCreateTaxonomyEntity("urn:test:1310"));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            final var taxonomyEntity = taxonomyEntityService.getTaxonomyEntity("urn:test:1310").orElseThrow();
+            assertEquals(0, taxonomyEntity.getRevision());
+
+            // Both read revision 0, the other transaction increments and commits first
+            otherTransactionTemplate.executeWithoutResult(otherStatus -> {
+                final var otherEntity = taxonomyEntityService.getTaxonomyEntity("urn:test:1310").orElseThrow();
+                taxonomyEntityService.incrementRevisions(List.of(otherEntity));
+                assertEquals(1, otherEntity.getRevision());
+            });
+
+            taxonomyEntity.setVisible(false);
+            taxonomyEntityService.incrementRevisions(List.of(taxonomyEntity));
+            assertEquals(2, taxonomyEntity.getRevision());
+        });
+
+        assertEquals(2,
+                taxonomyEntityRepository.findRevisionsByPublicIdIn(List.of("urn:test:1310")).get(0).getRevision());
     }
 
     @Test
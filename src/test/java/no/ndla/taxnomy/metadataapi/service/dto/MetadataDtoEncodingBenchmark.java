@@ -0,0 +1,78 @@
+package no.ndla.taxnomy.metadataapi.service.dto;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares the size and encode/decode time of a typical 100 entity response in the formats returned by the API. Not run
+ * as part of the build, run with:
+ *
+ * <pre>
+ * mvn test -Dtest=MetadataDtoEncodingBenchmark
+ * </pre>
+ */
+class MetadataDtoEncodingBenchmark {
+    private static final int WARMUP_ITERATIONS = 5_000;
+    private static final int ITERATIONS = 20_000;
+
+    private static List<MetadataDto> createResponse() {
+        final var metadataDtos = new ArrayList<MetadataDto>();
+
+        for (var i = 0; i < 100; i++) {
+            final var metadataDto = new MetadataDto("urn:resource:1:" + (100_000 + i));
+            metadataDto.setVisible(i % 10 != 0);
+            metadataDto.setCompetenceAims(Set.of(new MetadataDto.CompetenceAim("KM" + (1000 + i)),
+                    new MetadataDto.CompetenceAim("KE" + (2000 + i)),
+                    new MetadataDto.CompetenceAim("KV" + (3000 + i))));
+            metadataDto.setCustomFields(Map.of("language", "nb", "subjectCategory", "active", "explanation",
+                    "Some explanation of entity " + i));
+            metadataDto.setVersion("5d41402abc4b2a76b9719d911017c592");
+            metadataDtos.add(metadataDto);
+        }
+
+        return metadataDtos;
+    }
+
+    private static void measure(String name, ObjectMapper objectMapper, List<MetadataDto> response) throws IOException {
+        final var type = new TypeReference<List<MetadataDto>>() {
+        };
+        final var encoded = objectMapper.writeValueAsBytes(response);
+
+        for (var i = 0; i < WARMUP_ITERATIONS; i++) {
+            objectMapper.readValue(objectMapper.writeValueAsBytes(response), type);
+        }
+
+        var start = System.nanoTime();
+        for (var i = 0; i < ITERATIONS; i++) {
+            objectMapper.writeValueAsBytes(response);
+        }
+        final var encodeTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (var i = 0; i < ITERATIONS; i++) {
+            objectMapper.readValue(encoded, type);
+        }
+        final var decodeTime = System.nanoTime() - start;
+
+        System.out.printf("%-6s %6d bytes, encode %7.1f us, decode %7.1f us%n", name, encoded.length,
+                encodeTime / 1000.0 / ITERATIONS, decodeTime / 1000.0 / ITERATIONS);
+    }
+
+    @Test
+    void encodeAndDecode() throws IOException {
+        final var response = createResponse();
+
+        measure("json", new ObjectMapper(), response);
+        measure("cbor", new ObjectMapper(new CBORFactory()), response);
+        measure("smile", new ObjectMapper(new SmileFactory()), response);
+    }
+}
@@ -0,0 +1,36 @@
+package no.ndla.taxnomy.metadataapi.service.dto;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetadataPatchDtoTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void membersLeftOutAreNotPatched() throws JsonProcessingException {
+        final var patchDto = objectMapper.readValue("{\"visible\":false}", MetadataPatchDto.class);
+
+        assertTrue(patchDto.isVisiblePatched());
+        assertFalse(patchDto.isVisible());
+        assertFalse(patchDto.isCompetenceAimsPatched());
+        assertFalse(patchDto.isCustomFieldsPatched());
+    }
+
+    @Test
+    void membersSetToNullArePatched() throws JsonProcessingException {
+        final var patchDto = objectMapper.readValue(
+                "{\"competenceAims\":null,\"customFields\":{\"key1\":\"value\",\"key2\":null}}",
+                MetadataPatchDto.class);
+
+        assertFalse(patchDto.isVisiblePatched());
+        assertTrue(patchDto.isCompetenceAimsPatched());
+        assertNull(patchDto.getCompetenceAims());
+        assertTrue(patchDto.isCustomFieldsPatched());
+        assertEquals("value", patchDto.getCustomFields().get("key1"));
+        assertTrue(patchDto.getCustomFields().containsKey("key2"));
+        assertNull(patchDto.getCustomFields().get("key2"));
+    }
+}